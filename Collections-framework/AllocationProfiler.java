@@ -0,0 +1,440 @@
+package memory;
+
+import java.io.PrintStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按分配位置（allocation site）统计 ArrayList 和 HashMap 的扩容情况，并给出建议的 initialCapacity。
+ *
+ * new ArrayList<>() / new HashMap<>() 使用默认容量时，元素较多的实例要经过多次 grow() 复制数组
+ * 或者 resize() 重新散列才能达到最终的大小；而容量给得过大的实例又会一直持有大部分为空的数组。
+ * 这两种代价都与创建实例的代码位置有关：同一个位置创建的实例通常有相近的大小。
+ *
+ * 默认关闭。集合中每个调用点都写成 if (AllocationProfiler.ENABLED) ...，ENABLED 是 static final 常量，
+ * 关闭时 JIT 编译后整个调用点不存在；集合实例中也没有为统计增加任何字段，
+ * 探针保存在这里的一个按实例身份（==）查找的弱引用表中，只有开启统计时才会写入。
+ * 用下面的系统属性开启：
+ *   -Dcollections.profile=true         开启统计；
+ *   -Dcollections.profile.sample=N     每 N 个实例统计一个（默认 1，即全部统计），用来降低开销；
+ *   -Dcollections.profile.top=N        JVM 退出时向 System.err 打印开销最大的 N 个分配位置（默认 50，0 表示不打印）。
+ * 开启后，每个被统计的实例创建时从 new Throwable().getStackTrace() 中找到分配位置（跳过集合类自身的构造器），
+ * 并记录这个实例的峰值 size、扩容次数、扩容时复制或重新散列的元素个数，以及最终容量中超出峰值所需的部分（浪费的容量）。
+ * 开启后每次 size 或容量变化都要在表中查找一次探针（没有被抽样的实例也要查找），开销比关闭时大得多，只适合用于诊断。
+ * 实例被回收之后（通过 WeakReference，由一个守护线程处理引用队列）这些数据并入所属的分配位置；
+ * report() 同时会计入仍然存活的实例。只使用 JDK 8 的 API，ArrayList 和 HashMap 的构造器中可以直接调用。
+ *
+ * 建议的 initialCapacity 按峰值 size 的 90 分位数计算：对 ArrayList 就是这个值本身，
+ * 对 HashMap 是 ceil(size / loadFactor)，这样 new HashMap<>(n) 在达到这个 size 之前不会 resize。
+ * 使用峰值而不是被回收时的 size，因为预先分配容量时需要容纳的是实例一生中最多的元素个数。
+ *
+ * 每个实例的统计数据只由使用它的线程更新，没有同步，所以 report() 读到的存活实例的数据可能稍微滞后。
+ */
+public final class AllocationProfiler {
+
+    /**
+     * 是否开启统计
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("collections.profile");
+
+    private static final int SAMPLE = Math.max(1, Integer.getInteger("collections.profile.sample", 1));
+
+    /**
+     * 每个分配位置保留的峰值 size 的样本个数，用来计算分位数
+     */
+    static final int PEAK_SAMPLES = 256;
+
+    private static final Map<String, Site> SITES = new ConcurrentHashMap<>();
+
+    /**
+     * 集合实例被回收后，它的 ProbeRef 进入这个队列
+     */
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+    /**
+     * 被抽样的集合实例 -> 探针。键和值是同一个 ProbeRef，用 OwnerKey 按实例身份查找；
+     * 同时保证 ProbeRef 在实例被回收之前不会被回收
+     */
+    private static final Map<Object, ProbeRef> PROBES = new ConcurrentHashMap<>();
+
+    /**
+     * 类名 -> 是否是集合类（Collection 或者 Map 的实现）
+     */
+    private static final Map<String, Boolean> COLLECTION_CLASSES = new ConcurrentHashMap<>();
+
+    static {
+        if (ENABLED) {
+            Thread t = new Thread(AllocationProfiler::drainQueue, "collections-profile-reaper");
+            t.setDaemon(true);
+            t.start();
+        }
+        int top = Integer.getInteger("collections.profile.top", 50);
+        if (ENABLED && top > 0) {
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(() -> printReport(System.err, top), "collections-profile-report"));
+        }
+    }
+
+    private AllocationProfiler() {
+    }
+
+    /**
+     * 为一个刚创建的集合实例创建统计探针并登记到探针表中，没有开启统计或者这个实例没有被抽样时返回 null。
+     * 每个实例只能调用一次（clone 出来的实例是新的实例）。
+     *
+     * @param owner 集合实例
+     * @param initialCapacity 构造器中给出的初始容量，使用默认容量时为 -1
+     * @param capacity 当前已经分配的容量，延迟分配时为 0
+     * @param loadFactor HashMap 的负载因子，ArrayList 为 1
+     */
+    public static Probe probe(Object owner, int initialCapacity, int capacity, float loadFactor) {
+        if (!ENABLED || (SAMPLE > 1 && ThreadLocalRandom.current().nextInt(SAMPLE) != 0))
+            return null;
+        String location = allocationSite(new Throwable().getStackTrace());
+        String kind = owner.getClass().getSimpleName();
+        Site site = SITES.computeIfAbsent(kind + " " + location,
+                k -> new Site(kind, location, initialCapacity, loadFactor));
+        Probe p = new Probe(site, capacity);
+        site.live.add(p);
+        ProbeRef r = new ProbeRef(owner, p);
+        PROBES.put(r, r);
+        return p;
+    }
+
+    /**
+     * 集合实例的元素个数增加到 size，实例没有被抽样时什么也不做
+     */
+    public static void sized(Object owner, int size) {
+        ProbeRef r = PROBES.get(new OwnerKey(owner));
+        if (r != null)
+            r.probe.sized(size);
+    }
+
+    /**
+     * 集合实例的容量变为 newCapacity，期间复制或者重新散列了 moved 个元素，实例没有被抽样时什么也不做
+     */
+    public static void resized(Object owner, int newCapacity, int moved) {
+        ProbeRef r = PROBES.get(new OwnerKey(owner));
+        if (r != null)
+            r.probe.resized(newCapacity, moved);
+    }
+
+    /**
+     * 与集合实例关联的弱引用，同时是探针表的键，按实例身份比较；实例被回收后把探针并入分配位置。
+     * 实例被回收之后 get() 返回 null，不再与任何 OwnerKey 相等，只能用这个 ProbeRef 本身删除。
+     */
+    static final class ProbeRef extends WeakReference<Object> {
+        final Probe probe;
+        final int hash;
+
+        ProbeRef(Object owner, Probe probe) {
+            super(owner, QUEUE);
+            this.probe = probe;
+            this.hash = System.identityHashCode(owner);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this)
+                return true;
+            Object owner = get();
+            return owner != null && o instanceof OwnerKey && ((OwnerKey) o).owner == owner;
+        }
+    }
+
+    /**
+     * 在探针表中按实例身份查找时使用的临时键
+     */
+    static final class OwnerKey {
+        final Object owner;
+
+        OwnerKey(Object owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(owner);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ProbeRef && ((ProbeRef) o).get() == owner;
+        }
+    }
+
+    private static void drainQueue() {
+        for (;;) {
+            try {
+                Reference<?> r = QUEUE.remove();
+                if (PROBES.remove(r) != null) {
+                    Probe p = ((ProbeRef) r).probe;
+                    p.site.retire(p);
+                }
+            } catch (InterruptedException ignored) {
+                // 守护线程，继续处理
+            }
+        }
+    }
+
+    private static String allocationSite(StackTraceElement[] frames) {
+        for (StackTraceElement f : frames)
+            if (!isInternalFrame(f))
+                return f.toString();
+        return "<unknown>";
+    }
+
+    // 统计器自身，以及集合类（包括子类）的构造器和 clone 都不是分配位置
+    private static boolean isInternalFrame(StackTraceElement f) {
+        String cn = f.getClassName();
+        if (cn.startsWith(AllocationProfiler.class.getName()))
+            return true;
+        String m = f.getMethodName();
+        if (!m.equals("<init>") && !m.equals("clone"))
+            return false;
+        return COLLECTION_CLASSES.computeIfAbsent(cn, AllocationProfiler::isCollectionClass);
+    }
+
+    // StackTraceElement 只有类名，按名字加载（不初始化）之后再判断；找不到时当作不是集合类
+    private static boolean isCollectionClass(String className) {
+        ClassLoader[] loaders = {
+                Thread.currentThread().getContextClassLoader(),
+                AllocationProfiler.class.getClassLoader()
+        };
+        for (ClassLoader loader : loaders) {
+            try {
+                Class<?> c = Class.forName(className, false, loader);
+                return Collection.class.isAssignableFrom(c) || Map.class.isAssignableFrom(c);
+            } catch (ClassNotFoundException | LinkageError ignored) {
+                // 换一个类加载器
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一个集合实例的统计数据，由集合在 size 和容量变化时更新。
+     * 实例被回收时（ProbeRef 从引用队列中取出）并入所属的分配位置。
+     */
+    public static final class Probe {
+        final Site site;
+        int capacity;
+        int peakSize;
+        int grows;
+        long moved;
+
+        Probe(Site site, int capacity) {
+            this.site = site;
+            this.capacity = capacity;
+        }
+
+        /**
+         * 元素个数增加到 size
+         */
+        public void sized(int size) {
+            if (size > peakSize)
+                peakSize = size;
+        }
+
+        /**
+         * 容量变为 newCapacity，期间复制或者重新散列了 moved 个元素。
+         * 只有从一个已经分配的容量变大才算作一次扩容，第一次延迟分配不算。
+         */
+        public void resized(int newCapacity, int moved) {
+            if (capacity > 0 && newCapacity > capacity)
+                ++grows;
+            this.moved += moved;
+            capacity = newCapacity;
+        }
+    }
+
+    /**
+     * 一个分配位置的累计数据，由自身作为锁保护
+     */
+    static final class Site {
+        final String kind;
+        final String location;
+        final int initialCapacity;
+        final float loadFactor;
+        final Set<Probe> live = ConcurrentHashMap.newKeySet();
+
+        long instances;
+        long grows;
+        long moved;
+        long wasted;
+        int maxWasted;
+        int maxPeak;
+        final int[] peaks = new int[PEAK_SAMPLES];
+        long peakCount;
+
+        Site(String kind, String location, int initialCapacity, float loadFactor) {
+            this.kind = kind;
+            this.location = location;
+            this.initialCapacity = initialCapacity;
+            this.loadFactor = loadFactor;
+        }
+
+        void retire(Probe p) {
+            live.remove(p);
+            synchronized (this) {
+                add(p);
+            }
+        }
+
+        void add(Probe p) {
+            ++instances;
+            grows += p.grows;
+            moved += p.moved;
+            int w = Math.max(0, p.capacity - requiredCapacity(p.peakSize));
+            wasted += w;
+            maxWasted = Math.max(maxWasted, w);
+            maxPeak = Math.max(maxPeak, p.peakSize);
+            peaks[(int)(peakCount++ % PEAK_SAMPLES)] = p.peakSize;
+        }
+
+        // 容纳 size 个元素所需的最小容量：HashMap 的 table 长度是 2 的幂
+        int requiredCapacity(int size) {
+            if (loadFactor == 1.0f || size == 0)
+                return size;
+            int n = (int)Math.min(Math.ceil(size / (double)loadFactor), 1 << 30);
+            return (n <= 1) ? 1 : Integer.highestOneBit(n - 1) << 1;
+        }
+
+        int suggestedCapacity(int size) {
+            return (loadFactor == 1.0f) ? size : (int)Math.ceil(size / (double)loadFactor);
+        }
+
+        // 已经回收的实例加上当前存活的实例
+        synchronized SiteReport report() {
+            Site s = new Site(kind, location, initialCapacity, loadFactor);
+            s.instances = instances;
+            s.grows = grows;
+            s.moved = moved;
+            s.wasted = wasted;
+            s.maxWasted = maxWasted;
+            s.maxPeak = maxPeak;
+            s.peakCount = peakCount;
+            System.arraycopy(peaks, 0, s.peaks, 0, PEAK_SAMPLES);
+            for (Probe p : live)
+                s.add(p);
+            int n = (int)Math.min(s.peakCount, PEAK_SAMPLES);
+            int[] sorted = Arrays.copyOf(s.peaks, n);
+            Arrays.sort(sorted);
+            int p90 = (n == 0) ? 0 : sorted[Math.max(0, (int)Math.ceil(n * 0.9) - 1)];
+            return new SiteReport(kind, location, s.instances, s.grows, s.moved,
+                    s.wasted, s.maxWasted, p90, s.maxPeak, initialCapacity, suggestedCapacity(p90));
+        }
+    }
+
+    /**
+     * 一个分配位置的统计结果
+     */
+    public static final class SiteReport {
+        private final String kind;
+        private final String location;
+        private final long instances;
+        private final long grows;
+        private final long moved;
+        private final long wasted;
+        private final int maxWasted;
+        private final int p90PeakSize;
+        private final int maxPeakSize;
+        private final int initialCapacity;
+        private final int suggestedCapacity;
+
+        SiteReport(String kind, String location, long instances, long grows, long moved,
+                   long wasted, int maxWasted, int p90PeakSize, int maxPeakSize,
+                   int initialCapacity, int suggestedCapacity) {
+            this.kind = kind;
+            this.location = location;
+            this.instances = instances;
+            this.grows = grows;
+            this.moved = moved;
+            this.wasted = wasted;
+            this.maxWasted = maxWasted;
+            this.p90PeakSize = p90PeakSize;
+            this.maxPeakSize = maxPeakSize;
+            this.initialCapacity = initialCapacity;
+            this.suggestedCapacity = suggestedCapacity;
+        }
+
+        /** 集合的类名，例如 ArrayList、HashMap */
+        public String kind() { return kind; }
+        /** 分配位置，格式与 StackTraceElement.toString() 相同 */
+        public String location() { return location; }
+        /** 统计的实例个数 */
+        public long instances() { return instances; }
+        /** 扩容的总次数 */
+        public long grows() { return grows; }
+        /** 扩容时复制或者重新散列的元素总数 */
+        public long movedElements() { return moved; }
+        /** 所有实例最终容量中超出峰值 size 所需的部分之和 */
+        public long wastedCapacity() { return wasted; }
+        /** 单个实例浪费的容量的最大值 */
+        public int maxWastedCapacity() { return maxWasted; }
+        /** 峰值 size 的 90 分位数 */
+        public int p90PeakSize() { return p90PeakSize; }
+        /** 峰值 size 的最大值 */
+        public int maxPeakSize() { return maxPeakSize; }
+        /** 构造器中给出的初始容量，使用默认容量时为 -1 */
+        public int initialCapacity() { return initialCapacity; }
+        /** 建议的 initialCapacity */
+        public int suggestedCapacity() { return suggestedCapacity; }
+
+        /**
+         * 开销：复制或重新散列的元素个数加上浪费的容量，两者都以一个引用槽位为单位
+         */
+        public long cost() { return moved + wasted; }
+
+        @Override
+        public String toString() {
+            return String.format("%-9s initialCapacity %7s -> %-7d cost=%d grows=%d moved=%d wasted=%d "
+                            + "instances=%d peak(p90/max)=%d/%d  %s",
+                    kind, (initialCapacity < 0) ? "default" : Integer.toString(initialCapacity),
+                    suggestedCapacity, cost(), grows, moved, wasted, instances,
+                    p90PeakSize, maxPeakSize, location);
+        }
+    }
+
+    /**
+     * 返回所有分配位置的统计结果，按开销从大到小排序
+     */
+    public static List<SiteReport> report() {
+        List<SiteReport> result = new ArrayList<>(SITES.size());
+        for (Site s : SITES.values())
+            result.add(s.report());
+        result.sort((a, b) -> Long.compare(b.cost(), a.cost()));
+        return result;
+    }
+
+    /**
+     * 打印开销最大的 limit 个分配位置
+     */
+    public static void printReport(PrintStream out, int limit) {
+        List<SiteReport> sites = report();
+        out.println("Collection allocation sites by cost (" + sites.size() + " sites):");
+        for (int i = 0; i < sites.size() && i < limit; i++)
+            out.println("  " + sites.get(i));
+    }
+
+    /**
+     * 清空所有统计数据，已经创建的探针不再计入
+     */
+    public static void reset() {
+        SITES.clear();
+    }
+}
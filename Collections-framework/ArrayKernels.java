@@ -0,0 +1,59 @@
+/**
+ * IntArrayList 和 DoubleArrayList 的扫描与聚合内核：查找、最小值、最大值、求和以及按范围计数。
+ * 所有方法都作用于数组的 [from, to) 区间。
+ *
+ * 实现在类初始化时选择一次，之后 INSTANCE 不再改变，只加载了一个子类时 JIT 可以把调用内联：
+ *   1. VectorArrayKernels 使用 jdk.incubator.vector，按 CPU 支持的最宽的向量（AVX2 为 256 位，AVX-512 为 512 位）
+ *      一次比较或累加多个元素。它依赖孵化模块，编译和运行时都需要 --add-modules jdk.incubator.vector；
+ *   2. 模块不可用、向量宽度不足 128 位、或者指定了 -Dcollections.simd=false 时使用 ScalarArrayKernels。
+ *
+ * 两种实现的结果相同，只有 double 的求和例外：向量实现按车道（lane）分别累加再合并，
+ * 加法的顺序不同，结果在最后几位上可能与逐个累加不同。
+ */
+abstract class ArrayKernels {
+
+    static final ArrayKernels INSTANCE = select();
+
+    private static ArrayKernels select() {
+        if (Boolean.parseBoolean(System.getProperty("collections.simd", "true"))) {
+            try {
+                return (ArrayKernels) Class.forName("VectorArrayKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                // 没有 jdk.incubator.vector 模块，或者 CPU 不支持足够宽的向量
+            }
+        }
+        return new ScalarArrayKernels();
+    }
+
+    abstract int indexOf(int[] a, int from, int to, int key);
+
+    abstract int lastIndexOf(int[] a, int from, int to, int key);
+
+    abstract long sum(int[] a, int from, int to);
+
+    /** 区间不能为空 */
+    abstract int min(int[] a, int from, int to);
+
+    /** 区间不能为空 */
+    abstract int max(int[] a, int from, int to);
+
+    /** 满足 lo <= a[i] <= hi 的元素个数 */
+    abstract int countInRange(int[] a, int from, int to, int lo, int hi);
+
+    /** 按 == 比较，NaN 永远找不到，0.0 与 -0.0 相等 */
+    abstract int indexOf(double[] a, int from, int to, double key);
+
+    abstract int lastIndexOf(double[] a, int from, int to, double key);
+
+    abstract double sum(double[] a, int from, int to);
+
+    /** 与 Math.min 相同，任何一个元素为 NaN 时结果为 NaN。区间不能为空 */
+    abstract double min(double[] a, int from, int to);
+
+    /** 与 Math.max 相同，任何一个元素为 NaN 时结果为 NaN。区间不能为空 */
+    abstract double max(double[] a, int from, int to);
+
+    /** 满足 lo <= a[i] <= hi 的元素个数，NaN 不计入 */
+    abstract int countInRange(double[] a, int from, int to, double lo, double hi);
+}
@@ -1,7 +1,13 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.UnaryOperator;
+import java.util.function.ToLongFunction;
+import memory.AllocationProfiler;
+import memory.ObjectLayout;
+import util.BulkLookup;
 import sun.misc.SharedSecrets;
 
 /**
@@ -65,11 +71,15 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
             throw new IllegalArgumentException("Illegal Capacity: "+
                     initialCapacity);
         }
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.probe(this, initialCapacity, initialCapacity, 1.0f);
     }
 
     // 默认构造器，此时还没有进行数组的初始化，只是将创建的一个空数组对象赋值给elementData
     public ArrayList() {
         this.elementData = DEFAULTCAPACITY_EMPTY_ELEMENTDATA;
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.probe(this, -1, 0, 1.0f);
     }
 
     // 用另一个集合去构造这个ArrayList
@@ -91,6 +101,11 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
             // 如果传进来的集合为空，则用空数组对象引用EMPTY_ELEMENTDATA赋值给elementData。
             this.elementData = EMPTY_ELEMENTDATA;
         }
+        if (AllocationProfiler.ENABLED) {
+            AllocationProfiler.Probe probe = AllocationProfiler.probe(this, -1, size, 1.0f);
+            if (probe != null)
+                probe.sized(size);
+        }
     }
 
     public void trimToSize() {
@@ -103,7 +118,44 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
             elementData = (size == 0)    // 再判断原先是否有元素存储。
                     ? EMPTY_ELEMENTDATA    // 没有元素存储则赋值一个空数组对象的引用。
                     : Arrays.copyOf(elementData, size);    // 有元素的话就把原来的数组按size复制一份并用elementData引用。
+            if (AllocationProfiler.ENABLED)
+                AllocationProfiler.resized(this, size, size);
+        }
+    }
+
+    /**
+     * 估算此 ArrayList 自身占用的堆内存（字节），不包括元素对象，O(1)。
+     * elementData 按容量而不是 size 计算，两者之差就是 trimToSize() 能够回收的部分；
+     * 共享的空数组 EMPTY_ELEMENTDATA、DEFAULTCAPACITY_EMPTY_ELEMENTDATA 不计入。
+     * 对象的大小按当前 JVM 的对象布局计算，见 ObjectLayout。
+     */
+    public long estimateFootprintBytes() {
+        long bytes = ObjectLayout.instanceSize(1, 8);    // elementData；size 和 AbstractList 的 modCount
+        if (elementData.length != 0)
+            bytes += ObjectLayout.referenceArraySize(elementData.length);
+        return bytes;
+    }
+
+    /**
+     * 估算此 ArrayList 占用的堆内存（字节），包括元素对象：在 estimateFootprintBytes() 的基础上
+     * 对每个不为 null 的元素调用 elementSizer，O(size)。被多次添加的同一个元素对象会被重复计算。
+     *
+     * @param elementSizer 返回一个元素对象占用的字节数
+     */
+    @SuppressWarnings("unchecked")
+    public long estimateFootprintBytes(ToLongFunction<? super E> elementSizer) {
+        Objects.requireNonNull(elementSizer);
+        long bytes = estimateFootprintBytes();
+        final int expectedModCount = modCount;
+        final Object[] es = elementData;
+        final int size = this.size;
+        for (int i = 0; i < size; i++) {
+            if (es[i] != null)
+                bytes += elementSizer.applyAsLong((E) es[i]);
         }
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        return bytes;
     }
 
     // 这个方法用于扩展ArrayList的容量，是一个public的方法，可供用户调用。如有必要，确保它至少可以保存最小容量minCapacity参数指定的元素数量。
@@ -130,6 +182,8 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
 
     // 用来检查是否需要扩容，比如在add、addAll方法,需要事先检查一下数组列表是否满了。
     private void ensureCapacityInternal(int minCapacity) {
+        if (AllocationProfiler.ENABLED)    // add、addAll 之后的 size 就是 minCapacity
+            AllocationProfiler.sized(this, minCapacity);
         ensureExplicitCapacity(calculateCapacity(elementData, minCapacity));    // 直接调用ensureExplicitCapacity方法。
     }
 
@@ -161,6 +215,8 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
             newCapacity = hugeCapacity(minCapacity);    // 则将新的容量设置为 hugeCapacity 方法返回的值,这里主要是数组容量防止溢出
         // minCapacity is usually close to size, so this is a win:
         elementData = Arrays.copyOf(elementData, newCapacity);    // 用新的容量复制 elementData 为一个新的数组，并赋值给 elementData。
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.resized(this, newCapacity, size);
     }
 
     private static int hugeCapacity(int minCapacity) {
@@ -220,6 +276,11 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
             ArrayList<?> v = (ArrayList<?>) super.clone();
             v.elementData = Arrays.copyOf(elementData, size);
             v.modCount = 0;
+            if (AllocationProfiler.ENABLED) {
+                AllocationProfiler.Probe probe = AllocationProfiler.probe(v, -1, size, 1.0f);
+                if (probe != null)
+                    probe.sized(size);
+            }
             return v;
         } catch (CloneNotSupportedException e) {
             // this shouldn't happen, since we are Cloneable
@@ -423,11 +484,13 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
 
     private boolean batchRemove(Collection<?> c, boolean complement) {
         final Object[] elementData = this.elementData;
+        // c 是较大的 List 或 Queue 时先复制到 HashSet 中，见 BulkLookup
+        final Collection<?> lookup = BulkLookup.lookupView(c, size);
         int r = 0, w = 0;
         boolean modified = false;
         try {
             for (; r < size; r++)
-                if (c.contains(elementData[r]) == complement)
+                if (lookup.contains(elementData[r]) == complement)
                     elementData[w++] = elementData[r];
         } finally {
             // Preserve behavioral compatibility with AbstractCollection,
@@ -1095,4 +1158,134 @@ public class ArrayList<E> extends AbstractList<E> implements List<E>, RandomAcce
         }
         modCount++;
     }
+
+    /**
+     * 与 sort 相同，但是用 Arrays.parallelSort 直接在 elementData 上做并行的归并排序，
+     * 子数组的排序和合并由 ForkJoinPool.commonPool() 中的线程完成。排序是稳定的。
+     * 元素较少（不超过 Arrays.parallelSort 的粒度 8192）时与 sort 一样在当前线程中排序。
+     * c 可能在多个线程中被同时调用，必须是线程安全的。
+     */
+    @SuppressWarnings("unchecked")
+    public void parallelSort(Comparator<? super E> c) {
+        final int expectedModCount = modCount;
+        Arrays.parallelSort((E[]) elementData, 0, size, c);
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        modCount++;
+    }
+
+    /**
+     * 按 keyExtractor 提取的 long 键从小到大排序，排序是稳定的。
+     * 先对每个元素调用一次 keyExtractor，把键保存在一个 long[] 中，然后对键数组和 elementData 一起做归并排序，
+     * 比较的是数组中的 long，不需要解引用元素对象，也没有 Comparator 的调用。
+     * 排序期间需要额外的 2 * size 个 long 和 size 个引用的空间。
+     */
+    public void sortByLongKey(ToLongFunction<? super E> keyExtractor) {
+        sortByLongKey(keyExtractor, false);
+    }
+
+    /**
+     * 与 sortByLongKey 相同，但是两半的排序并行地由 ForkJoinPool.commonPool() 中的线程完成。
+     * keyExtractor 只在当前线程中调用。
+     */
+    public void parallelSortByLongKey(ToLongFunction<? super E> keyExtractor) {
+        sortByLongKey(keyExtractor, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void sortByLongKey(ToLongFunction<? super E> keyExtractor, boolean parallel) {
+        Objects.requireNonNull(keyExtractor);
+        final int expectedModCount = modCount;
+        final int size = this.size;
+        final Object[] es = elementData;
+        final long[] keys = new long[size];
+        for (int i = 0; modCount == expectedModCount && i < size; i++) {
+            keys[i] = keyExtractor.applyAsLong((E) es[i]);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (size > 1) {
+            // 结果写回 keys 和 es，副本作为归并时的辅助数组
+            LongKeySort task = new LongKeySort(keys.clone(), Arrays.copyOf(es, size), keys, es, 0, size,
+                    parallel ? LongKeySort.PARALLEL_GRAIN : Integer.MAX_VALUE);
+            if (parallel && size > LongKeySort.PARALLEL_GRAIN)
+                ForkJoinPool.commonPool().invoke(task);
+            else
+                task.compute();
+        }
+        modCount++;
+    }
+
+    /**
+     * 按 long 键对 [lo, hi) 做稳定的归并排序，结果放在 dstKeys/dstVals 中。
+     * 开始时 src 和 dst 的内容相同，递归时两者交替作为辅助数组（与 Arrays 的 legacyMergeSort 相同），
+     * 所以合并之后不需要再复制回去。区间大于 grain 时两半作为两个子任务并行排序。
+     */
+    static final class LongKeySort extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        static final int PARALLEL_GRAIN = 1 << 13;
+        static final int INSERTION_SORT_THRESHOLD = 32;
+
+        final long[] srcKeys, dstKeys;
+        final Object[] srcVals, dstVals;
+        final int lo, hi, grain;
+
+        LongKeySort(long[] srcKeys, Object[] srcVals, long[] dstKeys, Object[] dstVals,
+                    int lo, int hi, int grain) {
+            this.srcKeys = srcKeys;
+            this.srcVals = srcVals;
+            this.dstKeys = dstKeys;
+            this.dstVals = dstVals;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            final long[] sk = srcKeys, dk = dstKeys;
+            final Object[] sv = srcVals, dv = dstVals;
+            if (hi - lo <= INSERTION_SORT_THRESHOLD) {
+                for (int i = lo + 1; i < hi; i++) {
+                    long k = dk[i];
+                    Object v = dv[i];
+                    int j = i - 1;
+                    for (; j >= lo && dk[j] > k; j--) {
+                        dk[j + 1] = dk[j];
+                        dv[j + 1] = dv[j];
+                    }
+                    dk[j + 1] = k;
+                    dv[j + 1] = v;
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            LongKeySort left = new LongKeySort(dk, dv, sk, sv, lo, mid, grain);
+            LongKeySort right = new LongKeySort(dk, dv, sk, sv, mid, hi, grain);
+            if (hi - lo > grain) {
+                invokeAll(left, right);
+            } else {
+                left.compute();
+                right.compute();
+            }
+            // 两半已经有序地放在 src 中，合并到 dst
+            if (sk[mid - 1] <= sk[mid]) {
+                System.arraycopy(sk, lo, dk, lo, hi - lo);
+                System.arraycopy(sv, lo, dv, lo, hi - lo);
+                return;
+            }
+            for (int i = lo, p = lo, q = mid; i < hi; i++) {
+                if (q >= hi || (p < mid && sk[p] <= sk[q])) {
+                    dk[i] = sk[p];
+                    dv[i] = sv[p++];
+                } else {
+                    dk[i] = sk[q];
+                    dv[i] = sv[q++];
+                }
+            }
+        }
+    }
 }
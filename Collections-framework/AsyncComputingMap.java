@@ -0,0 +1,285 @@
+package map;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 异步的记忆化（memoizing）映射，解决 HashMap.computeIfAbsent 在并发场景下的“缓存击穿”问题。
+ *
+ * HashMap.computeIfAbsent 在调用线程上同步执行映射函数，如果外面再加一层锁，
+ * 热点键失效时要么所有线程都排队等待同一把锁，要么每个线程各自去加载一次（stampede）。
+ * 此类的做法是：
+ *   1. 在锁内为未命中的键放入一个 Holder，Holder 中保存加载结果的 CompletableFuture；
+ *   2. 加载函数在锁外、在指定的 Executor 上执行，锁只保护 HashMap 本身的读写，持有时间很短；
+ *   3. 同一个键的并发未命中拿到的是同一个 CompletableFuture，所以只会加载一次（single-flight）；
+ *   4. 加载失败时把 Holder 移除，下一次 get 会重新加载，失败的结果不会被缓存。
+ *
+ * 过期与提前刷新（refresh-ahead）：
+ *   expireAfterWrite  加载完成后经过这么长时间，映射条目失效，下一次 get 重新加载并等待新值；
+ *   refreshAfterWrite 加载完成后经过这么长时间（应小于 expireAfterWrite），下一次 get 仍然立即返回旧值，
+ *                     同时在后台发起一次刷新，刷新成功后替换旧值，刷新失败则保留旧值。
+ * 所以热点键在过期之前就会被刷新，调用方几乎不会看到加载延迟。两个参数为 0 表示不启用。
+ *
+ * 加载任务默认运行在 {@link #defaultExecutor()} 上：在支持虚拟线程的 JDK（21 及以上）中，
+ * 每个加载任务运行在一个虚拟线程上，成千上万个进行中的加载（通常阻塞在 I/O 上）不会占用平台线程；
+ * 在更早的 JDK 上退化为 ForkJoinPool.commonPool()。
+ *
+ * 此类是线程安全的。键不能为 null，加载函数也不能返回 null。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see HashMap#computeIfAbsent(Object, Function)
+ */
+public class AsyncComputingMap<K,V> {
+
+    /**
+     * 默认的加载 Executor，见 {@link #defaultExecutor()}
+     */
+    private static final Executor DEFAULT_EXECUTOR = newDefaultExecutor();
+
+    /**
+     * 每个键对应的加载状态。除 future 外的字段都由 AsyncComputingMap 的锁保护。
+     */
+    static final class Holder<V> {
+        /**
+         * 当前的值（或正在进行的加载）。刷新成功后被替换为一个新的已完成的 future。
+         */
+        volatile CompletableFuture<V> future;
+        /**
+         * 最近一次加载完成的时间（System.nanoTime()），加载完成之前没有意义
+         */
+        long loadedAt;
+        /**
+         * 加载是否已经成功完成
+         */
+        boolean loaded;
+        /**
+         * 是否有一个刷新正在进行，保证同一时间每个键最多只有一个刷新
+         */
+        boolean refreshing;
+
+        Holder(CompletableFuture<V> future) {
+            this.future = future;
+        }
+    }
+
+    private final HashMap<K,Holder<V>> map = new HashMap<>();
+
+    private final Function<? super K, ? extends V> loader;
+
+    private final Executor executor;
+
+    private final long expireAfterWriteNanos;
+
+    private final long refreshAfterWriteNanos;
+
+    /**
+     * 构造一个永不过期、不刷新、使用默认 Executor 的实例
+     */
+    public AsyncComputingMap(Function<? super K, ? extends V> loader) {
+        this(loader, DEFAULT_EXECUTOR, 0L, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 构造一个 AsyncComputingMap 实例
+     *
+     * @param loader            加载函数，在 executor 上执行
+     * @param executor          执行加载任务的 Executor
+     * @param expireAfterWrite  加载完成多久之后失效，0 表示永不失效
+     * @param refreshAfterWrite 加载完成多久之后在后台提前刷新，0 表示不刷新
+     * @param unit              两个时长的单位
+     * @throws IllegalArgumentException 如果时长为负数，或者刷新时间不小于失效时间
+     */
+    public AsyncComputingMap(Function<? super K, ? extends V> loader, Executor executor,
+                             long expireAfterWrite, long refreshAfterWrite, TimeUnit unit) {
+        if (loader == null || executor == null || unit == null)
+            throw new NullPointerException();
+        if (expireAfterWrite < 0)
+            throw new IllegalArgumentException("Illegal expireAfterWrite: " +
+                    expireAfterWrite);
+        if (refreshAfterWrite < 0 ||
+                (expireAfterWrite > 0 && refreshAfterWrite >= expireAfterWrite))
+            throw new IllegalArgumentException("Illegal refreshAfterWrite: " +
+                    refreshAfterWrite);
+        this.loader = loader;
+        this.executor = executor;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.refreshAfterWriteNanos = unit.toNanos(refreshAfterWrite);
+    }
+
+    /**
+     * 返回默认的加载 Executor：JDK 21 及以上为每个任务创建一个虚拟线程的 Executor，
+     * 否则为 ForkJoinPool.commonPool()。
+     * 这里通过反射查找 Executors.newVirtualThreadPerTaskExecutor()，所以在更低版本的 JDK 上同样可以编译和运行。
+     */
+    public static Executor defaultExecutor() {
+        return DEFAULT_EXECUTOR;
+    }
+
+    private static Executor newDefaultExecutor() {
+        try {
+            return (Executor) java.util.concurrent.Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return ForkJoinPool.commonPool();
+        }
+    }
+
+    /**
+     * 返回键对应的值的 future。
+     * 如果没有缓存的值（或者已经失效），发起一次加载；如果已经有一次加载在进行，返回同一个 future；
+     * 如果值已经到了刷新时间，立即返回旧值，并在后台发起一次刷新。
+     */
+    public CompletableFuture<V> get(K key) {
+        Objects.requireNonNull(key);
+        Holder<V> load = null, refresh = null;
+        CompletableFuture<V> result;
+        synchronized (map) {
+            Holder<V> h = map.get(key);
+            if (h != null && h.loaded) {
+                long age = System.nanoTime() - h.loadedAt;
+                if (expireAfterWriteNanos > 0 && age >= expireAfterWriteNanos) {
+                    map.remove(key);
+                    h = null;
+                } else if (refreshAfterWriteNanos > 0 && age >= refreshAfterWriteNanos &&
+                        !h.refreshing) {
+                    h.refreshing = true;
+                    refresh = h;
+                }
+            }
+            if (h == null) {
+                h = new Holder<>(new CompletableFuture<>());
+                map.put(key, h);
+                load = h;
+            }
+            result = h.future;
+        }
+        // 锁外发起加载，锁只保护 HashMap 本身
+        if (load != null)
+            load(key, load);
+        else if (refresh != null)
+            refresh(key, refresh);
+        return result;
+    }
+
+    /**
+     * 如果键对应的值已经加载完成并且没有失效，返回该值，否则返回 null。不会发起加载。
+     */
+    public V getIfPresent(Object key) {
+        CompletableFuture<V> f;
+        synchronized (map) {
+            Holder<V> h = map.get(key);
+            if (h == null || !h.loaded ||
+                    (expireAfterWriteNanos > 0 &&
+                            System.nanoTime() - h.loadedAt >= expireAfterWriteNanos))
+                return null;
+            f = h.future;
+        }
+        return f.getNow(null);
+    }
+
+    /**
+     * 把指定的值放入映射，覆盖已有的值；正在进行的加载或刷新的结果会被丢弃，
+     * 但已经拿到旧 future 的调用方仍然会得到加载结果。
+     */
+    public void put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Holder<V> h = new Holder<>(CompletableFuture.completedFuture(value));
+        h.loaded = true;
+        h.loadedAt = System.nanoTime();
+        synchronized (map) {
+            map.put(key, h);
+        }
+    }
+
+    /**
+     * 移除键对应的映射，下一次 get 会重新加载。正在进行的加载的结果会被丢弃。
+     */
+    public void invalidate(Object key) {
+        synchronized (map) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * 移除所有映射
+     */
+    public void invalidateAll() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    /**
+     * 返回映射条目的数量，包括正在加载和已经失效但尚未被移除的映射条目
+     */
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    /**
+     * 第一次加载：成功时记录加载时间；失败时移除 Holder（如果它还在映射中），然后让 future 异常完成。
+     */
+    private void load(K key, Holder<V> h) {
+        CompletableFuture<V> f = h.future;
+        try {
+            CompletableFuture.supplyAsync(() -> compute(key), executor)
+                    .whenComplete((v, ex) -> {
+                        synchronized (map) {
+                            if (ex == null) {
+                                h.loaded = true;
+                                h.loadedAt = System.nanoTime();
+                            } else if (map.get(key) == h) {
+                                map.remove(key);
+                            }
+                        }
+                        if (ex == null)
+                            f.complete(v);
+                        else
+                            f.completeExceptionally(ex);
+                    });
+        } catch (RuntimeException ex) { // RejectedExecutionException
+            synchronized (map) {
+                if (map.get(key) == h)
+                    map.remove(key);
+            }
+            f.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * 后台刷新：成功时用一个新的已完成的 future 替换旧值；失败时保留旧值，等到失效时再重新加载。
+     */
+    private void refresh(K key, Holder<V> h) {
+        try {
+            CompletableFuture.supplyAsync(() -> compute(key), executor)
+                    .whenComplete((v, ex) -> {
+                        synchronized (map) {
+                            h.refreshing = false;
+                            if (ex == null) {
+                                h.future = CompletableFuture.completedFuture(v);
+                                h.loadedAt = System.nanoTime();
+                            }
+                        }
+                    });
+        } catch (RuntimeException ex) { // RejectedExecutionException
+            synchronized (map) {
+                h.refreshing = false;
+            }
+        }
+    }
+
+    private V compute(K key) {
+        V v = loader.apply(key);
+        if (v == null)
+            throw new NullPointerException("loader returned null for key: " + key);
+        return v;
+    }
+}
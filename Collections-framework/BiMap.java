@@ -0,0 +1,40 @@
+package map;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 双向映射：键（key）和值（value）都是唯一的，既可以按键查值，也可以通过 inverse() 按值查键。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see HashBiMap
+ */
+public interface BiMap<K,V> extends Map<K,V> {
+
+    /**
+     * 把映射条目加进映射中。
+     *
+     * @throws IllegalArgumentException 如果 value 已经对应着另一个键，
+     *         此时映射不会被修改，如果需要覆盖请使用 forcePut
+     */
+    V put(K key, V value);
+
+    /**
+     * 把映射条目加进映射中，如果 value 已经对应着另一个键，先删除那个映射条目。
+     *
+     * @return 键 key 之前对应的值，没有则返回 null
+     */
+    V forcePut(K key, V value);
+
+    /**
+     * 返回所有值组成的集合视图。因为值是唯一的，这里返回的是 Set。
+     */
+    Set<V> values();
+
+    /**
+     * 返回反向的视图，它的键是这个映射的值，值是这个映射的键。
+     * 两者共享同一份数据，对其中一个的修改会反映到另一个上。
+     */
+    BiMap<V,K> inverse();
+}
@@ -0,0 +1,54 @@
+/**
+ * DeltaPackedIntList 和 DeltaPackedLongList 共用的位压缩。
+ *
+ * 一块中的 n 个无符号值每个占 bits 位（0 ~ 64），从 base 开始紧密地排列在 long[] 中：
+ * 第 i 个值从这一块的第 i * bits 位开始，低位在前，可能跨越两个相邻的 long。
+ * 写入时按位或，所以写入之前目标区域必须全部为 0。
+ */
+final class BitPacking {
+
+    private BitPacking() {
+    }
+
+    /**
+     * 表示 [0, range] 中的值（按无符号数解释）所需的位数
+     */
+    static int bitWidth(long range) {
+        return 64 - Long.numberOfLeadingZeros(range);
+    }
+
+    /**
+     * n 个 bits 位的值占的 long 的个数
+     */
+    static int words(int n, int bits) {
+        return (int)(((long)n * bits + 63) >>> 6);
+    }
+
+    /**
+     * 取出低 bits 位的掩码
+     */
+    static long mask(int bits) {
+        return (bits == 64) ? -1L : (1L << bits) - 1;
+    }
+
+    /**
+     * 把 v 写到从 base 开始的第 bitPos 位，v 只能有低 bits 位不为 0
+     */
+    static void write(long[] d, int base, int bitPos, int bits, long v) {
+        int w = base + (bitPos >>> 6), s = bitPos & 63;
+        d[w] |= v << s;
+        if (s + bits > 64)
+            d[w + 1] |= v >>> (64 - s);
+    }
+
+    /**
+     * 读出从 base 开始的第 bitPos 位开始的 bits 位，mask 必须等于 mask(bits)
+     */
+    static long read(long[] d, int base, int bitPos, int bits, long mask) {
+        int w = base + (bitPos >>> 6), s = bitPos & 63;
+        long x = d[w] >>> s;
+        if (s + bits > 64)
+            x |= d[w + 1] << (64 - s);
+        return x & mask;
+    }
+}
@@ -0,0 +1,36 @@
+package util;
+
+import java.util.*;
+
+/**
+ * removeAll/retainAll 中对参数集合的 contains 查找，ArrayList 和 LinkedList 共用。
+ *
+ * 参数 c 是 List 或者 Queue 时 c.contains 是线性查找，整个操作是 O(size * c.size())；
+ * 先把 c 复制到一个临时的 HashSet 之后变为 O(size + c.size())。双方都比较小时复制的开销超过节省的比较次数，直接使用 c。
+ *
+ * 只转换 List 和 Queue：它们的 contains 按 equals 比较，换成 HashSet 不改变结果（要求元素的 hashCode 与 equals 一致）。
+ * 其他的集合可能按别的方式比较，例如 IdentityHashMap.values() 按 == 比较、TreeMap.keySet() 按比较器比较，
+ * 复制到 HashSet 会改变 removeAll/retainAll 的结果，所以原样使用；Set 本身的查找已经很快，也不转换。
+ */
+public final class BulkLookup {
+
+    /**
+     * 列表和 c 的元素个数都超过这个值时，才把 c 复制到 HashSet 中
+     */
+    public static final int HASH_LOOKUP_THRESHOLD = 16;
+
+    private BulkLookup() {
+    }
+
+    /**
+     * 返回用于 contains 查找的集合：c 本身，或者包含 c 的所有元素的临时 HashSet
+     *
+     * @param c removeAll/retainAll 的参数
+     * @param size 调用方列表的元素个数，也就是 contains 的调用次数
+     */
+    public static Collection<?> lookupView(Collection<?> c, int size) {
+        return (size > HASH_LOOKUP_THRESHOLD && c.size() > HASH_LOOKUP_THRESHOLD
+                && (c instanceof List || c instanceof Queue))
+                ? new HashSet<>(c) : c;
+    }
+}
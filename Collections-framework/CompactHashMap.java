@@ -0,0 +1,611 @@
+package map;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * 紧凑布局（compact dict）的散列表，结构与 Python 3.6 之后的 dict 相同，迭代顺序就是插入顺序。
+ *
+ * 它由两部分组成：
+ *   1. 稀疏的索引数组 indices：开放寻址的散列表，每个槽位只保存一个小整数，指向 entries 中的下标。
+ *      槽位的类型随容量变化：容量不超过 2^7 时用 byte[]，不超过 2^15 时用 short[]，否则用 int[]，
+ *      所以小的散列表的索引部分每个槽位只占1个字节。
+ *   2. 稠密的 entries：三个平行数组 hashes（int[]）、keys（Object[]）、vals（Object[]），
+ *      映射条目按插入顺序依次追加在数组末尾，删除的位置用 TOMBSTONE 占位。
+ *
+ * 与 HashMap 相比：
+ *   1. 不再为每个映射条目分配一个 Node 对象，以 64 位 JVM（开启压缩指针）为例，每个映射条目大约只需要
+ *      hashes + keys + vals 的 12 字节再加上 1.5 个索引槽位，而 HashMap 需要 32 字节的 Node 加上约 5 字节的 table 槽位；
+ *   2. 迭代只是对 entries 的一次顺序扫描，不会像 HashMap.HashIterator.nextNode 那样扫过大量的空桶，
+ *      并且迭代顺序是确定的插入顺序（更新已有键的value不会改变它的位置）；
+ *   3. clone() 只需要复制几个数组。
+ *
+ * 索引使用与 Python 相同的探测序列：i = (i * 5 + perturb + 1) & mask，perturb 每次右移 5 位，
+ * 这样散列值的高位最终也会参与探测。散列值由 HashMap.hash() 计算。
+ * entries 的容量是索引容量的 2/3，entries 用完（包括被删除的位置）时会重建：
+ * 丢弃 TOMBSTONE 压缩 entries，并按当前的 size 重新选择索引的大小。
+ *
+ * 允许 null 键和 null 值。请注意，此实现不同步。迭代器是快速失败的。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see HashMap
+ * @see LinkedHashMap
+ */
+public class CompactHashMap<K,V> extends AbstractMap<K,V>
+        implements Map<K,V>, Cloneable, Serializable {
+
+    private static final long serialVersionUID = -4106924566720423207L;
+
+    /**
+     * 索引的最小容量 - 必须是2的幂。
+     */
+    static final int MIN_INDEX_SIZE = 8;
+
+    /**
+     * 索引的最大容量。
+     */
+    static final int MAXIMUM_INDEX_SIZE = 1 << 30;
+
+    /**
+     * 索引槽位的两种特殊值：从未使用过，以及曾经使用过但对应的映射条目已被删除。
+     * 被删除的槽位不能直接置为 EMPTY，否则会截断经过它的探测序列。
+     */
+    static final int EMPTY = -1;
+    static final int DUMMY = -2;
+
+    /**
+     * entries 中被删除的位置上的键。
+     */
+    static final Object TOMBSTONE = new Object();
+
+    private static final int PERTURB_SHIFT = 5;
+
+    /**
+     * 稀疏索引：byte[]、short[] 或 int[]，长度总是2的幂。
+     */
+    transient Object indices;
+
+    /**
+     * 稠密的 entries，按插入顺序排列。
+     */
+    transient int[] hashes;
+    transient Object[] keys;
+    transient Object[] vals;
+
+    /**
+     * entries 中已经使用的位置数量（包括被删除的位置）。
+     */
+    transient int used;
+
+    /**
+     * 映射条目的数量
+     */
+    transient int size;
+
+    /**
+     * 结构修改的次数，用于迭代器的快速失败。
+     */
+    transient int modCount;
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 构造一个能容纳 expectedSize 个映射条目而不需要重建的空的 CompactHashMap 实例
+     */
+    public CompactHashMap(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    expectedSize);
+        allocate(indexSizeFor(expectedSize));
+    }
+
+    /**
+     * 构造一个空的 CompactHashMap 实例，索引的初始容量为 8（可以容纳5个映射条目）
+     */
+    public CompactHashMap() {
+        allocate(MIN_INDEX_SIZE);
+    }
+
+    /**
+     * 使用与指定的Map相同的映射构造一个新的 CompactHashMap 实例，迭代顺序与 m 的迭代顺序相同。
+     */
+    public CompactHashMap(Map<? extends K, ? extends V> m) {
+        allocate(indexSizeFor(m.size()));
+        putAll(m);
+    }
+
+    /* ---------------- Index helpers -------------- */
+
+    // 索引容量为 n 时 entries 的容量，即 n 的 2/3
+    static int usableFor(int n) {
+        return (n << 1) / 3;
+    }
+
+    // 返回能容纳 size 个映射条目的最小的索引容量
+    static int indexSizeFor(int size) {
+        int n = MIN_INDEX_SIZE;
+        while (usableFor(n) < size) {
+            if (n >= MAXIMUM_INDEX_SIZE)
+                throw new OutOfMemoryError("Required index size too large");
+            n <<= 1;
+        }
+        return n;
+    }
+
+    // 按容量选择槽位的类型，并把所有槽位初始化为 EMPTY
+    static Object newIndices(int n) {
+        Object ind;
+        if (n <= (1 << 7)) {
+            byte[] b = new byte[n];
+            Arrays.fill(b, (byte)EMPTY);
+            ind = b;
+        }
+        else if (n <= (1 << 15)) {
+            short[] s = new short[n];
+            Arrays.fill(s, (short)EMPTY);
+            ind = s;
+        }
+        else {
+            int[] a = new int[n];
+            Arrays.fill(a, EMPTY);
+            ind = a;
+        }
+        return ind;
+    }
+
+    static int indexLength(Object ind) {
+        if (ind instanceof byte[])
+            return ((byte[])ind).length;
+        if (ind instanceof short[])
+            return ((short[])ind).length;
+        return ((int[])ind).length;
+    }
+
+    static int getIndex(Object ind, int i) {
+        if (ind instanceof byte[])
+            return ((byte[])ind)[i];
+        if (ind instanceof short[])
+            return ((short[])ind)[i];
+        return ((int[])ind)[i];
+    }
+
+    static void setIndex(Object ind, int i, int ix) {
+        if (ind instanceof byte[])
+            ((byte[])ind)[i] = (byte)ix;
+        else if (ind instanceof short[])
+            ((short[])ind)[i] = (short)ix;
+        else
+            ((int[])ind)[i] = ix;
+    }
+
+    private void allocate(int n) {
+        indices = newIndices(n);
+        int usable = usableFor(n);
+        hashes = new int[usable];
+        keys = new Object[usable];
+        vals = new Object[usable];
+        used = 0;
+    }
+
+    /**
+     * 在索引中查找给定散列值和key的映射条目
+     *
+     * @return 映射条目在 entries 中的下标，找不到则返回 -1
+     */
+    final int findEntry(int hash, Object key) {
+        Object ind = indices;
+        int mask = indexLength(ind) - 1;
+        int[] hs = hashes;
+        Object[] ks = keys;
+        int i = hash & mask;
+        for (int perturb = hash; ; ) {
+            int ix = getIndex(ind, i);
+            if (ix == EMPTY)
+                return -1;
+            Object k;
+            if (ix >= 0 && hs[ix] == hash &&
+                    ((k = ks[ix]) == key || (key != null && key.equals(k))))
+                return ix;
+            perturb >>>= PERTURB_SHIFT;
+            i = (i * 5 + perturb + 1) & mask;
+        }
+    }
+
+    /**
+     * 在索引中找到给定散列值的探测序列上第一个 EMPTY 的槽位，用于插入新的映射条目。
+     * 调用者需要保证 key 不在散列表中。这里不复用 DUMMY 槽位，DUMMY 会在下一次重建时被清理掉。
+     */
+    static int findEmptySlot(Object ind, int hash) {
+        int mask = indexLength(ind) - 1;
+        int i = hash & mask;
+        for (int perturb = hash; getIndex(ind, i) != EMPTY; ) {
+            perturb >>>= PERTURB_SHIFT;
+            i = (i * 5 + perturb + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * 重建散列表：压缩 entries（丢弃 TOMBSTONE，保持插入顺序），
+     * 并按 minSize 选择新的索引容量，再把所有映射条目重新放进索引中。
+     * entries 中保存了散列值，所以不会再调用 key.hashCode()。
+     */
+    final void rebuild(int minSize) {
+        int[] oldHashes = hashes;
+        Object[] oldKeys = keys, oldVals = vals;
+        int oldUsed = used;
+        int n = indexSizeFor(minSize);
+        Object ind = newIndices(n);
+        int usable = usableFor(n);
+        int[] hs = new int[usable];
+        Object[] ks = new Object[usable];
+        Object[] vs = new Object[usable];
+        int j = 0;
+        for (int i = 0; i < oldUsed; i++) {
+            Object k = oldKeys[i];
+            if (k == TOMBSTONE)
+                continue;
+            int h = oldHashes[i];
+            hs[j] = h;
+            ks[j] = k;
+            vs[j] = oldVals[i];
+            setIndex(ind, findEmptySlot(ind, h), j);
+            j++;
+        }
+        indices = ind;
+        hashes = hs;
+        keys = ks;
+        vals = vs;
+        used = j;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int ix = findEntry(HashMap.hash(key), key);
+        return (ix < 0) ? null : (V)vals[ix];
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        int ix = findEntry(HashMap.hash(key), key);
+        return (ix < 0) ? defaultValue : (V)vals[ix];
+    }
+
+    public boolean containsKey(Object key) {
+        return findEntry(HashMap.hash(key), key) >= 0;
+    }
+
+    public V put(K key, V value) {
+        return putVal(HashMap.hash(key), key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(HashMap.hash(key), key, value, true);
+    }
+
+    /**
+     * 已有的键直接在原位置更新value（不改变迭代顺序），新的键追加到 entries 末尾。
+     */
+    @SuppressWarnings("unchecked")
+    final V putVal(int hash, K key, V value, boolean onlyIfAbsent) {
+        int ix = findEntry(hash, key);
+        if (ix >= 0) {
+            V oldValue = (V)vals[ix];
+            if (!onlyIfAbsent || oldValue == null)
+                vals[ix] = value;
+            return oldValue;
+        }
+        if (used == keys.length)
+            // entries 用完了：按当前 size 的两倍选择新的容量，被删除的位置在这里被回收
+            rebuild(Math.max(size << 1, size + 1));
+        ix = used++;
+        hashes[ix] = hash;
+        keys[ix] = key;
+        vals[ix] = value;
+        setIndex(indices, findEmptySlot(indices, hash), ix);
+        ++modCount;
+        ++size;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int hash = HashMap.hash(key);
+        int ix = findEntry(hash, key);
+        if (ix < 0)
+            return null;
+        V oldValue = (V)vals[ix];
+        removeEntry(hash, ix);
+        return oldValue;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        int hash = HashMap.hash(key);
+        int ix = findEntry(hash, key);
+        if (ix < 0 || !Objects.equals(vals[ix], value))
+            return false;
+        removeEntry(hash, ix);
+        return true;
+    }
+
+    /**
+     * 删除 entries 中下标为 ix 的映射条目：把指向它的索引槽位改为 DUMMY，entries 中的位置改为 TOMBSTONE。
+     * 即使删除的是最后一个位置也不回收，这样索引中非 EMPTY 的槽位数量永远不超过 used（即不超过索引容量的 2/3），
+     * 探测序列总能遇到 EMPTY 而结束。
+     */
+    final void removeEntry(int hash, int ix) {
+        Object ind = indices;
+        int mask = indexLength(ind) - 1;
+        int i = hash & mask;
+        for (int perturb = hash; getIndex(ind, i) != ix; ) {
+            perturb >>>= PERTURB_SHIFT;
+            i = (i * 5 + perturb + 1) & mask;
+        }
+        setIndex(ind, i, DUMMY);
+        keys[ix] = TOMBSTONE;
+        vals[ix] = null; // clear to let GC do its work
+        ++modCount;
+        --size;
+    }
+
+    /**
+     * 删除全部映射条目，索引恢复到最小容量。
+     */
+    public void clear() {
+        modCount++;
+        if (used > 0) {
+            size = 0;
+            allocate(MIN_INDEX_SIZE);
+        }
+    }
+
+    public boolean containsValue(Object value) {
+        Object[] ks = keys, vs = vals;
+        for (int i = 0, n = used; i < n; i++) {
+            if (ks[i] != TOMBSTONE && Objects.equals(value, vs[i]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 把 entries 的容量缩减到刚好能容纳当前的映射条目，同时清理所有 TOMBSTONE。
+     */
+    public void trimToSize() {
+        if (used > size || keys.length > usableFor(indexSizeFor(size))) {
+            modCount++;
+            rebuild(size);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        Object[] ks = keys, vs = vals;
+        for (int i = 0, n = used; i < n; i++) {
+            Object k = ks[i];
+            if (k != TOMBSTONE)
+                action.accept((K)k, (V)vs[i]);
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        Object[] ks = keys, vs = vals;
+        for (int i = 0, n = used; i < n; i++) {
+            Object k = ks[i];
+            if (k != TOMBSTONE)
+                vs[i] = function.apply((K)k, (V)vs[i]);
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { CompactHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            int ix = findEntry(HashMap.hash(key), key);
+            return ix >= 0 && Objects.equals(vals[ix], e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                return CompactHashMap.this.remove(e.getKey(), e.getValue());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 按插入顺序顺序扫描 entries 的迭代器，跳过 TOMBSTONE。
+     * 返回的 Entry 是一个指向 entries 下标的视图，setValue 会直接写回散列表。
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        int cursor;                 // index of next entry to return
+        int lastRet = -1;           // index of last entry returned; -1 if no such
+        int expectedModCount = modCount;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            Object[] ks = keys;
+            while (cursor < used && ks[cursor] == TOMBSTONE)
+                cursor++;
+        }
+
+        public boolean hasNext() {
+            return cursor < used;
+        }
+
+        public Map.Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (cursor >= used)
+                throw new NoSuchElementException();
+            lastRet = cursor++;
+            advance();
+            return new EntryView(lastRet);
+        }
+
+        public void remove() {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            removeEntry(hashes[lastRet], lastRet);
+            lastRet = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * 指向 entries 中某个下标的映射条目视图。
+     */
+    final class EntryView implements Map.Entry<K,V> {
+        final int ix;
+        final K key;
+
+        @SuppressWarnings("unchecked")
+        EntryView(int ix) {
+            this.ix = ix;
+            this.key = (K)keys[ix];
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            // 下标可能已经因为删除或重建而失效，此时按键重新查找
+            int i = (ix < used && keys[ix] == key) ? ix : findEntry(HashMap.hash(key), key);
+            return (i < 0) ? null : (V)vals[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        public V setValue(V value) {
+            int i = (ix < used && keys[ix] == key) ? ix : findEntry(HashMap.hash(key), key);
+            if (i < 0)
+                throw new IllegalStateException("Entry was removed");
+            V oldValue = (V)vals[i];
+            vals[i] = value;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Cloning and serialization
+
+    /**
+     * 返回一个浅拷贝，键和值本身不会被复制。只需要复制索引和三个 entries 数组。
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object clone() {
+        CompactHashMap<K,V> result;
+        try {
+            result = (CompactHashMap<K,V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        Object ind = indices;
+        result.indices = (ind instanceof byte[]) ? ((byte[])ind).clone() :
+                (ind instanceof short[]) ? ((short[])ind).clone() : ((int[])ind).clone();
+        result.hashes = hashes.clone();
+        result.keys = keys.clone();
+        result.vals = vals.clone();
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * @serialData 映射条目的数量（int），然后按插入顺序依次写出每个映射条目的键和值。
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        Object[] ks = keys, vs = vals;
+        for (int i = 0, n = used; i < n; i++) {
+            if (ks[i] != TOMBSTONE) {
+                s.writeObject(ks[i]);
+                s.writeObject(vs[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                    mappings);
+        allocate(indexSizeFor(mappings));
+        for (int i = 0; i < mappings; i++) {
+            K key = (K) s.readObject();
+            V value = (V) s.readObject();
+            putVal(HashMap.hash(key), key, value, false);
+        }
+    }
+}
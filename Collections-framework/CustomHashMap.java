@@ -0,0 +1,633 @@
+package map;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 使用自定义散列策略（HashingStrategy）的散列表。
+ *
+ * 桶（bin）的结构与 HashMap 相同，节点直接复用 HashMap.Node，
+ * 区别只在于 hash()、getNode、putVal、removeNode 中计算散列值和比较键的地方都交给了 strategy：
+ *   hash(key)   = strategy.hashCode(key) 的高16位与低16位异或（与 HashMap.hash() 的扰动方式相同）
+ *   键相等      = (k == key) || strategy.equals(key, k)
+ * 这样就可以把原始的键直接放进散列表并直接用它来查找，不再需要为每次查找分配一个包装对象。
+ *
+ * 与 HashMap 不同的是，这里的桶不会被转换为红黑树（TreeNode）。
+ * TreeNode 在散列值相同时依靠 Comparable（compareTo）来排序，而 strategy 定义的相等性
+ * （例如忽略大小写）与键本身的 compareTo 并不一致，树化之后查找仍然要退化成遍历整个子树，
+ * 所以这里始终使用链表，请保证 strategy.hashCode 的分布足够均匀。
+ *
+ * 允许 null 键和 null 值，null 键不会传给 strategy。get、containsKey、remove 等方法接收的
+ * Object 参数会被强制转换为 K，如果类型不对会抛出 ClassCastException（与带 Comparator 的 TreeMap 类似）。
+ *
+ * 请注意，此实现不同步。迭代器是快速失败的。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see HashingStrategy
+ * @see HashMap
+ */
+public class CustomHashMap<K,V> extends AbstractMap<K,V>
+        implements Map<K,V>, Cloneable {
+
+    /**
+     * 默认初始容量 - 必须是2的幂。
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，必须是2的幂并且小于等于 2的30的幂。
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 没有在构造函数中指定时使用的默认负载因子。
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 计算散列值和比较键的策略
+     */
+    final HashingStrategy<? super K> strategy;
+
+    /**
+     * 散列表，第一次使用时才初始化，长度总是2的幂。
+     */
+    transient HashMap.Node<K,V>[] table;
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 缓存的 keySet() 和 values() 视图
+     */
+    transient Set<K> keySetView;
+    transient Collection<V> valuesView;
+
+    /**
+     * 映射条目的数量
+     */
+    transient int size;
+
+    /**
+     * 结构修改的次数，用于迭代器的快速失败。
+     */
+    transient int modCount;
+
+    /**
+     * 当 size 到达 threshold 这个阈值时会扩容（capacity * load factor）。
+     * table 还没有分配时保存的是初始容量，0 表示 DEFAULT_INITIAL_CAPACITY。
+     */
+    int threshold;
+
+    /**
+     * 负载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 构造一个具有特定初始容量和负载因子的空的 CustomHashMap 实例
+     */
+    public CustomHashMap(HashingStrategy<? super K> strategy, int initialCapacity, float loadFactor) {
+        if (strategy == null)
+            throw new NullPointerException();
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        this.strategy = strategy;
+        this.loadFactor = loadFactor;
+        this.threshold = HashMap.tableSizeFor(initialCapacity);
+    }
+
+    /**
+     * 构造一个具有特定初始容量和默认负载因子（0.75）的空的 CustomHashMap 实例
+     */
+    public CustomHashMap(HashingStrategy<? super K> strategy, int initialCapacity) {
+        this(strategy, initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 构造一个具有默认初始容量（16）和默认负载因子（0.75）的空的 CustomHashMap 实例
+     */
+    public CustomHashMap(HashingStrategy<? super K> strategy) {
+        if (strategy == null)
+            throw new NullPointerException();
+        this.strategy = strategy;
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+    }
+
+    /**
+     * 使用与指定的Map相同的映射构造一个新的 CustomHashMap 实例。
+     * 如果 m 中有多个键在 strategy 下相等，只保留迭代顺序中最后一个键对应的值（键保留第一个）。
+     */
+    public CustomHashMap(HashingStrategy<? super K> strategy, Map<? extends K, ? extends V> m) {
+        this(strategy);
+        putAll(m);
+    }
+
+    /* ---------------- Hashing -------------- */
+
+    /**
+     * 用 strategy 计算键的散列值，并像 HashMap.hash() 一样把高16位异或到低16位上。
+     */
+    final int hash(Object key) {
+        int h;
+        return (key == null) ? 0 : (h = strategy.hashCode(castKey(key))) ^ (h >>> 16);
+    }
+
+    // 用 strategy 判断两个非 null 的键是否相等
+    final boolean keyEquals(Object key, K k) {
+        return key != null && k != null && strategy.equals(castKey(key), k);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K> K castKey(Object key) {
+        return (K)key;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(Object key) {
+        HashMap.Node<K,V> e;
+        return (e = getNode(hash(key), key)) == null ? null : e.value;
+    }
+
+    // 返回给定散列值和key的那个节点，键的比较交给 strategy
+    final HashMap.Node<K,V> getNode(int hash, Object key) {
+        HashMap.Node<K,V>[] tab; HashMap.Node<K,V> e; int n; K k;
+        if ((tab = table) != null && (n = tab.length) > 0 &&
+                (e = tab[(n - 1) & hash]) != null) {
+            do {
+                if (e.hash == hash &&
+                        ((k = e.key) == key || keyEquals(key, k)))
+                    return e;
+            } while ((e = e.next) != null);
+        }
+        return null;
+    }
+
+    public boolean containsKey(Object key) {
+        return getNode(hash(key), key) != null;
+    }
+
+    public V put(K key, V value) {
+        return putVal(hash(key), key, value, false);
+    }
+
+    // 把映射条目加进散列表中，新节点接在链表尾部
+    final V putVal(int hash, K key, V value, boolean onlyIfAbsent) {
+        HashMap.Node<K,V>[] tab; HashMap.Node<K,V> p; int n, i;
+        if ((tab = table) == null || (n = tab.length) == 0)
+            n = (tab = resize()).length;
+        if ((p = tab[i = (n - 1) & hash]) == null)
+            tab[i] = new HashMap.Node<>(hash, key, value, null);
+        else {
+            HashMap.Node<K,V> e; K k;
+            if (p.hash == hash &&
+                    ((k = p.key) == key || keyEquals(key, k)))
+                e = p;
+            else {
+                for (;;) {
+                    if ((e = p.next) == null) {
+                        p.next = new HashMap.Node<>(hash, key, value, null);
+                        break;
+                    }
+                    if (e.hash == hash &&
+                            ((k = e.key) == key || keyEquals(key, k)))
+                        break;
+                    p = e;
+                }
+            }
+            if (e != null) { // existing mapping for key
+                V oldValue = e.value;
+                if (!onlyIfAbsent || oldValue == null)
+                    e.value = value;
+                return oldValue;
+            }
+        }
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * 初始化表或使表的大小变为原来的两倍，与 HashMap.resize() 一样按 (hash & oldCap) 拆分链表。
+     * 节点中保存了散列值，所以扩容时不会再调用 strategy.hashCode。
+     */
+    final HashMap.Node<K,V>[] resize() {
+        HashMap.Node<K,V>[] oldTab = table;
+        int oldCap = (oldTab == null) ? 0 : oldTab.length;
+        int oldThr = threshold;
+        int newCap, newThr = 0;
+        if (oldCap > 0) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return oldTab;
+            }
+            else if ((newCap = oldCap << 1) < MAXIMUM_CAPACITY &&
+                    oldCap >= DEFAULT_INITIAL_CAPACITY)
+                newThr = oldThr << 1;
+        }
+        else if (oldThr > 0)
+            newCap = oldThr;
+        else {
+            newCap = DEFAULT_INITIAL_CAPACITY;
+            newThr = (int)(DEFAULT_LOAD_FACTOR * DEFAULT_INITIAL_CAPACITY);
+        }
+        if (newThr == 0) {
+            float ft = (float)newCap * loadFactor;
+            newThr = (newCap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                    (int)ft : Integer.MAX_VALUE);
+        }
+        threshold = newThr;
+        @SuppressWarnings({"rawtypes","unchecked"})
+        HashMap.Node<K,V>[] newTab = (HashMap.Node<K,V>[])new HashMap.Node[newCap];
+        table = newTab;
+        if (oldTab != null) {
+            for (int j = 0; j < oldCap; ++j) {
+                HashMap.Node<K,V> e;
+                if ((e = oldTab[j]) != null) {
+                    oldTab[j] = null;
+                    if (e.next == null)
+                        newTab[e.hash & (newCap - 1)] = e;
+                    else { // preserve order
+                        HashMap.Node<K,V> loHead = null, loTail = null;
+                        HashMap.Node<K,V> hiHead = null, hiTail = null;
+                        HashMap.Node<K,V> next;
+                        do {
+                            next = e.next;
+                            if ((e.hash & oldCap) == 0) {
+                                if (loTail == null)
+                                    loHead = e;
+                                else
+                                    loTail.next = e;
+                                loTail = e;
+                            }
+                            else {
+                                if (hiTail == null)
+                                    hiHead = e;
+                                else
+                                    hiTail.next = e;
+                                hiTail = e;
+                            }
+                        } while ((e = next) != null);
+                        if (loTail != null) {
+                            loTail.next = null;
+                            newTab[j] = loHead;
+                        }
+                        if (hiTail != null) {
+                            hiTail.next = null;
+                            newTab[j + oldCap] = hiHead;
+                        }
+                    }
+                }
+            }
+        }
+        return newTab;
+    }
+
+    public V remove(Object key) {
+        HashMap.Node<K,V> e;
+        return (e = removeNode(hash(key), key, null, false)) == null ?
+                null : e.value;
+    }
+
+    /**
+     * 删除给定散列值和key的节点
+     *
+     * @param matchValue if true only remove if value is equal
+     */
+    final HashMap.Node<K,V> removeNode(int hash, Object key, Object value,
+                                       boolean matchValue) {
+        HashMap.Node<K,V>[] tab; HashMap.Node<K,V> p; int n, index;
+        if ((tab = table) != null && (n = tab.length) > 0 &&
+                (p = tab[index = (n - 1) & hash]) != null) {
+            HashMap.Node<K,V> node = null, e; K k; V v;
+            if (p.hash == hash &&
+                    ((k = p.key) == key || keyEquals(key, k)))
+                node = p;
+            else if ((e = p.next) != null) {
+                do {
+                    if (e.hash == hash &&
+                            ((k = e.key) == key || keyEquals(key, k))) {
+                        node = e;
+                        break;
+                    }
+                    p = e;
+                } while ((e = e.next) != null);
+            }
+            if (node != null && (!matchValue || (v = node.value) == value ||
+                    (value != null && value.equals(v)))) {
+                if (node == p)
+                    tab[index] = node.next;
+                else
+                    p.next = node.next;
+                ++modCount;
+                --size;
+                return node;
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        HashMap.Node<K,V>[] tab;
+        modCount++;
+        if ((tab = table) != null && size > 0) {
+            size = 0;
+            for (int i = 0; i < tab.length; ++i)
+                tab[i] = null;
+        }
+    }
+
+    public boolean containsValue(Object value) {
+        HashMap.Node<K,V>[] tab; V v;
+        if ((tab = table) != null && size > 0) {
+            for (int i = 0; i < tab.length; ++i) {
+                for (HashMap.Node<K,V> e = tab[i]; e != null; e = e.next) {
+                    if ((v = e.value) == value ||
+                            (value != null && value.equals(v)))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Overrides of JDK8 Map extension methods
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        HashMap.Node<K,V> e;
+        return (e = getNode(hash(key), key)) == null ? defaultValue : e.value;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(hash(key), key, value, true);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return removeNode(hash(key), key, value, true) != null;
+    }
+
+    /**
+     * 只计算一次散列值：先用 getNode 查找，找不到时再调用 mappingFunction 并插入。
+     */
+    @Override
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        int hash = hash(key);
+        HashMap.Node<K,V> e; V oldValue;
+        if ((e = getNode(hash, key)) != null && (oldValue = e.value) != null)
+            return oldValue;
+        int mc = modCount;
+        V v = mappingFunction.apply(key);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (v == null)
+            return null;
+        if (e != null)
+            e.value = v;
+        else
+            putVal(hash, key, v, false);
+        return v;
+    }
+
+    @Override
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null || remappingFunction == null)
+            throw new NullPointerException();
+        int hash = hash(key);
+        HashMap.Node<K,V> e = getNode(hash, key);
+        if (e == null) {
+            putVal(hash, key, value, false);
+            return value;
+        }
+        V v = (e.value == null) ? value : remappingFunction.apply(e.value, value);
+        if (v == null)
+            removeNode(hash, key, null, false);
+        else
+            e.value = v;
+        return v;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        HashMap.Node<K,V>[] tab;
+        if (action == null)
+            throw new NullPointerException();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            for (int i = 0; i < tab.length; ++i) {
+                for (HashMap.Node<K,V> e = tab[i]; e != null; e = e.next)
+                    action.accept(e.key, e.value);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        HashMap.Node<K,V>[] tab;
+        if (function == null)
+            throw new NullPointerException();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            for (int i = 0; i < tab.length; ++i) {
+                for (HashMap.Node<K,V> e = tab[i]; e != null; e = e.next)
+                    e.value = function.apply(e.key, e.value);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 键视图。contains 和 remove 使用 strategy 判断相等。
+     */
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySetView) == null ? (keySetView = new AbstractSet<K>() {
+            public int size()                 { return size; }
+            public void clear()               { CustomHashMap.this.clear(); }
+            public Iterator<K> iterator() {
+                return new HashIterator<K>() {
+                    public K next() { return nextNode().key; }
+                };
+            }
+            public boolean contains(Object o) { return containsKey(o); }
+            public boolean remove(Object key) {
+                return removeNode(hash(key), key, null, false) != null;
+            }
+        }) : ks;
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs;
+        return (vs = valuesView) == null ? (valuesView = new AbstractCollection<V>() {
+            public int size()                 { return size; }
+            public void clear()               { CustomHashMap.this.clear(); }
+            public Iterator<V> iterator() {
+                return new HashIterator<V>() {
+                    public V next() { return nextNode().value; }
+                };
+            }
+            public boolean contains(Object o) { return containsValue(o); }
+        }) : vs;
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { CustomHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new HashIterator<Map.Entry<K,V>>() {
+                public Map.Entry<K,V> next() { return nextNode(); }
+            };
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            HashMap.Node<K,V> candidate = getNode(hash(key), key);
+            return candidate != null && Objects.equals(candidate.value, e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                Object key = e.getKey();
+                Object value = e.getValue();
+                return removeNode(hash(key), key, value, true) != null;
+            }
+            return false;
+        }
+        public final void forEach(Consumer<? super Map.Entry<K,V>> action) {
+            HashMap.Node<K,V>[] tab;
+            if (action == null)
+                throw new NullPointerException();
+            if (size > 0 && (tab = table) != null) {
+                int mc = modCount;
+                for (int i = 0; i < tab.length; ++i) {
+                    for (HashMap.Node<K,V> e = tab[i]; e != null; e = e.next)
+                        action.accept(e);
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // iterators
+
+    abstract class HashIterator<T> implements Iterator<T> {
+        HashMap.Node<K,V> next;        // next entry to return
+        HashMap.Node<K,V> current;     // current entry
+        int expectedModCount;          // for fast-fail
+        int index;                     // current slot
+
+        HashIterator() {
+            expectedModCount = modCount;
+            HashMap.Node<K,V>[] t = table;
+            current = next = null;
+            index = 0;
+            if (t != null && size > 0) { // advance to first entry
+                do {} while (index < t.length && (next = t[index++]) == null);
+            }
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        final HashMap.Node<K,V> nextNode() {
+            HashMap.Node<K,V>[] t;
+            HashMap.Node<K,V> e = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (e == null)
+                throw new NoSuchElementException();
+            if ((next = (current = e).next) == null && (t = table) != null) {
+                do {} while (index < t.length && (next = t[index++]) == null);
+            }
+            return e;
+        }
+
+        public final void remove() {
+            HashMap.Node<K,V> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            K key = p.key;
+            removeNode(p.hash, key, null, false);
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * 返回一个浅拷贝，键和值本身不会被复制，strategy 也是共享的。
+     * 节点中保存的散列值直接复用，不会再调用 strategy.hashCode。
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object clone() {
+        CustomHashMap<K,V> result;
+        try {
+            result = (CustomHashMap<K,V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        result.entrySet = null;
+        result.keySetView = null;
+        result.valuesView = null;
+        result.modCount = 0;
+        HashMap.Node<K,V>[] tab = table;
+        if (tab != null) {
+            @SuppressWarnings({"rawtypes","unchecked"})
+            HashMap.Node<K,V>[] newTab = (HashMap.Node<K,V>[])new HashMap.Node[tab.length];
+            for (int i = 0; i < tab.length; ++i) {
+                HashMap.Node<K,V> tail = null;
+                for (HashMap.Node<K,V> e = tab[i]; e != null; e = e.next) {
+                    HashMap.Node<K,V> c = new HashMap.Node<>(e.hash, e.key, e.value, null);
+                    if (tail == null)
+                        newTab[i] = c;
+                    else
+                        tail.next = c;
+                    tail = c;
+                }
+            }
+            result.table = newTab;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,550 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+import memory.ObjectLayout;
+
+/**
+ * 有序（非递减）的 int 列表，按块做差分（delta）和帧参考（frame-of-reference）位压缩，只能在末尾追加。
+ *
+ * 用 ArrayList<Integer> 保存上亿个有序的 ID 时，每个元素要一个 Integer 对象和一个引用，大约 20 字节，
+ * 遍历时每个元素都要解引用一次。此类把元素按 BLOCK_SIZE（128）个分为一块：
+ *   1. 每块保存第一个元素（first）、相邻元素差值的最小值（minDelta）和位宽（bits）；
+ *   2. 其余 127 个元素保存为与前一个元素的差值减去 minDelta，每个占 bits 位，紧密地排列在 long[] data 中。
+ * 所以元素比较密集时每个元素只需要 1~2 字节；间隔比较均匀时（例如步长固定的 ID）减去 minDelta 之后位宽接近 0。
+ *
+ * 各块的 first 同时作为跳表指针（skip pointer）：binarySearch 和 Cursor.advanceTo 先在 first 上二分查找，
+ * 只解码目标所在的一块。遍历时一次把整块解码到 int[BLOCK_SIZE] 缓冲区中，内层循环只有移位、与和加法，
+ * 没有拆箱，也没有随机的内存访问。
+ *
+ * 还没有填满一块的元素保存在未压缩的 tail 中，追加时只写 tail，填满之后一次压缩成一块。
+ * get(int) 需要解码块内该元素之前的部分，最坏情况下是 O(BLOCK_SIZE)，所以此类没有实现 RandomAccess，
+ * 顺序访问应当使用 cursor() 或者 forEachInt。
+ *
+ * 不允许 null，不支持 set 和删除。请注意，此实现不同步。
+ *
+ * @see ArrayList
+ */
+public class DeltaPackedIntList extends AbstractList<Integer> {
+
+    static final int BLOCK_SHIFT = 7;
+
+    /**
+     * 每块的元素个数
+     */
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final int[] EMPTY_INTS = {};
+    private static final byte[] EMPTY_BYTES = {};
+    private static final long[] EMPTY_LONGS = {};
+
+    /**
+     * 每块的第一个元素，同时作为跳表指针
+     */
+    int[] firsts;
+
+    /**
+     * 每块中相邻元素差值的最小值，按无符号数解释
+     */
+    int[] minDeltas;
+
+    /**
+     * 每块的压缩数据在 data 中的起始下标
+     */
+    int[] offsets;
+
+    /**
+     * 每块中每个差值占的位数，0 表示这一块的差值都等于 minDelta
+     */
+    byte[] bits;
+
+    /**
+     * 已经压缩的块数
+     */
+    int blockCount;
+
+    /**
+     * 所有块的压缩数据
+     */
+    long[] data;
+
+    /**
+     * data 中已经使用的长度
+     */
+    int dataLength;
+
+    /**
+     * 还没有压缩的最后不满一块的元素，个数为 size & (BLOCK_SIZE - 1)
+     */
+    final int[] tail = new int[BLOCK_SIZE];
+
+    /**
+     * 最后一个元素
+     */
+    int last;
+
+    int size;
+
+    /**
+     * 构造一个空的列表
+     */
+    public DeltaPackedIntList() {
+        firsts = minDeltas = EMPTY_INTS;
+        offsets = EMPTY_INTS;
+        bits = EMPTY_BYTES;
+        data = EMPTY_LONGS;
+    }
+
+    /**
+     * 构造一个空的列表，预先按每个元素 2 字节为 expectedSize 个元素分配空间
+     */
+    public DeltaPackedIntList(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal Capacity: " + expectedSize);
+        int blocks = expectedSize >>> BLOCK_SHIFT;
+        firsts = new int[blocks];
+        minDeltas = new int[blocks];
+        offsets = new int[blocks];
+        bits = new byte[blocks];
+        data = new long[(int)Math.min((long)blocks * (BLOCK_SIZE * 2 / 8), MAX_ARRAY_SIZE)];
+    }
+
+    // 差值 b - a 按无符号数解释，非递减的序列中总是非负的
+    static long delta(int a, int b) {
+        return Integer.toUnsignedLong(b - a);
+    }
+
+    static long unsigned(int x) {
+        return Integer.toUnsignedLong(x);
+    }
+
+    /* ---------------- Appending -------------- */
+
+    /**
+     * 在末尾追加一个元素
+     *
+     * @throws IllegalArgumentException 如果 value 小于最后一个元素
+     */
+    public void addInt(int value) {
+        if (size > 0 && value < last)
+            throw new IllegalArgumentException("Illegal value: " + value + " < " + last);
+        if (size == MAX_ARRAY_SIZE)
+            throw new OutOfMemoryError();
+        int t = size & (BLOCK_SIZE - 1);
+        tail[t] = value;
+        last = value;
+        ++size;
+        ++modCount;
+        if (t == BLOCK_SIZE - 1)
+            packTail();
+    }
+
+    /**
+     * 在末尾追加一个元素，与 addInt 相同
+     *
+     * @throws NullPointerException 如果 e 为 null
+     * @throws IllegalArgumentException 如果 e 小于最后一个元素
+     */
+    @Override
+    public boolean add(Integer e) {
+        addInt(e.intValue());
+        return true;
+    }
+
+    /**
+     * 把填满的 tail 压缩成一块
+     */
+    private void packTail() {
+        final int[] t = tail;
+        long min = -1L, max = 0L;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            long d = delta(t[i - 1], t[i]);
+            if (Long.compareUnsigned(d, min) < 0)
+                min = d;
+            if (Long.compareUnsigned(d, max) > 0)
+                max = d;
+        }
+        int b = BitPacking.bitWidth(max - min);
+        int words = BitPacking.words(BLOCK_SIZE - 1, b);
+        if (blockCount == firsts.length)
+            growBlocks();
+        if (dataLength + words > data.length)
+            growData(dataLength + words);
+        final int k = blockCount, base = dataLength;
+        firsts[k] = t[0];
+        minDeltas[k] = (int)min;
+        offsets[k] = base;
+        bits[k] = (byte)b;
+        if (b > 0) {
+            final long[] d = data;
+            for (int i = 1, p = 0; i < BLOCK_SIZE; i++, p += b)
+                BitPacking.write(d, base, p, b, delta(t[i - 1], t[i]) - min);
+        }
+        dataLength = base + words;
+        blockCount = k + 1;
+    }
+
+    private void growBlocks() {
+        int oldCapacity = firsts.length;
+        int newCapacity = Math.max(oldCapacity + (oldCapacity >> 1), 4);
+        firsts = Arrays.copyOf(firsts, newCapacity);
+        minDeltas = Arrays.copyOf(minDeltas, newCapacity);
+        offsets = Arrays.copyOf(offsets, newCapacity);
+        bits = Arrays.copyOf(bits, newCapacity);
+    }
+
+    private void growData(int minCapacity) {
+        if (minCapacity < 0 || minCapacity > MAX_ARRAY_SIZE)
+            throw new OutOfMemoryError();
+        int oldCapacity = data.length;
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (newCapacity - minCapacity < 0)
+            newCapacity = minCapacity;
+        if (newCapacity - MAX_ARRAY_SIZE > 0)
+            newCapacity = MAX_ARRAY_SIZE;
+        data = Arrays.copyOf(data, newCapacity);
+    }
+
+    /**
+     * 把各个数组的容量缩减到当前使用的大小
+     */
+    public void trimToSize() {
+        if (blockCount < firsts.length) {
+            firsts = Arrays.copyOf(firsts, blockCount);
+            minDeltas = Arrays.copyOf(minDeltas, blockCount);
+            offsets = Arrays.copyOf(offsets, blockCount);
+            bits = Arrays.copyOf(bits, blockCount);
+        }
+        if (dataLength < data.length)
+            data = Arrays.copyOf(data, dataLength);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(data, 0, dataLength, 0L);   // 压缩时按位或写入，必须从 0 开始
+        dataLength = 0;
+        blockCount = 0;
+        size = 0;
+        ++modCount;
+    }
+
+    /* ---------------- Decoding -------------- */
+
+    /**
+     * 把第 k 块解码到 buf 中
+     */
+    void decodeBlock(int k, int[] buf) {
+        int v = firsts[k];
+        buf[0] = v;
+        final int b = bits[k];
+        final long min = unsigned(minDeltas[k]);
+        if (b == 0) {
+            for (int i = 1; i < BLOCK_SIZE; i++)
+                buf[i] = v += min;
+            return;
+        }
+        final long[] d = data;
+        final long mask = BitPacking.mask(b);
+        final int base = offsets[k];
+        for (int i = 1, p = 0; i < BLOCK_SIZE; i++, p += b)
+            buf[i] = v += BitPacking.read(d, base, p, b, mask) + min;
+    }
+
+    /**
+     * 第 k 块中下标为 j 的元素，只解码前 j 个差值
+     */
+    int valueAt(int k, int j) {
+        int v = firsts[k];
+        final int b = bits[k];
+        final long min = unsigned(minDeltas[k]);
+        if (b == 0)
+            return (int)(v + min * j);
+        final long[] d = data;
+        final long mask = BitPacking.mask(b);
+        final int base = offsets[k];
+        for (int i = 1, p = 0; i <= j; i++, p += b)
+            v += BitPacking.read(d, base, p, b, mask) + min;
+        return v;
+    }
+
+    // 包括 tail 在内的块数
+    private int totalBlocks() {
+        return (size + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+    }
+
+    private int first(int k) {
+        return (k < blockCount) ? firsts[k] : tail[0];
+    }
+
+    /**
+     * 在 [from, totalBlocks()) 中查找最后一个 first 小于 key 的块，没有则返回 from。
+     * 大于等于 key 的第一个元素一定在返回的块中，或者是下一块的 first。
+     */
+    int lastBlockBelow(int key, int from) {
+        int lo = from, hi = totalBlocks() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (first(mid) < key)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return Math.max(hi, from);
+    }
+
+    /* ---------------- Reading -------------- */
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void rangeCheck(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    /**
+     * 返回下标为 index 的元素，最坏情况下需要解码 BLOCK_SIZE - 1 个差值
+     */
+    public int getInt(int index) {
+        rangeCheck(index);
+        int k = index >>> BLOCK_SHIFT, j = index & (BLOCK_SIZE - 1);
+        return (k < blockCount) ? valueAt(k, j) : tail[j];
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    /**
+     * 返回最后一个元素
+     *
+     * @throws NoSuchElementException 如果列表为空
+     */
+    public int lastInt() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return last;
+    }
+
+    /**
+     * 二分查找 key，与 Collections.binarySearch 的返回值相同。有多个相等的元素时返回第一个的下标。
+     * 先在各块的 first 上二分查找，再顺序解码目标所在的一块，O(log(size / BLOCK_SIZE) + BLOCK_SIZE)。
+     *
+     * @return key 的下标；不存在时返回 (-(插入位置) - 1)
+     */
+    public int binarySearch(int key) {
+        if (size == 0)
+            return -1;
+        int k = lastBlockBelow(key, 0);
+        int idx = k << BLOCK_SHIFT, end = Math.min(idx + BLOCK_SIZE, size);
+        int v;
+        if (k < blockCount) {
+            // 与 valueAt 相同的解码，遇到不小于 key 的元素就停止
+            v = firsts[k];
+            final int b = bits[k];
+            final long min = unsigned(minDeltas[k]);
+            final long[] d = data;
+            final long mask = BitPacking.mask(b);
+            final int base = offsets[k];
+            // b 为 0 时这一块在 data 中没有数据
+            for (int p = 0; v < key && ++idx < end; p += b)
+                v += ((b > 0) ? BitPacking.read(d, base, p, b, mask) : 0L) + min;
+        } else {
+            v = tail[0];
+            while (v < key && ++idx < end)
+                v = tail[idx & (BLOCK_SIZE - 1)];
+        }
+        if (idx == end) {
+            // 这一块的元素都小于 key，结果是下一块的 first
+            if (idx == size)
+                return -(size + 1);
+            v = first(k + 1);
+        }
+        return (v == key) ? idx : -(idx + 1);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Integer))
+            return -1;
+        int i = binarySearch((Integer) o);
+        return (i >= 0) ? i : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        int i = indexOf(o);
+        if (i < 0)
+            return -1;
+        int key = (Integer) o;
+        Cursor c = cursor();
+        c.advanceTo(key);
+        int last = i;
+        while (c.hasNext() && c.nextInt() == key)
+            last = c.nextIndex() - 1;
+        return last;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * 按顺序对每个元素执行给定的操作，一次解码一整块
+     */
+    public void forEachInt(IntConsumer action) {
+        Objects.requireNonNull(action);
+        final int expectedModCount = modCount;
+        final int[] buf = new int[BLOCK_SIZE];
+        for (int k = 0, n = blockCount; k < n; k++) {
+            decodeBlock(k, buf);
+            for (int i = 0; i < BLOCK_SIZE; i++)
+                action.accept(buf[i]);
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+        for (int i = 0, n = size & (BLOCK_SIZE - 1); i < n; i++)
+            action.accept(tail[i]);
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * 返回包含所有元素的数组
+     */
+    public int[] toIntArray() {
+        int[] a = new int[size];
+        final int[] buf = new int[BLOCK_SIZE];
+        for (int k = 0; k < blockCount; k++) {
+            decodeBlock(k, buf);
+            System.arraycopy(buf, 0, a, k << BLOCK_SHIFT, BLOCK_SIZE);
+        }
+        System.arraycopy(tail, 0, a, blockCount << BLOCK_SHIFT, size & (BLOCK_SIZE - 1));
+        return a;
+    }
+
+    /**
+     * 估算此列表占用的堆内存（字节），见 ObjectLayout
+     */
+    public long estimateFootprintBytes() {
+        return ObjectLayout.instanceSize(6, 16 + 4)
+                + 2 * ObjectLayout.arraySize(firsts.length, 4)
+                + ObjectLayout.arraySize(offsets.length, 4)
+                + ObjectLayout.arraySize(bits.length, 1)
+                + ObjectLayout.arraySize(data.length, 8)
+                + ObjectLayout.arraySize(BLOCK_SIZE, 4);
+    }
+
+    /* ---------------- Cursor -------------- */
+
+    /**
+     * 返回从第一个元素开始的游标
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * 与 cursor() 相同
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Cursor();
+    }
+
+    /**
+     * 按块解码的游标，nextInt 不装箱。
+     * advanceTo 利用跳表指针向前跳过不可能包含目标的块，适合求多个有序列表的交集。
+     * 与 ArrayList 的迭代器相同，游标是快速失败（fail-fast）的。
+     */
+    public final class Cursor implements PrimitiveIterator.OfInt {
+        private final int[] buf = new int[BLOCK_SIZE];
+        private int block = -1;     // buf 中是哪一块
+        private int pos;            // 下一个元素在 buf 中的下标
+        private int count;          // buf 中有效元素的个数
+        private int expectedModCount = modCount;
+
+        Cursor() {
+        }
+
+        private void load(int k) {
+            if (k < blockCount) {
+                decodeBlock(k, buf);
+                count = BLOCK_SIZE;
+            } else {
+                count = size & (BLOCK_SIZE - 1);
+                System.arraycopy(tail, 0, buf, 0, count);
+            }
+            block = k;
+            pos = 0;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        /**
+         * 下一次 nextInt 返回的元素的下标
+         */
+        public int nextIndex() {
+            return (block < 0) ? 0 : (block << BLOCK_SHIFT) + pos;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex() < size;
+        }
+
+        @Override
+        public int nextInt() {
+            checkForComodification();
+            if (pos == count) {
+                int k = block + 1;
+                if (k >= totalBlocks())
+                    throw new NoSuchElementException();
+                load(k);
+            }
+            return buf[pos++];
+        }
+
+        /**
+         * 向前移动到第一个大于等于 target 的元素，下一次 nextInt 返回这个元素。
+         * 只会向前移动，target 小于等于下一个元素时不移动。
+         *
+         * @return 存在这样的元素时返回 true，否则游标移动到末尾并返回 false
+         */
+        public boolean advanceTo(int target) {
+            checkForComodification();
+            if (block >= 0 && pos < count && buf[count - 1] >= target) {
+                // 目标在当前块中
+                while (buf[pos] < target)
+                    ++pos;
+                return true;
+            }
+            int total = totalBlocks();
+            int k = lastBlockBelow(target, block + 1);
+            if (k >= total) {
+                if (total > 0) {
+                    load(total - 1);
+                    pos = count;
+                }
+                return false;
+            }
+            load(k);
+            while (pos < count && buf[pos] < target)
+                ++pos;
+            if (pos < count)
+                return true;
+            if (k + 1 < total) {
+                load(k + 1);    // 下一块的 first 一定不小于 target
+                return true;
+            }
+            return false;
+        }
+    }
+}
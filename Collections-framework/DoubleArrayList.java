@@ -0,0 +1,337 @@
+import java.util.*;
+import java.util.function.DoubleConsumer;
+
+/**
+ * 元素为 double 的可调整大小的数组列表，与 ArrayList 使用相同的扩容策略，但是元素直接保存在 double[] 中，没有装箱。
+ *
+ * ArrayList<Double> 的 indexOf/contains 逐个元素调用 equals，每次比较都要解引用一个 Double 对象。
+ * 这里 indexOfDouble、lastIndexOfDouble、containsDouble、min、max、sum 和 countInRange 都是对 double[] 的连续扫描，
+ * 由 ArrayKernels 完成：jdk.incubator.vector 可用时一次比较或累加一整个向量（AVX2 上 4 个元素，AVX-512 上 8 个），
+ * 否则逐个处理。实现在启动时选择，见 ArrayKernels。
+ *
+ * 同时实现了 List<Double>，以装箱的形式访问元素，null 不能加入列表。
+ * 按 double 的 == 比较元素：indexOfDouble 找不到 NaN，0.0 与 -0.0 相等；这与 Double.equals 不同，
+ * 所以 indexOf(Object) 等 List 方法对这两种值逐个按 equals 比较。
+ * 请注意，此实现不同步。
+ *
+ * @see ArrayList
+ * @see ArrayKernels
+ */
+public class DoubleArrayList extends AbstractList<Double> implements RandomAccess, Cloneable {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final double[] EMPTY_ELEMENTDATA = {};
+
+    private static final double[] DEFAULTCAPACITY_EMPTY_ELEMENTDATA = {};
+
+    private static final ArrayKernels KERNELS = ArrayKernels.INSTANCE;
+
+    double[] elementData;
+
+    private int size;
+
+    /**
+     * 构造一个具有指定初始容量的空列表
+     */
+    public DoubleArrayList(int initialCapacity) {
+        if (initialCapacity > 0) {
+            this.elementData = new double[initialCapacity];
+        } else if (initialCapacity == 0) {
+            this.elementData = EMPTY_ELEMENTDATA;
+        } else {
+            throw new IllegalArgumentException("Illegal Capacity: " +
+                    initialCapacity);
+        }
+    }
+
+    /**
+     * 构造一个空列表，第一次添加元素时分配默认容量（10）
+     */
+    public DoubleArrayList() {
+        this.elementData = DEFAULTCAPACITY_EMPTY_ELEMENTDATA;
+    }
+
+    /**
+     * 构造一个包含数组 a 中所有元素的列表
+     */
+    public DoubleArrayList(double[] a) {
+        this.elementData = (a.length == 0) ? EMPTY_ELEMENTDATA : a.clone();
+        this.size = a.length;
+    }
+
+    /* ---------------- Capacity -------------- */
+
+    public void trimToSize() {
+        modCount++;
+        if (size < elementData.length) {
+            elementData = (size == 0)
+                    ? EMPTY_ELEMENTDATA
+                    : Arrays.copyOf(elementData, size);
+        }
+    }
+
+    public void ensureCapacity(int minCapacity) {
+        int minExpand = (elementData != DEFAULTCAPACITY_EMPTY_ELEMENTDATA) ? 0 : DEFAULT_CAPACITY;
+        if (minCapacity > minExpand)
+            ensureExplicitCapacity(minCapacity);
+    }
+
+    private void ensureCapacityInternal(int minCapacity) {
+        if (elementData == DEFAULTCAPACITY_EMPTY_ELEMENTDATA)
+            minCapacity = Math.max(DEFAULT_CAPACITY, minCapacity);
+        ensureExplicitCapacity(minCapacity);
+    }
+
+    private void ensureExplicitCapacity(int minCapacity) {
+        modCount++;
+        if (minCapacity - elementData.length > 0)
+            grow(minCapacity);
+    }
+
+    private void grow(int minCapacity) {
+        int oldCapacity = elementData.length;
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (newCapacity - minCapacity < 0)
+            newCapacity = minCapacity;
+        if (newCapacity - MAX_ARRAY_SIZE > 0)
+            newCapacity = hugeCapacity(minCapacity);
+        elementData = Arrays.copyOf(elementData, newCapacity);
+    }
+
+    private static int hugeCapacity(int minCapacity) {
+        if (minCapacity < 0) // overflow
+            throw new OutOfMemoryError();
+        return (minCapacity > MAX_ARRAY_SIZE) ? Integer.MAX_VALUE : MAX_ARRAY_SIZE;
+    }
+
+    /* ---------------- Primitive access -------------- */
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void rangeCheck(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    private void rangeCheckForAdd(int index) {
+        if (index > size || index < 0)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    private String outOfBoundsMsg(int index) {
+        return "Index: " + index + ", Size: " + size;
+    }
+
+    public double getDouble(int index) {
+        rangeCheck(index);
+        return elementData[index];
+    }
+
+    public double setDouble(int index, double element) {
+        rangeCheck(index);
+        double oldValue = elementData[index];
+        elementData[index] = element;
+        return oldValue;
+    }
+
+    public void addDouble(double e) {
+        ensureCapacityInternal(size + 1);
+        elementData[size++] = e;
+    }
+
+    public void addDouble(int index, double element) {
+        rangeCheckForAdd(index);
+        ensureCapacityInternal(size + 1);
+        System.arraycopy(elementData, index, elementData, index + 1, size - index);
+        elementData[index] = element;
+        size++;
+    }
+
+    /**
+     * 在末尾追加数组 a 的 [from, to) 区间
+     */
+    public void addAll(double[] a, int from, int to) {
+        if (from < 0 || to > a.length || from > to)
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", length: " + a.length);
+        int numNew = to - from;
+        ensureCapacityInternal(size + numNew);
+        System.arraycopy(a, from, elementData, size, numNew);
+        size += numNew;
+    }
+
+    /**
+     * 删除下标为 index 的元素并返回它
+     */
+    public double removeDoubleAt(int index) {
+        rangeCheck(index);
+        modCount++;
+        double oldValue = elementData[index];
+        int numMoved = size - index - 1;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index + 1, elementData, index, numMoved);
+        --size;
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        size = 0;
+    }
+
+    public double[] toDoubleArray() {
+        return Arrays.copyOf(elementData, size);
+    }
+
+    public void forEachDouble(DoubleConsumer action) {
+        Objects.requireNonNull(action);
+        final int expectedModCount = modCount;
+        final double[] elementData = this.elementData;
+        final int size = this.size;
+        for (int i = 0; modCount == expectedModCount && i < size; i++)
+            action.accept(elementData[i]);
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /* ---------------- Scans -------------- */
+
+    /**
+     * 返回第一个等于 e 的元素的下标，不存在时返回 -1。按 == 比较，NaN 永远找不到，0.0 与 -0.0 相等。
+     */
+    public int indexOfDouble(double e) {
+        return KERNELS.indexOf(elementData, 0, size, e);
+    }
+
+    public int lastIndexOfDouble(double e) {
+        return KERNELS.lastIndexOf(elementData, 0, size, e);
+    }
+
+    public boolean containsDouble(double e) {
+        return indexOfDouble(e) >= 0;
+    }
+
+    /**
+     * 返回所有元素之和。启用了向量内核时加法的顺序不同，结果在最后几位上可能与逐个累加不同。
+     */
+    public double sum() {
+        return KERNELS.sum(elementData, 0, size);
+    }
+
+    /**
+     * 返回最小的元素。与 Math.min/Math.max 相同，有任何一个元素为 NaN 时结果为 NaN。
+     *
+     * @throws NoSuchElementException 如果列表为空
+     */
+    public double min() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return KERNELS.min(elementData, 0, size);
+    }
+
+    /**
+     * 返回最大的元素。与 Math.min/Math.max 相同，有任何一个元素为 NaN 时结果为 NaN。
+     *
+     * @throws NoSuchElementException 如果列表为空
+     */
+    public double max() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return KERNELS.max(elementData, 0, size);
+    }
+
+    /**
+     * 返回满足 lo <= e <= hi 的元素个数。NaN 不计入。
+     */
+    public int countInRange(double lo, double hi) {
+        return KERNELS.countInRange(elementData, 0, size, lo, hi);
+    }
+
+    /* ---------------- List<Double> -------------- */
+
+    @Override
+    public Double get(int index) {
+        return getDouble(index);
+    }
+
+    @Override
+    public Double set(int index, Double element) {
+        return setDouble(index, element);
+    }
+
+    @Override
+    public boolean add(Double e) {
+        addDouble(e);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Double element) {
+        addDouble(index, element);
+    }
+
+    @Override
+    public Double remove(int index) {
+        return removeDoubleAt(index);
+    }
+
+    /**
+     * 与 ArrayList 相同，按 Double.equals 比较。
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Double))
+            return -1;
+        double e = (Double) o;
+        if (e != 0.0 && e == e)
+            return indexOfDouble(e);
+        for (int i = 0; i < size; i++)
+            if (o.equals(elementData[i]))
+                return i;
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        if (!(o instanceof Double))
+            return -1;
+        double e = (Double) o;
+        if (e != 0.0 && e == e)
+            return lastIndexOfDouble(e);
+        for (int i = size - 1; i >= 0; i--)
+            if (o.equals(elementData[i]))
+                return i;
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        modCount++;
+        System.arraycopy(elementData, toIndex, elementData, fromIndex, size - toIndex);
+        size -= toIndex - fromIndex;
+    }
+
+    @Override
+    public DoubleArrayList clone() {
+        try {
+            DoubleArrayList v = (DoubleArrayList) super.clone();
+            v.elementData = Arrays.copyOf(elementData, size);
+            v.modCount = 0;
+            return v;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+    }
+}
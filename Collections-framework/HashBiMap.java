@@ -0,0 +1,551 @@
+package map;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * 基于散列表的双向映射（BiMap），除了按键（key）索引的散列表之外，还同时维护一个按值（value）索引的散列表，
+ * 所以 containsValue、inverse().get(value) 以及 put 时检查值是否唯一都是 O(1) 的，
+ * 而 HashMap.containsValue 需要扫描整个 table，代价是 O(capacity)。
+ *
+ * 每个映射条目是一个 BiEntry，它继承自 HashMap.Node：
+ *   Node.hash / Node.key / Node.value / Node.next 的含义与 HashMap 完全相同，next 串起按键索引的桶；
+ *   额外的 valueHash 是 HashMap.hash(value)，nextInValueBucket 串起按值索引的桶。
+ * 两个散列表的容量总是相同的，扩容时都按节点中保存的散列值拆分，不会再调用 hashCode()。
+ *
+ * 内存开销（以 64 位 JVM、开启压缩指针为例）：
+ *   1. 每个映射条目比 HashMap.Node 多一个 int 和一个引用，即从 32 字节变为 40 字节；
+ *   2. 多一个与 table 等长的 valueTable，负载因子为 0.75 时平均每个映射条目多 4 / 0.75 ≈ 5.3 字节。
+ * 合计每个映射条目大约多 13 字节，约为 HashMap 的 1.35 倍，换来 O(1) 的反向查找。
+ *
+ * 允许 null 键和 null 值（null 值同样只能出现一次）。桶不会被转换为红黑树。
+ * 修改已有键的值时会删除旧的映射条目并插入一个新的，所以通过迭代器得到的映射条目是一个视图，
+ * 它的 setValue 同样会检查值的唯一性。
+ *
+ * 请注意，此实现不同步。迭代器是快速失败的。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see BiMap
+ * @see HashMap
+ */
+public class HashBiMap<K,V> extends AbstractMap<K,V> implements BiMap<K,V> {
+
+    /**
+     * 默认初始容量 - 必须是2的幂。
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，必须是2的幂并且小于等于 2的30的幂。
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 负载因子，两个散列表共用。
+     */
+    static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * 双向映射的节点。键方向的链表使用继承来的 next，值方向的链表使用 nextInValueBucket。
+     * 节点的 value 在放进散列表之后不会再修改。
+     */
+    static final class BiEntry<K,V> extends HashMap.Node<K,V> {
+        final int valueHash;
+        BiEntry<K,V> nextInValueBucket;
+
+        BiEntry(int keyHash, K key, V value, int valueHash) {
+            super(keyHash, key, value, null);
+            this.valueHash = valueHash;
+        }
+    }
+
+    /**
+     * 按键索引的散列表
+     */
+    transient BiEntry<K,V>[] table;
+
+    /**
+     * 按值索引的散列表，长度与 table 相同
+     */
+    transient BiEntry<K,V>[] valueTable;
+
+    transient int size;
+
+    transient int modCount;
+
+    /**
+     * 当 size 超过这个阈值时扩容
+     */
+    transient int threshold;
+
+    transient Set<K> keySetView;
+    transient Set<V> valuesView;
+    transient Set<Map.Entry<K,V>> entrySet;
+    transient BiMap<V,K> inverse;
+
+    /**
+     * 构造一个能容纳 expectedSize 个映射条目而不需要扩容的空的 HashBiMap 实例
+     */
+    public HashBiMap(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    expectedSize);
+        float fc = (float)expectedSize / LOAD_FACTOR + 1.0f;
+        int cap = (fc >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY :
+                Math.max(DEFAULT_INITIAL_CAPACITY, HashMap.tableSizeFor((int)fc));
+        init(cap);
+    }
+
+    /**
+     * 构造一个具有默认初始容量（16）的空的 HashBiMap 实例
+     */
+    public HashBiMap() {
+        init(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * 使用与指定的Map相同的映射构造一个新的 HashBiMap 实例
+     *
+     * @throws IllegalArgumentException 如果 m 中有重复的值
+     */
+    public HashBiMap(Map<? extends K, ? extends V> m) {
+        this(m.size());
+        putAll(m);
+    }
+
+    @SuppressWarnings({"rawtypes","unchecked"})
+    private void init(int cap) {
+        table = (BiEntry<K,V>[])new BiEntry[cap];
+        valueTable = (BiEntry<K,V>[])new BiEntry[cap];
+        threshold = (cap >= MAXIMUM_CAPACITY) ? Integer.MAX_VALUE : (int)(cap * LOAD_FACTOR);
+    }
+
+    /* ---------------- Lookups -------------- */
+
+    // 在按键索引的散列表中查找
+    @SuppressWarnings("unchecked")
+    final BiEntry<K,V> getEntryByKey(int hash, Object key) {
+        BiEntry<K,V>[] tab = table;
+        K k;
+        for (BiEntry<K,V> e = tab[(tab.length - 1) & hash]; e != null;
+             e = (BiEntry<K,V>)e.next) {
+            if (e.hash == hash &&
+                    ((k = e.key) == key || (key != null && key.equals(k))))
+                return e;
+        }
+        return null;
+    }
+
+    // 在按值索引的散列表中查找
+    final BiEntry<K,V> getEntryByValue(int valueHash, Object value) {
+        BiEntry<K,V>[] tab = valueTable;
+        V v;
+        for (BiEntry<K,V> e = tab[(tab.length - 1) & valueHash]; e != null;
+             e = e.nextInValueBucket) {
+            if (e.valueHash == valueHash &&
+                    ((v = e.value) == value || (value != null && value.equals(v))))
+                return e;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(Object key) {
+        BiEntry<K,V> e = getEntryByKey(HashMap.hash(key), key);
+        return (e == null) ? null : e.value;
+    }
+
+    public boolean containsKey(Object key) {
+        return getEntryByKey(HashMap.hash(key), key) != null;
+    }
+
+    /**
+     * 判断是否存在给定的值，只需要查找按值索引的散列表，O(1)。
+     */
+    public boolean containsValue(Object value) {
+        return getEntryByValue(HashMap.hash(value), value) != null;
+    }
+
+    /* ---------------- Mutations -------------- */
+
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    public V forcePut(K key, V value) {
+        return put(key, value, true);
+    }
+
+    final V put(K key, V value, boolean force) {
+        int keyHash = HashMap.hash(key);
+        int valueHash = HashMap.hash(value);
+        BiEntry<K,V> oldByKey = getEntryByKey(keyHash, key);
+        if (oldByKey != null && oldByKey.valueHash == valueHash &&
+                Objects.equals(value, oldByKey.value))
+            return value;
+        BiEntry<K,V> oldByValue = getEntryByValue(valueHash, value);
+        if (oldByValue != null) {
+            if (!force)
+                throw new IllegalArgumentException("value already present: " + value);
+            delete(oldByValue);
+        }
+        if (oldByKey != null)
+            delete(oldByKey);
+        insert(new BiEntry<>(keyHash, key, value, valueHash));
+        return (oldByKey == null) ? null : oldByKey.value;
+    }
+
+    // inverse().put(value, key) 的实现：与 put 对称，此时 key 必须唯一
+    final K putInverse(V value, K key, boolean force) {
+        int keyHash = HashMap.hash(key);
+        int valueHash = HashMap.hash(value);
+        BiEntry<K,V> oldByValue = getEntryByValue(valueHash, value);
+        if (oldByValue != null && oldByValue.hash == keyHash &&
+                Objects.equals(key, oldByValue.key))
+            return key;
+        BiEntry<K,V> oldByKey = getEntryByKey(keyHash, key);
+        if (oldByKey != null) {
+            if (!force)
+                throw new IllegalArgumentException("value already present: " + key);
+            delete(oldByKey);
+        }
+        if (oldByValue != null)
+            delete(oldByValue);
+        insert(new BiEntry<>(keyHash, key, value, valueHash));
+        return (oldByValue == null) ? null : oldByValue.key;
+    }
+
+    // 把节点插到两个散列表对应桶的头部
+    final void insert(BiEntry<K,V> e) {
+        BiEntry<K,V>[] kt = table, vt = valueTable;
+        int ki = (kt.length - 1) & e.hash;
+        e.next = kt[ki];
+        kt[ki] = e;
+        int vi = (vt.length - 1) & e.valueHash;
+        e.nextInValueBucket = vt[vi];
+        vt[vi] = e;
+        ++modCount;
+        if (++size > threshold)
+            resize();
+    }
+
+    // 把节点从两个散列表中摘除
+    @SuppressWarnings("unchecked")
+    final void delete(BiEntry<K,V> entry) {
+        BiEntry<K,V>[] kt = table, vt = valueTable;
+        int ki = (kt.length - 1) & entry.hash;
+        BiEntry<K,V> prev = null;
+        for (BiEntry<K,V> e = kt[ki]; e != null; prev = e, e = (BiEntry<K,V>)e.next) {
+            if (e == entry) {
+                if (prev == null)
+                    kt[ki] = (BiEntry<K,V>)e.next;
+                else
+                    prev.next = e.next;
+                break;
+            }
+        }
+        int vi = (vt.length - 1) & entry.valueHash;
+        prev = null;
+        for (BiEntry<K,V> e = vt[vi]; e != null; prev = e, e = e.nextInValueBucket) {
+            if (e == entry) {
+                if (prev == null)
+                    vt[vi] = e.nextInValueBucket;
+                else
+                    prev.nextInValueBucket = e.nextInValueBucket;
+                break;
+            }
+        }
+        ++modCount;
+        --size;
+    }
+
+    /**
+     * 两个散列表同时扩容为原来的两倍。
+     * 与 HashMap.resize() 一样按 (hash & oldCap) 把每个桶拆成 lo/hi 两条链表，
+     * 这里链表的相对顺序没有意义（新节点本来就插在头部），所以直接头插。
+     */
+    @SuppressWarnings({"rawtypes","unchecked"})
+    final void resize() {
+        BiEntry<K,V>[] oldKt = table, oldVt = valueTable;
+        int oldCap = oldKt.length;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        int newCap = oldCap << 1;
+        BiEntry<K,V>[] kt = (BiEntry<K,V>[])new BiEntry[newCap];
+        BiEntry<K,V>[] vt = (BiEntry<K,V>[])new BiEntry[newCap];
+        for (int j = 0; j < oldCap; ++j) {
+            BiEntry<K,V> next;
+            for (BiEntry<K,V> e = oldKt[j]; e != null; e = next) {
+                next = (BiEntry<K,V>)e.next;
+                int i = e.hash & (newCap - 1);
+                e.next = kt[i];
+                kt[i] = e;
+            }
+            for (BiEntry<K,V> e = oldVt[j]; e != null; e = next) {
+                next = e.nextInValueBucket;
+                int i = e.valueHash & (newCap - 1);
+                e.nextInValueBucket = vt[i];
+                vt[i] = e;
+            }
+        }
+        table = kt;
+        valueTable = vt;
+        threshold = (newCap >= MAXIMUM_CAPACITY) ? Integer.MAX_VALUE : (int)(newCap * LOAD_FACTOR);
+    }
+
+    public V remove(Object key) {
+        BiEntry<K,V> e = getEntryByKey(HashMap.hash(key), key);
+        if (e == null)
+            return null;
+        delete(e);
+        return e.value;
+    }
+
+    public void clear() {
+        modCount++;
+        if (size > 0) {
+            size = 0;
+            Arrays.fill(table, null);
+            Arrays.fill(valueTable, null);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        BiEntry<K,V>[] tab = table;
+        for (int i = 0; i < tab.length; ++i) {
+            for (BiEntry<K,V> e = tab[i]; e != null; e = (BiEntry<K,V>)e.next)
+                action.accept(e.key, e.value);
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySetView) == null ? (keySetView = new KeySet()) : ks;
+    }
+
+    public Set<V> values() {
+        Set<V> vs;
+        return (vs = valuesView) == null ? (valuesView = new ValueSet()) : vs;
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    public BiMap<V,K> inverse() {
+        BiMap<V,K> inv;
+        return (inv = inverse) == null ? (inverse = new Inverse()) : inv;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { HashBiMap.this.clear(); }
+        public final Iterator<K> iterator() {
+            return new HashIterator<K>() {
+                K output(BiEntry<K,V> e) { return e.key; }
+            };
+        }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object o) {
+            BiEntry<K,V> e = getEntryByKey(HashMap.hash(o), o);
+            if (e == null)
+                return false;
+            delete(e);
+            return true;
+        }
+    }
+
+    final class ValueSet extends AbstractSet<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { HashBiMap.this.clear(); }
+        public final Iterator<V> iterator() {
+            return new HashIterator<V>() {
+                V output(BiEntry<K,V> e) { return e.value; }
+            };
+        }
+        public final boolean contains(Object o) { return containsValue(o); }
+        public final boolean remove(Object o) {
+            BiEntry<K,V> e = getEntryByValue(HashMap.hash(o), o);
+            if (e == null)
+                return false;
+            delete(e);
+            return true;
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { HashBiMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new HashIterator<Map.Entry<K,V>>() {
+                Map.Entry<K,V> output(BiEntry<K,V> e) { return new EntryView(e, this); }
+            };
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            BiEntry<K,V> candidate = getEntryByKey(HashMap.hash(key), key);
+            return candidate != null && Objects.equals(candidate.value, e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            BiEntry<K,V> candidate = getEntryByKey(HashMap.hash(key), key);
+            if (candidate == null || !Objects.equals(candidate.value, e.getValue()))
+                return false;
+            delete(candidate);
+            return true;
+        }
+    }
+
+    /**
+     * 迭代器返回的映射条目视图。setValue 通过 put 完成，所以同样会检查值的唯一性，
+     * 并且会用一个新的节点替换掉原来的节点。
+     */
+    final class EntryView extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = 1L;
+        private final transient HashIterator<?> it;
+
+        EntryView(BiEntry<K,V> e, HashIterator<?> it) {
+            super(e.key, e.value);
+            this.it = it;
+        }
+
+        public V setValue(V value) {
+            V oldValue = getValue();
+            if (Objects.equals(oldValue, value))
+                return oldValue;
+            boolean inSync = it.expectedModCount == modCount;
+            put(getKey(), value);
+            // 替换节点不改变映射条目的数量，也不会扩容，迭代可以继续
+            if (inSync)
+                it.expectedModCount = modCount;
+            super.setValue(value);
+            return oldValue;
+        }
+    }
+
+    /**
+     * 按键索引的散列表的迭代器，删除通过 delete 同时作用于两个散列表。
+     */
+    abstract class HashIterator<T> implements Iterator<T> {
+        BiEntry<K,V> next;        // next entry to return
+        BiEntry<K,V> current;     // current entry
+        int expectedModCount;     // for fast-fail
+        int index;                // current slot
+        final BiEntry<K,V>[] tab = table;
+
+        HashIterator() {
+            expectedModCount = modCount;
+            if (size > 0) { // advance to first entry
+                do {} while (index < tab.length && (next = tab[index++]) == null);
+            }
+        }
+
+        abstract T output(BiEntry<K,V> e);
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public final T next() {
+            BiEntry<K,V> e = next;
+            if (modCount != expectedModCount || tab != table)
+                throw new ConcurrentModificationException();
+            if (e == null)
+                throw new NoSuchElementException();
+            if ((next = (BiEntry<K,V>)(current = e).next) == null) {
+                do {} while (index < tab.length && (next = tab[index++]) == null);
+            }
+            return output(e);
+        }
+
+        public final void remove() {
+            BiEntry<K,V> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            // setValue 可能已经用新节点替换了 p，所以按键重新查找
+            BiEntry<K,V> e = getEntryByKey(p.hash, p.key);
+            if (e != null)
+                delete(e);
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * 反向视图：键是原来的值，值是原来的键。所有操作都直接作用于同一组 BiEntry。
+     */
+    final class Inverse extends AbstractMap<V,K> implements BiMap<V,K> {
+        public int size()                         { return size; }
+        public boolean isEmpty()                  { return size == 0; }
+        public void clear()                       { HashBiMap.this.clear(); }
+        public boolean containsKey(Object value)  { return HashBiMap.this.containsValue(value); }
+        public boolean containsValue(Object key)  { return HashBiMap.this.containsKey(key); }
+        public BiMap<K,V> inverse()               { return HashBiMap.this; }
+        public Set<V> keySet()                    { return HashBiMap.this.values(); }
+        public Set<K> values()                    { return HashBiMap.this.keySet(); }
+
+        public K get(Object value) {
+            BiEntry<K,V> e = getEntryByValue(HashMap.hash(value), value);
+            return (e == null) ? null : e.key;
+        }
+
+        public K put(V value, K key) {
+            return putInverse(value, key, false);
+        }
+
+        public K forcePut(V value, K key) {
+            return putInverse(value, key, true);
+        }
+
+        public K remove(Object value) {
+            BiEntry<K,V> e = getEntryByValue(HashMap.hash(value), value);
+            if (e == null)
+                return null;
+            delete(e);
+            return e.key;
+        }
+
+        public Set<Map.Entry<V,K>> entrySet() {
+            return new AbstractSet<Map.Entry<V,K>>() {
+                public int size()       { return size; }
+                public void clear()     { HashBiMap.this.clear(); }
+                public Iterator<Map.Entry<V,K>> iterator() {
+                    return new HashIterator<Map.Entry<V,K>>() {
+                        Map.Entry<V,K> output(BiEntry<K,V> e) {
+                            return new AbstractMap.SimpleImmutableEntry<>(e.value, e.key);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -35,6 +35,11 @@ import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import memory.AllocationProfiler;
+import memory.ObjectLayout;
 import sun.misc.SharedSecrets;
 
 /**
@@ -269,6 +274,21 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     static final int MIN_TREEIFY_CAPACITY = 64;
 
+    /**
+     * 收缩因子的上限与负载因子的比值。收缩因子不能超过负载因子的 1/4，
+     * 这样散列表收缩为一半之后的负载最多只有负载因子的一半，
+     * 离下一次扩容还有足够的距离，不会在扩容和收缩之间来回抖动（hysteresis）。
+     */
+    static final float MAX_SHRINK_TO_LOAD_RATIO = 0.25f;
+
+    /**
+     * getAll/putAll(K[], V[]) 每一批处理的键的数量。
+     * 一批中各个键的散列表槽位和桶的第一个节点分别在独立的循环中读取，互相之间没有数据依赖，
+     * CPU 可以同时发出多个缓存未命中的访存请求（memory-level parallelism），而不是一个接一个地等待。
+     * 64 个键的临时数组足够小，可以留在 L1 缓存中，同时也足够覆盖现代 CPU 的未完成访存请求的数量。
+     */
+    static final int BATCH_SIZE = 64;
+
     /**
      * Basic hash bin node, used for most entries.  (See below for
      * TreeNode subclass, and in LinkedHashMap for its Entry subclass.)
@@ -347,6 +367,14 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
     }
 
+    /**
+     * 对调用者直接给出的 hashCode 做与 hash() 相同的高低位异或扰动，
+     * 供 getByHash 等不需要键对象的方法使用。
+     */
+    static final int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
     /**
      * Returns x's Class if it is of the form "class C implements
      * Comparable<C>", else null.
@@ -408,6 +436,12 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     transient Node<K,V>[] table;
 
+    /**
+     * 是否可能存在树化的桶：树化时置为 true，clear 之后置为 false。
+     * 为 false 时 estimateFootprintBytes() 不需要检查每个桶，只需要 O(1) 的计算。
+     */
+    transient boolean treeified;
+
     /**
      * Holds cached entrySet(). Note that AbstractMap fields are used
      * for keySet() and values().
@@ -453,14 +487,32 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     final float loadFactor;
 
+    /**
+     * 收缩因子，0 表示从不自动收缩（默认）。
+     * 当 size 因为删除操作降到 capacity * shrinkFactor 以下时，散列表会收缩为原来的一半。
+     *
+     * @serial
+     */
+    final float shrinkFactor;
+
+    /**
+     * 当 size 降到这个阈值以下时会收缩（capacity * shrinkFactor），
+     * 0 表示不收缩（没有开启收缩，或者容量已经是 DEFAULT_INITIAL_CAPACITY）。
+     */
+    transient int shrinkThreshold;
+
     /* ---------------- Public operations -------------- */
 
     /**
-     * 构造一个具有特定初始容量和负载因子的空的 HashMap 实例
+     * 构造一个具有特定初始容量、负载因子和收缩因子的空的 HashMap 实例。
+     * 当大量删除之后 size 降到 capacity * shrinkFactor 以下时，散列表会收缩为原来的一半（但不会小于默认容量16），
+     * 这样迭代、clear() 和 containsValue 的开销就跟随当前的 size，而不是历史上的最大 size。
+     *
      * @param initialCapacity
      * @param loadFactor
+     * @param shrinkFactor 收缩因子，0 表示不收缩，最大为 loadFactor / 4
      */
-    public HashMap(int initialCapacity, float loadFactor) {
+    public HashMap(int initialCapacity, float loadFactor, float shrinkFactor) {
         if (initialCapacity < 0)
             throw new IllegalArgumentException("Illegal initial capacity: " +
                     initialCapacity);
@@ -469,11 +521,27 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (loadFactor <= 0 || Float.isNaN(loadFactor))
             throw new IllegalArgumentException("Illegal load factor: " +
                     loadFactor);
+        if (shrinkFactor < 0 || Float.isNaN(shrinkFactor) ||
+                shrinkFactor > loadFactor * MAX_SHRINK_TO_LOAD_RATIO)
+            throw new IllegalArgumentException("Illegal shrink factor: " +
+                    shrinkFactor);
         this.loadFactor = loadFactor;
+        this.shrinkFactor = shrinkFactor;
 
         // 初始化threshold，但是这里并没有将tableSizeFor找到的那个容量再乘以负载因子，
         // 而是在第一次调用put方法时（此时会调用到 putVal 方法，而putVal方法又调用resize方法，此时就会进行阈值的初始化）再进行初始化。
         this.threshold = tableSizeFor(initialCapacity);
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.probe(this, initialCapacity, 0, loadFactor);
+    }
+
+    /**
+     * 构造一个具有特定初始容量和负载因子的空的 HashMap 实例
+     * @param initialCapacity
+     * @param loadFactor
+     */
+    public HashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, 0.0f);
     }
 
     /**
@@ -489,6 +557,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     public HashMap() {
         this.loadFactor = DEFAULT_LOAD_FACTOR; // all other fields defaulted
+        this.shrinkFactor = 0.0f;
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.probe(this, -1, 0, DEFAULT_LOAD_FACTOR);
     }
 
     /**
@@ -498,6 +569,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     public HashMap(Map<? extends K, ? extends V> m) {
         this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.shrinkFactor = 0.0f;
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.probe(this, -1, 0, DEFAULT_LOAD_FACTOR);
         putMapEntries(m, false);
     }
 
@@ -578,6 +652,113 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         return null;
     }
 
+    /**
+     * 用调用者给出的散列值和匹配条件查找 value，不需要先构造一个键对象。
+     * 适用于键是复合对象（例如 (tenantId, itemId)）的场景：调用者按键的 hashCode() 的算法
+     * 直接用各个字段算出散列值，再用 matcher 比较各个字段，整个查找过程不分配任何对象。
+     *
+     * @param hash 要查找的键的 hashCode()，即未经扰动的原始值，这里会像 hash() 一样扰动一次
+     * @param matcher 判断桶中的某个键是否就是要找的键，必须与键的 equals 保持一致
+     * @return 匹配的键对应的value，没有匹配的键时返回 null
+     */
+    public V getByHash(int hash, Predicate<? super K> matcher) {
+        Node<K,V> e;
+        return (e = getNodeByHash(spread(hash), matcher)) == null ? null : e.value;
+    }
+
+    // 返回给定（已扰动的）散列值下第一个满足 matcher 的节点
+    final Node<K,V> getNodeByHash(int hash, Predicate<? super K> matcher) {
+        Node<K,V>[] tab; Node<K,V> e; int n;
+        if (matcher == null)
+            throw new NullPointerException();
+        if ((tab = table) != null && (n = tab.length) > 0 &&
+                (e = tab[(n - 1) & hash]) != null) {
+            // 树形的桶中 TreeNode 也通过 next 串成了链表，而树的查找需要一个真正的键来比较，
+            // 所以这里统一按链表遍历。树形的桶很少出现，而且最多只是线性地遍历这一个桶。
+            do {
+                if (e.hash == hash && matcher.test(e.key))
+                    return e;
+            } while ((e = e.next) != null);
+        }
+        return null;
+    }
+
+    /**
+     * 批量查找：把 keys[i] 对应的 value 写入 out[i]，没有映射的键写入 null。
+     * 与逐个调用 get 的结果相同，但是当散列表远大于 CPU 缓存时吞吐量更高。
+     *
+     * 逐个调用 get 时，每次查找都是一条依赖链：算散列值 -> 读 table 槽位 -> 读节点 -> 比较键，
+     * 前一个键的缓存未命中处理完之前下一个键根本没有开始。这里每 BATCH_SIZE 个键为一批，分阶段处理：
+     *   1. 计算这一批所有键的散列值；
+     *   2. 读出所有键对应的 table 槽位（桶的第一个节点）；
+     *   3. 读出所有第一个节点的散列值；
+     *   4. 逐个比较键，必要时沿着链表或红黑树继续查找。
+     * 第 2、3 步中各次访存互相独立，乱序执行的 CPU 可以让它们的缓存未命中重叠起来。
+     *
+     * @param keys 要查找的键
+     * @param out 存放结果的数组，长度不能小于 keys.length
+     * @return 找到映射的键的数量（value 为 null 的映射也算作找到）
+     * @throws IllegalArgumentException 如果 out.length 小于 keys.length
+     */
+    public int getAll(K[] keys, V[] out) {
+        int len = keys.length;
+        if (out.length < len)
+            throw new IllegalArgumentException("Illegal out length: " + out.length);
+        Node<K,V>[] tab; int n;
+        if ((tab = table) == null || (n = tab.length) == 0 || size == 0) {
+            Arrays.fill(out, 0, len, null);
+            return 0;
+        }
+        int batch = Math.min(len, BATCH_SIZE);
+        int[] hashes = new int[batch];
+        int[] firstHashes = new int[batch];
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] firsts = (Node<K,V>[])new Node[batch];
+        int found = 0;
+        for (int base = 0; base < len; base += batch) {
+            int m = Math.min(batch, len - base);
+            for (int j = 0; j < m; ++j)
+                hashes[j] = hash(keys[base + j]);
+            for (int j = 0; j < m; ++j)
+                firsts[j] = tab[(n - 1) & hashes[j]];
+            for (int j = 0; j < m; ++j) {
+                Node<K,V> first = firsts[j];
+                firstHashes[j] = (first == null) ? ~hashes[j] : first.hash;
+            }
+            for (int j = 0; j < m; ++j) {
+                Node<K,V> first = firsts[j], e = null;
+                if (first != null) {
+                    int hash = hashes[j];
+                    Object key = keys[base + j];
+                    K k;
+                    if (firstHashes[j] == hash &&
+                            ((k = first.key) == key || (key != null && key.equals(k))))
+                        e = first;
+                    else if (first.next != null) {
+                        if (first instanceof TreeNode)
+                            e = ((TreeNode<K,V>)first).getTreeNode(hash, key);
+                        else {
+                            for (Node<K,V> p = first.next; p != null; p = p.next) {
+                                if (p.hash == hash &&
+                                        ((k = p.key) == key || (key != null && key.equals(k)))) {
+                                    e = p;
+                                    break;
+                                }
+                            }
+                        }
+                    }
+                }
+                if (e != null) {
+                    out[base + j] = e.value;
+                    ++found;
+                } else
+                    out[base + j] = null;
+                firsts[j] = null;   // 不要让临时数组持有节点
+            }
+        }
+        return found;
+    }
+
     // 判断是否存在给定的key
     public boolean containsKey(Object key) {
         return getNode(hash(key), key) != null;
@@ -631,6 +812,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         ++modCount;
         if (++size > threshold)
             resize();
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.sized(this, size);
         afterNodeInsertion(evict);
         return null;
     }
@@ -670,9 +853,12 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                     (int)ft : Integer.MAX_VALUE);
         }
         threshold = newThr;    // 将阈值threshold设置为刚计算出来的newThr
+        shrinkThreshold = shrinkThresholdFor(newCap);
         @SuppressWarnings({"rawtypes","unchecked"})
         Node<K,V>[] newTab = (Node<K,V>[])new Node[newCap];    // 使用新的容量初始化一个新的辅助数组
         table = newTab;
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.resized(this, newCap, (oldTab != null) ? size : 0);
         if (oldTab != null) {    // 如果旧的表不为null，则将旧的表的全部元素散列到新的表中
             for (int j = 0; j < oldCap; ++j) {
                 Node<K,V> e;
@@ -718,6 +904,82 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         return newTab;
     }
 
+    // 返回容量为 cap 时的收缩阈值，没有开启收缩或者容量已经不能再小时返回0
+    final int shrinkThresholdFor(int cap) {
+        return (shrinkFactor > 0 && cap > DEFAULT_INITIAL_CAPACITY) ?
+                (int)((float)cap * shrinkFactor) : 0;
+    }
+
+    /**
+     * 使表的大小变为原来的一半，是 resize() 的逆操作（reverse split）。
+     * 扩容时桶 j 被拆分到了 j 和 j + oldCap 两个桶，收缩时新表的桶 j 就由旧表的桶 j 和 j + newCap 合并而成：
+     *   1. 只有一个桶不为空时，整个桶（包括树形的桶）原样搬过去，因为它的所有节点的 hash & (newCap - 1) 都等于 j；
+     *   2. 两个桶都不为空时，先把树形的桶还原成链表，再把 hi 链表接在 lo 链表后面，
+     *      合并后的长度达到 TREEIFY_THRESHOLD 时重新树化。
+     *
+     * @return the table
+     */
+    final Node<K,V>[] shrink() {
+        Node<K,V>[] oldTab = table;
+        int oldCap = oldTab.length;
+        int newCap = oldCap >>> 1;
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] newTab = (Node<K,V>[])new Node[newCap];
+        table = newTab;
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.resized(this, newCap, size);
+        for (int j = 0; j < newCap; ++j) {
+            Node<K,V> lo = oldTab[j], hi = oldTab[j + newCap];
+            oldTab[j] = oldTab[j + newCap] = null;
+            if (hi == null)
+                newTab[j] = lo;
+            else if (lo == null)
+                newTab[j] = hi;
+            else {
+                if (lo instanceof TreeNode)
+                    lo = ((TreeNode<K,V>)lo).untreeify(this);
+                if (hi instanceof TreeNode)
+                    hi = ((TreeNode<K,V>)hi).untreeify(this);
+                int binCount = 1;
+                Node<K,V> tail = lo;
+                for (; tail.next != null; tail = tail.next)
+                    ++binCount;
+                tail.next = hi;
+                for (Node<K,V> e = hi; e != null; e = e.next)
+                    ++binCount;
+                newTab[j] = lo;
+                if (binCount >= TREEIFY_THRESHOLD && newCap >= MIN_TREEIFY_CAPACITY)
+                    treeifyBin(newTab, lo.hash);
+            }
+        }
+        float ft = (float)newCap * loadFactor;
+        threshold = (newCap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                (int)ft : Integer.MAX_VALUE);
+        shrinkThreshold = shrinkThresholdFor(newCap);
+        return newTab;
+    }
+
+    /**
+     * 把散列表的容量缩减到刚好能以当前的负载因子容纳 size 个映射条目（但不小于默认容量16）。
+     * 与收缩因子无关，可以在通过迭代器或 removeIf 批量删除之后手动调用，
+     * 因为迭代过程中的删除不会触发自动收缩。
+     */
+    public void trimToSize() {
+        Node<K,V>[] tab;
+        if ((tab = table) == null)
+            return;
+        int cap = tab.length;
+        boolean shrunk = false;
+        while (cap > DEFAULT_INITIAL_CAPACITY &&
+                (float)size <= (float)(cap >>> 1) * loadFactor) {
+            tab = shrink();
+            cap = tab.length;
+            shrunk = true;
+        }
+        if (shrunk)
+            ++modCount;
+    }
+
     /**
      * Replaces all linked nodes in bin at index for given hash unless
      * table is too small, in which case resizes instead.
@@ -744,8 +1006,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 }
                 tl = p;
             } while ((e = e.next) != null);
-            if ((tab[index] = hd) != null)
+            if ((tab[index] = hd) != null) {
+                treeified = true;
                 hd.treeify(tab);
+            }
         }
     }
 
@@ -761,6 +1025,46 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         putMapEntries(m, true);
     }
 
+    /**
+     * 批量插入：依次把 keys[i] 映射到 vals[i]，与逐个调用 put 的结果相同。
+     *
+     * 开始之前按与 putMapEntries 相同的方式预先扩容：表还没有分配时按 len 个不同的键确定初始容量，
+     * 否则 len 超过阈值时扩容一次；之后如果还需要扩容，由 putVal 按需进行。
+     * 所以 keys 中有重复的键或者已经存在的键时，不会按 size + len 多分配容量；
+     * 然后按批先算出一批键的散列值（hashCode() 往往要读取键对象本身，这些读取互相独立），再逐个调用 putVal。
+     * 插入需要修改桶，而且可能触发树化，所以不像 getAll 那样提前读出桶的第一个节点。
+     *
+     * @param keys 要插入的键
+     * @param vals 对应的 value，长度必须与 keys 相同
+     * @throws IllegalArgumentException 如果 keys 和 vals 的长度不同
+     */
+    public void putAll(K[] keys, V[] vals) {
+        int len = keys.length;
+        if (vals.length != len)
+            throw new IllegalArgumentException("Illegal vals length: " + vals.length);
+        if (len == 0)
+            return;
+        // pre-size，与 putMapEntries 相同
+        if (table == null) {
+            float ft = ((float)len / loadFactor) + 1.0F;
+            int t = ((ft < (float)MAXIMUM_CAPACITY) ?
+                    (int)ft : MAXIMUM_CAPACITY);
+            if (t > threshold)
+                threshold = tableSizeFor(t);
+        }
+        else if (len > threshold)
+            resize();
+        int batch = Math.min(len, BATCH_SIZE);
+        int[] hashes = new int[batch];
+        for (int base = 0; base < len; base += batch) {
+            int m = Math.min(batch, len - base);
+            for (int j = 0; j < m; ++j)
+                hashes[j] = hash(keys[base + j]);
+            for (int j = 0; j < m; ++j)
+                putVal(hashes[j], keys[base + j], vals[base + j], false, true);
+        }
+    }
+
     /**
      * Removes the mapping for the specified key from this map if present.
      *
@@ -821,6 +1125,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 ++modCount;
                 --size;
                 afterNodeRemoval(node);
+                // 迭代器的删除（movable 为 false）不能移动其他节点，所以不在这里收缩
+                if (movable && size < shrinkThreshold)
+                    shrink();
                 return node;
             }
         }
@@ -834,8 +1141,18 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     public void clear() {
         Node<K,V>[] tab;
         modCount++;
+        treeified = false;
         if ((tab = table) != null && size > 0) {
             size = 0;
+            if (shrinkFactor > 0 && tab.length > DEFAULT_INITIAL_CAPACITY) {
+                // 开启了收缩时直接丢弃大的散列表，下一次 put 时按默认容量重新分配
+                table = null;
+                threshold = 0;
+                shrinkThreshold = 0;
+                if (AllocationProfiler.ENABLED)
+                    AllocationProfiler.resized(this, 0, 0);
+                return;
+            }
             for (int i = 0; i < tab.length; ++i)
                 tab[i] = null;
         }
@@ -1117,10 +1434,55 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
         ++modCount;
         ++size;
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.sized(this, size);
         afterNodeInsertion(true);
         return v;
     }
 
+    /**
+     * computeIfAbsent 的免分配版本：先用调用者给出的散列值和 matcher 查找，
+     * 只有在找不到（或者对应的value为 null）时才调用 keyFactory 构造真正的键，并用 mappingFunction 计算value。
+     * 所以命中时不分配任何对象，未命中时也只分配一次键对象。
+     *
+     * @param hash 要查找的键的 hashCode()，即未经扰动的原始值
+     * @param matcher 判断桶中的某个键是否就是要找的键，必须与键的 equals 保持一致
+     * @param keyFactory 未命中时用来构造键，构造出来的键的 hashCode() 必须等于 hash
+     * @param mappingFunction 未命中时用来计算value，返回 null 则不插入
+     * @return 当前（已存在的或者新计算出的）value
+     * @throws IllegalArgumentException 如果构造出来的键的 hashCode() 与 hash 不一致
+     */
+    public V computeIfAbsent(int hash, Predicate<? super K> matcher,
+                             Supplier<? extends K> keyFactory,
+                             Function<? super K, ? extends V> mappingFunction) {
+        if (keyFactory == null || mappingFunction == null)
+            throw new NullPointerException();
+        int h = spread(hash);
+        Node<K,V> e; V oldValue;
+        if ((e = getNodeByHash(h, matcher)) != null &&
+                (oldValue = e.value) != null) {
+            afterNodeAccess(e);
+            return oldValue;
+        }
+        if (e != null) {
+            // 键已经存在，只是value为 null，不需要再构造键
+            V v = mappingFunction.apply(e.key);
+            if (v != null) {
+                e.value = v;
+                afterNodeAccess(e);
+            }
+            return v;
+        }
+        K key = keyFactory.get();
+        // 键放错了桶之后再也查不到，所以这里必须检查
+        if (hash(key) != h)
+            throw new IllegalArgumentException("hash does not match key.hashCode()");
+        V v = mappingFunction.apply(key);
+        if (v != null)
+            putVal(h, key, v, false, true);
+        return v;
+    }
+
     public V computeIfPresent(K key,
                               BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
         if (remappingFunction == null)
@@ -1189,6 +1551,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             }
             ++modCount;
             ++size;
+            if (AllocationProfiler.ENABLED)
+                AllocationProfiler.sized(this, size);
             afterNodeInsertion(true);
         }
         return v;
@@ -1248,6 +1612,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             }
             ++modCount;
             ++size;
+            if (AllocationProfiler.ENABLED)
+                AllocationProfiler.sized(this, size);
             afterNodeInsertion(true);
         }
         return value;
@@ -1306,6 +1672,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             throw new InternalError(e);
         }
         result.reinitialize();
+        if (AllocationProfiler.ENABLED)
+            AllocationProfiler.probe(result, -1, 0, loadFactor);
         result.putMapEntries(this, false);
         return result;
     }
@@ -1318,6 +1686,72 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                         DEFAULT_INITIAL_CAPACITY;
     }
 
+    /* ------------------------------------------------------------ */
+    // Footprint
+
+    /**
+     * 估算此 HashMap 自身占用的堆内存（字节），不包括键和值对象。
+     * 包括 HashMap 实例、table 数组（按容量而不是 size 计算）和所有的 Node，已经树化的桶按 TreeNode 的大小计算。
+     * 对象的大小按当前 JVM 的对象布局计算（见 ObjectLayout），是否开启压缩指针会影响结果。
+     *
+     * 从来没有树化过的桶（或者 clear() 之后没有再树化过）时是 O(1) 的，这是键的 hashCode 分布正常时的情况，
+     * 适合定期调用来驱动缓存淘汰或容量规划；发生过树化之后要检查每个桶是否已经树化，是 O(capacity)，
+     * 但只读取 table 数组，只遍历树化的桶。
+     *
+     * Node 按 HashMap 自身的 Node 和 TreeNode 的大小计算。子类的节点如果有额外的字段
+     * （例如 LinkedHashMap.Entry 的 before、after），这部分没有计入，结果会偏小。
+     */
+    public long estimateFootprintBytes() {
+        long bytes = ObjectLayout.instanceSize(4, 25);
+        Node<K,V>[] tab = table;
+        if (tab == null)
+            return bytes;
+        bytes += ObjectLayout.referenceArraySize(tab.length);
+        int treeNodes = 0;
+        if (treeified) {
+            for (Node<K,V> e : tab) {
+                if (e instanceof TreeNode) {
+                    for (; e != null; e = e.next)
+                        ++treeNodes;
+                }
+            }
+        }
+        bytes += (long)(size - treeNodes) * ObjectLayout.instanceSize(3, 4);
+        // TreeNode 继承了 LinkedHashMap.Entry 的 before、after，加上 parent、left、right、prev 和 red
+        bytes += (long)treeNodes * ObjectLayout.instanceSize(9, 5);
+        return bytes;
+    }
+
+    /**
+     * 估算此 HashMap 占用的堆内存（字节），包括键和值对象。
+     * 在 estimateFootprintBytes() 的基础上，对每个不为 null 的键和值分别调用 keySizer 和 valueSizer，
+     * 需要遍历所有的映射条目。被多个映射共享的键或值对象会被重复计算。
+     *
+     * @param keySizer 返回一个键对象占用的字节数
+     * @param valueSizer 返回一个值对象占用的字节数
+     */
+    public long estimateFootprintBytes(ToLongFunction<? super K> keySizer,
+                                       ToLongFunction<? super V> valueSizer) {
+        if (keySizer == null || valueSizer == null)
+            throw new NullPointerException();
+        long bytes = estimateFootprintBytes();
+        Node<K,V>[] tab;
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            for (Node<K,V> e : tab) {
+                for (; e != null; e = e.next) {
+                    if (e.key != null)
+                        bytes += keySizer.applyAsLong(e.key);
+                    if (e.value != null)
+                        bytes += valueSizer.applyAsLong(e.value);
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+        return bytes;
+    }
+
     /**
      * Save the state of the <tt>HashMap</tt> instance to a stream (i.e.,
      * serialize it).
@@ -1351,6 +1785,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (loadFactor <= 0 || Float.isNaN(loadFactor))
             throw new InvalidObjectException("Illegal load factor: " +
                     loadFactor);
+        if (shrinkFactor < 0 || Float.isNaN(shrinkFactor) ||
+                shrinkFactor > loadFactor * MAX_SHRINK_TO_LOAD_RATIO)
+            throw new InvalidObjectException("Illegal shrink factor: " +
+                    shrinkFactor);
         s.readInt();                // Read and ignore number of buckets
         int mappings = s.readInt(); // Read number of mappings (size)
         if (mappings < 0)
@@ -1376,6 +1814,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             @SuppressWarnings({"rawtypes","unchecked"})
             Node<K,V>[] tab = (Node<K,V>[])new Node[cap];
             table = tab;
+            shrinkThreshold = shrinkThresholdFor(cap);
 
             // Read the keys and values, and put the mappings in the HashMap
             for (int i = 0; i < mappings; i++) {
@@ -1748,7 +2187,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         values = null;
         modCount = 0;
         threshold = 0;
+        shrinkThreshold = 0;
         size = 0;
+        treeified = false;
     }
 
     // Callbacks to allow LinkedHashMap post-actions
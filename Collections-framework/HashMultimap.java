@@ -0,0 +1,318 @@
+package map;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 一个键（key）可以对应多个值（value）的散列表，用来代替 HashMap<K, List<V>>。
+ *
+ * 键直接存放在一个 HashMap 的节点（Node）中，节点的 value 字段按值的个数有两种形态：
+ *   1. 只有一个值时，直接把这个值放在 Node.value 里（inline），不再额外分配任何对象；
+ *   2. 有两个及以上的值时，Node.value 指向一个 Values 对象，它内部是一个按需增长的紧凑数组。
+ * 当值的个数重新减少到一个时，会退回到第1种形态。
+ *
+ * 以 64 位 JVM（开启压缩指针）为例，HashMap<K, List<V>> 中每个键至少需要
+ * Node（32字节）+ ArrayList（24字节）+ 默认容量为10的 Object[]（56字节）= 112 字节，
+ * 而这里只有一个值的键只需要一个 Node（32字节），两个值的键需要 Node + Values（16字节）+ Object[2]（24字节）= 72 字节。
+ * 对于大多数键只对应一两个值的倒排索引，内存占用会降低数倍。
+ *
+ * 同一个键下的值按插入顺序保存，允许重复的值，也允许 null 值和 null 键。
+ * putValue、removeValue 和 forEachValue 都是通过 HashMap.getNode 直接定位到节点来操作的，
+ * 不会为每一次调用分配临时对象。
+ *
+ * 请注意，此实现不同步。
+ *
+ * @param <K> the type of keys maintained by this multimap
+ * @param <V> the type of mapped values
+ * @see HashMap
+ */
+public class HashMultimap<K,V> {
+
+    /**
+     * 值的数组第一次扩容时的容量，也就是从 inline 单值升级时的容量。
+     */
+    private static final int INITIAL_VALUES_CAPACITY = 2;
+
+    /**
+     * 分配给值数组的最大容量，与 ArrayList 保持一致。
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * 存放键的散列表，value 要么是一个 V，要么是一个 Values。
+     */
+    final HashMap<K,Object> map;
+
+    /**
+     * 所有键下值的总个数。
+     */
+    private int size;
+
+    /**
+     * 同一个键有两个及以上的值时使用的紧凑数组。
+     * 这个类是私有的，所以用户的值不可能是 Values 的实例，不会与 inline 的单值混淆。
+     */
+    private static final class Values {
+        Object[] elems;
+        int size;
+
+        Values(Object first, Object second) {
+            elems = new Object[INITIAL_VALUES_CAPACITY];
+            elems[0] = first;
+            elems[1] = second;
+            size = 2;
+        }
+
+        void add(Object v) {
+            if (size == elems.length) {
+                int oldCapacity = elems.length;
+                // 与 ArrayList.grow 一样按1.5倍增长
+                int newCapacity = oldCapacity + (oldCapacity >> 1);
+                if (newCapacity - MAX_ARRAY_SIZE > 0)
+                    newCapacity = MAX_ARRAY_SIZE;
+                elems = Arrays.copyOf(elems, newCapacity);
+            }
+            elems[size++] = v;
+        }
+
+        int indexOf(Object o) {
+            Object[] es = elems;
+            for (int i = 0, n = size; i < n; i++)
+                if (Objects.equals(o, es[i]))
+                    return i;
+            return -1;
+        }
+
+        void removeAt(int index) {
+            int numMoved = size - index - 1;
+            if (numMoved > 0)
+                System.arraycopy(elems, index + 1, elems, index, numMoved);
+            elems[--size] = null; // clear to let GC do its work
+        }
+    }
+
+    /**
+     * 构造一个具有特定初始键容量的空的 HashMultimap 实例
+     * @param expectedKeys 预计的不同键的个数
+     */
+    public HashMultimap(int expectedKeys) {
+        this.map = new HashMap<>(expectedKeys);
+    }
+
+    /**
+     * 构造一个具有默认初始容量（16）的空的 HashMultimap 实例
+     */
+    public HashMultimap() {
+        this.map = new HashMap<>();
+    }
+
+    /**
+     * 返回所有键下值的总个数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 返回不同键的个数
+     */
+    public int keyCount() {
+        return map.size();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return map.getNode(HashMap.hash(key), key) != null;
+    }
+
+    /**
+     * 判断给定的键下是否存在给定的值
+     */
+    public boolean containsEntry(Object key, Object value) {
+        HashMap.Node<K,Object> e = map.getNode(HashMap.hash(key), key);
+        if (e == null)
+            return false;
+        Object v = e.value;
+        if (v instanceof Values)
+            return ((Values)v).indexOf(value) >= 0;
+        return Objects.equals(v, value);
+    }
+
+    /**
+     * 返回给定的键下值的个数，键不存在则返回0
+     */
+    public int valueCount(Object key) {
+        HashMap.Node<K,Object> e = map.getNode(HashMap.hash(key), key);
+        if (e == null)
+            return 0;
+        Object v = e.value;
+        return (v instanceof Values) ? ((Values)v).size : 1;
+    }
+
+    /**
+     * 在给定的键下追加一个值。
+     * 键不存在时值直接 inline 在新节点里；已有一个值时升级为 Values；已经是 Values 时追加到数组末尾。
+     */
+    public void putValue(K key, V value) {
+        int hash = HashMap.hash(key);
+        HashMap.Node<K,Object> e = map.getNode(hash, key);
+        if (e == null)
+            map.putVal(hash, key, value, false, true);
+        else {
+            Object v = e.value;
+            if (v instanceof Values)
+                ((Values)v).add(value);
+            else
+                e.value = new Values(v, value);
+        }
+        ++size;
+    }
+
+    /**
+     * 删除给定的键下第一个与 value 相等的值。
+     * 删除后只剩一个值时退回 inline 形态，一个都不剩时删除这个键。
+     *
+     * @return 是否找到并删除了这个值
+     */
+    public boolean removeValue(Object key, Object value) {
+        int hash = HashMap.hash(key);
+        HashMap.Node<K,Object> e = map.getNode(hash, key);
+        if (e == null)
+            return false;
+        Object v = e.value;
+        if (v instanceof Values) {
+            Values vs = (Values)v;
+            int i = vs.indexOf(value);
+            if (i < 0)
+                return false;
+            vs.removeAt(i);
+            if (vs.size == 1)
+                e.value = vs.elems[0];
+        }
+        else if (Objects.equals(v, value))
+            map.removeNode(hash, key, null, false, true);
+        else
+            return false;
+        --size;
+        return true;
+    }
+
+    /**
+     * 删除给定的键以及它下面所有的值
+     *
+     * @return 被删除的值的个数
+     */
+    public int removeAll(Object key) {
+        HashMap.Node<K,Object> e = map.removeNode(HashMap.hash(key), key, null, false, true);
+        if (e == null)
+            return 0;
+        Object v = e.value;
+        int removed = (v instanceof Values) ? ((Values)v).size : 1;
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * 按插入顺序对给定的键下的每一个值执行 action，键不存在时什么都不做。
+     * 在 action 中修改这个 multimap 的结果是未定义的。
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Object key, Consumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        HashMap.Node<K,Object> e = map.getNode(HashMap.hash(key), key);
+        if (e == null)
+            return;
+        Object v = e.value;
+        if (v instanceof Values) {
+            Values vs = (Values)v;
+            Object[] es = vs.elems;
+            for (int i = 0, n = vs.size; i < n; i++)
+                action.accept((V)es[i]);
+        }
+        else
+            action.accept((V)v);
+    }
+
+    /**
+     * 返回给定的键下所有值的一个不可修改的拷贝，键不存在时返回空列表。
+     * 这个方法会分配新的列表，热点路径上请使用 forEachValue。
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> get(Object key) {
+        HashMap.Node<K,Object> e = map.getNode(HashMap.hash(key), key);
+        if (e == null)
+            return Collections.emptyList();
+        Object v = e.value;
+        if (v instanceof Values) {
+            Values vs = (Values)v;
+            return (List<V>)Collections.unmodifiableList(
+                    Arrays.asList(Arrays.copyOf(vs.elems, vs.size)));
+        }
+        return Collections.singletonList((V)v);
+    }
+
+    /**
+     * 对每一个（键，值）对执行 action，同一个键下的值按插入顺序给出。
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        map.forEach((k, v) -> {
+            if (v instanceof Values) {
+                Values vs = (Values)v;
+                Object[] es = vs.elems;
+                for (int i = 0, n = vs.size; i < n; i++)
+                    action.accept(k, (V)es[i]);
+            }
+            else
+                action.accept(k, (V)v);
+        });
+    }
+
+    /**
+     * 返回所有键的一个不可修改的视图
+     */
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(map.keySet());
+    }
+
+    /**
+     * 把每一个键下值数组的容量缩减为值的实际个数
+     */
+    public void trimToSize() {
+        map.forEach((k, v) -> {
+            if (v instanceof Values) {
+                Values vs = (Values)v;
+                if (vs.size < vs.elems.length)
+                    vs.elems = Arrays.copyOf(vs.elems, vs.size);
+            }
+        });
+    }
+
+    public void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        map.forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k).append('=');
+            if (v instanceof Values) {
+                Values vs = (Values)v;
+                sb.append(Arrays.toString(Arrays.copyOf(vs.elems, vs.size)));
+            }
+            else
+                sb.append('[').append(v).append(']');
+        });
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,67 @@
+package map;
+
+import java.util.Arrays;
+
+/**
+ * 自定义键（key）的散列值和相等性的策略，供 CustomHashMap 使用。
+ *
+ * 有了它就可以直接把原始的键（例如忽略大小写的字符串、按内容比较的 byte[]）放进散列表，
+ * 而不需要在每次 put/get 之前都先把键包装成一个重写了 equals/hashCode 的适配器对象。
+ *
+ * 实现必须满足与 Object.equals/Object.hashCode 相同的约定：
+ * 如果 equals(a, b) 返回 true，那么 hashCode(a) == hashCode(b)。
+ * 这两个方法都不会收到 null，null 键由散列表自己处理。
+ *
+ * @param <K> the type of keys this strategy applies to
+ * @see CustomHashMap
+ */
+public interface HashingStrategy<K> {
+
+    /**
+     * 计算键的散列值，相当于 key.hashCode()。散列表会再对结果做一次与 HashMap.hash() 相同的高低位扰动。
+     */
+    int hashCode(K key);
+
+    /**
+     * 判断两个键是否相等，相当于 a.equals(b)。
+     */
+    boolean equals(K a, K b);
+
+    /**
+     * 按引用相等比较键，散列值使用 System.identityHashCode，效果与 IdentityHashMap 相同。
+     */
+    static <K> HashingStrategy<K> identity() {
+        return new HashingStrategy<K>() {
+            public int hashCode(K key)       { return System.identityHashCode(key); }
+            public boolean equals(K a, K b)  { return a == b; }
+        };
+    }
+
+    /**
+     * 忽略大小写比较字符串。散列值按 toUpperCase 再 toLowerCase 之后的字符计算，
+     * 与 String.equalsIgnoreCase 的比较规则保持一致。
+     */
+    static HashingStrategy<String> caseInsensitive() {
+        return new HashingStrategy<String>() {
+            public int hashCode(String key) {
+                int h = 0;
+                for (int i = 0, n = key.length(); i < n; i++)
+                    h = 31 * h + Character.toLowerCase(Character.toUpperCase(key.charAt(i)));
+                return h;
+            }
+            public boolean equals(String a, String b) {
+                return a.equalsIgnoreCase(b);
+            }
+        };
+    }
+
+    /**
+     * 按内容比较 byte 数组。注意作为键的数组放进散列表之后就不能再修改了。
+     */
+    static HashingStrategy<byte[]> byteArrayContents() {
+        return new HashingStrategy<byte[]>() {
+            public int hashCode(byte[] key)             { return Arrays.hashCode(key); }
+            public boolean equals(byte[] a, byte[] b)   { return Arrays.equals(a, b); }
+        };
+    }
+}
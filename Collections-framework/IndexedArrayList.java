@@ -0,0 +1,358 @@
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * 带有散列索引的 ArrayList：维护从元素（或者从 keyExtractor 提取的键）到下标的映射，
+ * contains/indexOf/lastIndexOf 以及按键的查找都是 O(1)，而不是对 elementData 的线性扫描。
+ *
+ * 索引是一个 HashMap，键映射到它出现的所有下标（从小到大）：只出现一次时保存一个 Integer，多次时保存一个 Positions。
+ * 在末尾 add 和 remove 时立即更新索引；在中间插入或删除时，后面所有元素的下标都变了，
+ * 逐个修改的代价是 O(size)，所以这里只记录 dirtyFrom，延迟到下一次需要时才修复：
+ *   1. 下标小于 dirtyFrom 的元素在索引中的下标总是准确的；
+ *   2. 下标大于等于 dirtyFrom 的元素在索引中的下标可能已经过期，也可能还没有加入索引；
+ *   3. 查找时如果键的第一个下标小于 dirtyFrom，结果就是准确的，不需要修复；
+ *      否则修复 [dirtyFrom, size) 这一段：先删掉这些元素的键中不小于 dirtyFrom 的下标，再按新的下标重新加入。
+ * 所以连续的多次中间插入或删除只需要一次修复，修复的代价是 O(size - dirtyFrom)。
+ * 删除元素时会立即删掉它的键中不小于新的 dirtyFrom 的下标，所以索引中不会残留已经不在列表中的元素。
+ *
+ * 使用 keyExtractor 时索引的是键，indexOfKey/getByKey 等方法按键查找；
+ * contains/indexOf 仍然按元素的 equals 比较，只能线性扫描（键相同不代表元素相等）。
+ * 元素（或者它的键）在列表中时不能修改影响 equals 和 hashCode 的状态。
+ *
+ * sort 和 replaceAll 之后整个索引会延迟重建。请注意，此实现不同步。
+ *
+ * @param <E> the type of elements in this list
+ * @see ArrayList
+ */
+public class IndexedArrayList<E> extends AbstractList<E> implements RandomAccess {
+
+    /**
+     * 同一个键的多个下标，从小到大排列
+     */
+    static final class Positions {
+        int[] a;
+        int n;
+
+        Positions(int first, int second) {
+            a = new int[] { first, second, 0, 0 };
+            n = 2;
+        }
+    }
+
+    final ArrayList<E> list;
+
+    /**
+     * 提取索引键的函数，为 null 时索引元素本身
+     */
+    final Function<? super E, ?> keyExtractor;
+
+    /**
+     * 键 -> Integer 或者 Positions
+     */
+    final HashMap<Object, Object> index = new HashMap<>();
+
+    /**
+     * 下标小于这个值的元素在索引中是准确的，等于 size 时整个索引都是准确的
+     */
+    int dirtyFrom;
+
+    /**
+     * 构造一个空的列表，索引元素本身
+     */
+    public IndexedArrayList() {
+        this.list = new ArrayList<>();
+        this.keyExtractor = null;
+    }
+
+    /**
+     * 构造一个空的列表，索引 keyExtractor 提取的键
+     */
+    public IndexedArrayList(Function<? super E, ?> keyExtractor) {
+        this.list = new ArrayList<>();
+        this.keyExtractor = Objects.requireNonNull(keyExtractor);
+    }
+
+    /**
+     * 构造一个包含集合c所有元素的列表，索引元素本身。索引在第一次查找时建立。
+     */
+    public IndexedArrayList(Collection<? extends E> c) {
+        this.list = new ArrayList<>(c);
+        this.keyExtractor = null;
+    }
+
+    private Object keyOf(E e) {
+        return (keyExtractor == null) ? e : keyExtractor.apply(e);
+    }
+
+    /* ---------------- Index maintenance -------------- */
+
+    // 加入下标 i，保持从小到大的顺序（通常 i 比已有的下标都大）
+    private void addPosition(Object key, int i) {
+        Object v = index.get(key);
+        if (v == null) {
+            index.put(key, i);
+        } else if (v instanceof Integer) {
+            int p = (Integer) v;
+            index.put(key, (p < i) ? new Positions(p, i) : new Positions(i, p));
+        } else {
+            Positions ps = (Positions) v;
+            if (ps.n == ps.a.length)
+                ps.a = Arrays.copyOf(ps.a, ps.n + (ps.n >> 1));
+            int j = ps.n;
+            for (; j > 0 && ps.a[j - 1] > i; j--)
+                ps.a[j] = ps.a[j - 1];
+            ps.a[j] = i;
+            ++ps.n;
+        }
+    }
+
+    // 删除下标 i
+    private void removePosition(Object key, int i) {
+        Object v = index.get(key);
+        if (v instanceof Integer) {
+            if ((Integer) v == i)
+                index.remove(key);
+        } else if (v != null) {
+            Positions ps = (Positions) v;
+            int j = Arrays.binarySearch(ps.a, 0, ps.n, i);
+            if (j >= 0) {
+                System.arraycopy(ps.a, j + 1, ps.a, j, ps.n - j - 1);
+                shrink(key, ps, ps.n - 1);
+            }
+        }
+    }
+
+    // 删除所有不小于 from 的下标
+    private void truncate(Object key, int from) {
+        Object v = index.get(key);
+        if (v instanceof Integer) {
+            if ((Integer) v >= from)
+                index.remove(key);
+        } else if (v != null) {
+            Positions ps = (Positions) v;
+            int j = Arrays.binarySearch(ps.a, 0, ps.n, from);
+            shrink(key, ps, (j >= 0) ? j : -(j + 1));
+        }
+    }
+
+    private void shrink(Object key, Positions ps, int n) {
+        if (n == 0)
+            index.remove(key);
+        else if (n == 1)
+            index.put(key, ps.a[0]);
+        else
+            ps.n = n;
+    }
+
+    // 下标不小于 from 的元素在索引中不再准确
+    private void invalidateFrom(int from) {
+        if (from < dirtyFrom)
+            dirtyFrom = from;
+    }
+
+    /**
+     * 修复 [dirtyFrom, size) 这一段的索引
+     */
+    private void repair() {
+        final int from = dirtyFrom, n = list.size();
+        if (from >= n)
+            return;
+        if (from == 0) {
+            index.clear();
+        } else {
+            for (int i = from; i < n; i++)
+                truncate(keyOf(list.get(i)), from);
+        }
+        for (int i = from; i < n; i++)
+            addPosition(keyOf(list.get(i)), i);
+        dirtyFrom = n;
+    }
+
+    // 键的第一个下标；不能确定时（第一个下标不小于 dirtyFrom）先修复再查找
+    private int firstPosition(Object key) {
+        Object v = index.get(key);
+        int p = (v == null) ? -1 : (v instanceof Integer) ? (Integer) v : ((Positions) v).a[0];
+        if (p >= 0 && p < dirtyFrom)
+            return p;
+        if (dirtyFrom >= list.size())
+            return p;
+        repair();
+        v = index.get(key);
+        return (v == null) ? -1 : (v instanceof Integer) ? (Integer) v : ((Positions) v).a[0];
+    }
+
+    private int lastPosition(Object key) {
+        repair();
+        Object v = index.get(key);
+        if (v == null)
+            return -1;
+        if (v instanceof Integer)
+            return (Integer) v;
+        Positions ps = (Positions) v;
+        return ps.a[ps.n - 1];
+    }
+
+    /* ---------------- Keyed lookups -------------- */
+
+    /**
+     * 返回第一个键等于 key 的元素的下标，不存在时返回 -1
+     */
+    public int indexOfKey(Object key) {
+        return firstPosition(key);
+    }
+
+    /**
+     * 返回最后一个键等于 key 的元素的下标，不存在时返回 -1
+     */
+    public int lastIndexOfKey(Object key) {
+        return lastPosition(key);
+    }
+
+    /**
+     * 如果存在键等于 key 的元素，返回 true
+     */
+    public boolean containsKey(Object key) {
+        return firstPosition(key) >= 0;
+    }
+
+    /**
+     * 返回第一个键等于 key 的元素，不存在时返回 null
+     */
+    public E getByKey(Object key) {
+        int i = firstPosition(key);
+        return (i >= 0) ? list.get(i) : null;
+    }
+
+    /* ---------------- List -------------- */
+
+    @Override
+    public int size() {
+        return list.size();
+    }
+
+    @Override
+    public E get(int index) {
+        return list.get(index);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return (keyExtractor == null) ? firstPosition(o) : super.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return (keyExtractor == null) ? lastPosition(o) : super.lastIndexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        E old = list.set(index, element);
+        if (index < dirtyFrom) {
+            removePosition(keyOf(old), index);
+            addPosition(keyOf(element), index);
+        } else {
+            // old 在不准确的一段中，它的键中过期的下标在这里删掉，element 等到修复时再加入
+            truncate(keyOf(old), dirtyFrom);
+        }
+        return old;
+    }
+
+    @Override
+    public boolean add(E e) {
+        add(list.size(), e);
+        return true;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        int size = list.size();
+        list.add(index, element);
+        if (index == size && dirtyFrom == size) {
+            // 索引准确时在末尾追加只需要加入一个下标
+            addPosition(keyOf(element), index);
+            dirtyFrom = size + 1;
+        } else {
+            invalidateFrom(index);
+        }
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        E old = list.remove(index);
+        invalidateFrom(index);
+        truncate(keyOf(old), dirtyFrom);
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        // ArrayList.removeIf 按下标顺序对每个元素调用一次 filter，记下第一个被删除的下标和被删除的元素
+        final int[] position = { 0, -1 };
+        final ArrayList<E> removed = new ArrayList<>();
+        boolean modified = list.removeIf(e -> {
+            int i = position[0]++;
+            if (!filter.test(e))
+                return false;
+            if (position[1] < 0)
+                position[1] = i;
+            removed.add(e);
+            return true;
+        });
+        if (modified) {
+            invalidateFrom(position[1]);
+            for (int i = 0; i < removed.size(); i++)
+                truncate(keyOf(removed.get(i)), dirtyFrom);
+            modCount++;
+        }
+        return modified;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex)
+            return;
+        List<E> range = list.subList(fromIndex, toIndex);
+        invalidateFrom(fromIndex);
+        for (int i = 0; i < range.size(); i++)
+            truncate(keyOf(range.get(i)), dirtyFrom);
+        range.clear();
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        list.clear();
+        index.clear();
+        dirtyFrom = 0;
+        modCount++;
+    }
+
+    @Override
+    public void sort(Comparator<? super E> c) {
+        // 先作废整个索引，即使操作中途抛出异常，索引也不会与列表不一致
+        index.clear();
+        dirtyFrom = 0;
+        list.sort(c);
+        modCount++;
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        // 先作废整个索引，即使操作中途抛出异常，索引也不会与列表不一致
+        index.clear();
+        dirtyFrom = 0;
+        list.replaceAll(operator);
+        modCount++;
+    }
+}
@@ -0,0 +1,319 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * 元素为 int 的可调整大小的数组列表，与 ArrayList 使用相同的扩容策略，但是元素直接保存在 int[] 中，没有装箱。
+ *
+ * ArrayList<Integer> 的 indexOf/contains 逐个元素调用 equals，每次比较都要解引用一个 Integer 对象。
+ * 这里 indexOfInt、lastIndexOfInt、containsInt、min、max、sum 和 countInRange 都是对 int[] 的连续扫描，
+ * 由 ArrayKernels 完成：jdk.incubator.vector 可用时一次比较或累加一整个向量（AVX2 上 8 个元素，AVX-512 上 16 个），
+ * 否则逐个处理。实现在启动时选择，见 ArrayKernels。
+ *
+ * 同时实现了 List<Integer>，以装箱的形式访问元素，null 不能加入列表。
+ * 请注意，此实现不同步。
+ *
+ * @see ArrayList
+ * @see ArrayKernels
+ */
+public class IntArrayList extends AbstractList<Integer> implements RandomAccess, Cloneable {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final int[] EMPTY_ELEMENTDATA = {};
+
+    private static final int[] DEFAULTCAPACITY_EMPTY_ELEMENTDATA = {};
+
+    private static final ArrayKernels KERNELS = ArrayKernels.INSTANCE;
+
+    int[] elementData;
+
+    private int size;
+
+    /**
+     * 构造一个具有指定初始容量的空列表
+     */
+    public IntArrayList(int initialCapacity) {
+        if (initialCapacity > 0) {
+            this.elementData = new int[initialCapacity];
+        } else if (initialCapacity == 0) {
+            this.elementData = EMPTY_ELEMENTDATA;
+        } else {
+            throw new IllegalArgumentException("Illegal Capacity: " +
+                    initialCapacity);
+        }
+    }
+
+    /**
+     * 构造一个空列表，第一次添加元素时分配默认容量（10）
+     */
+    public IntArrayList() {
+        this.elementData = DEFAULTCAPACITY_EMPTY_ELEMENTDATA;
+    }
+
+    /**
+     * 构造一个包含数组 a 中所有元素的列表
+     */
+    public IntArrayList(int[] a) {
+        this.elementData = (a.length == 0) ? EMPTY_ELEMENTDATA : a.clone();
+        this.size = a.length;
+    }
+
+    /* ---------------- Capacity -------------- */
+
+    public void trimToSize() {
+        modCount++;
+        if (size < elementData.length) {
+            elementData = (size == 0)
+                    ? EMPTY_ELEMENTDATA
+                    : Arrays.copyOf(elementData, size);
+        }
+    }
+
+    public void ensureCapacity(int minCapacity) {
+        int minExpand = (elementData != DEFAULTCAPACITY_EMPTY_ELEMENTDATA) ? 0 : DEFAULT_CAPACITY;
+        if (minCapacity > minExpand)
+            ensureExplicitCapacity(minCapacity);
+    }
+
+    private void ensureCapacityInternal(int minCapacity) {
+        if (elementData == DEFAULTCAPACITY_EMPTY_ELEMENTDATA)
+            minCapacity = Math.max(DEFAULT_CAPACITY, minCapacity);
+        ensureExplicitCapacity(minCapacity);
+    }
+
+    private void ensureExplicitCapacity(int minCapacity) {
+        modCount++;
+        if (minCapacity - elementData.length > 0)
+            grow(minCapacity);
+    }
+
+    private void grow(int minCapacity) {
+        int oldCapacity = elementData.length;
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (newCapacity - minCapacity < 0)
+            newCapacity = minCapacity;
+        if (newCapacity - MAX_ARRAY_SIZE > 0)
+            newCapacity = hugeCapacity(minCapacity);
+        elementData = Arrays.copyOf(elementData, newCapacity);
+    }
+
+    private static int hugeCapacity(int minCapacity) {
+        if (minCapacity < 0) // overflow
+            throw new OutOfMemoryError();
+        return (minCapacity > MAX_ARRAY_SIZE) ? Integer.MAX_VALUE : MAX_ARRAY_SIZE;
+    }
+
+    /* ---------------- Primitive access -------------- */
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void rangeCheck(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    private void rangeCheckForAdd(int index) {
+        if (index > size || index < 0)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    private String outOfBoundsMsg(int index) {
+        return "Index: " + index + ", Size: " + size;
+    }
+
+    public int getInt(int index) {
+        rangeCheck(index);
+        return elementData[index];
+    }
+
+    public int setInt(int index, int element) {
+        rangeCheck(index);
+        int oldValue = elementData[index];
+        elementData[index] = element;
+        return oldValue;
+    }
+
+    public void addInt(int e) {
+        ensureCapacityInternal(size + 1);
+        elementData[size++] = e;
+    }
+
+    public void addInt(int index, int element) {
+        rangeCheckForAdd(index);
+        ensureCapacityInternal(size + 1);
+        System.arraycopy(elementData, index, elementData, index + 1, size - index);
+        elementData[index] = element;
+        size++;
+    }
+
+    /**
+     * 在末尾追加数组 a 的 [from, to) 区间
+     */
+    public void addAll(int[] a, int from, int to) {
+        if (from < 0 || to > a.length || from > to)
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", length: " + a.length);
+        int numNew = to - from;
+        ensureCapacityInternal(size + numNew);
+        System.arraycopy(a, from, elementData, size, numNew);
+        size += numNew;
+    }
+
+    /**
+     * 删除下标为 index 的元素并返回它
+     */
+    public int removeIntAt(int index) {
+        rangeCheck(index);
+        modCount++;
+        int oldValue = elementData[index];
+        int numMoved = size - index - 1;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index + 1, elementData, index, numMoved);
+        --size;
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        size = 0;
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(elementData, size);
+    }
+
+    public void forEachInt(IntConsumer action) {
+        Objects.requireNonNull(action);
+        final int expectedModCount = modCount;
+        final int[] elementData = this.elementData;
+        final int size = this.size;
+        for (int i = 0; modCount == expectedModCount && i < size; i++)
+            action.accept(elementData[i]);
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /* ---------------- Scans -------------- */
+
+    /**
+     * 返回第一个等于 e 的元素的下标，不存在时返回 -1。
+     */
+    public int indexOfInt(int e) {
+        return KERNELS.indexOf(elementData, 0, size, e);
+    }
+
+    public int lastIndexOfInt(int e) {
+        return KERNELS.lastIndexOf(elementData, 0, size, e);
+    }
+
+    public boolean containsInt(int e) {
+        return indexOfInt(e) >= 0;
+    }
+
+    /**
+     * 返回所有元素之和。按 long 累加，不会溢出。
+     */
+    public long sum() {
+        return KERNELS.sum(elementData, 0, size);
+    }
+
+    /**
+     * 返回最小的元素。
+     *
+     * @throws NoSuchElementException 如果列表为空
+     */
+    public int min() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return KERNELS.min(elementData, 0, size);
+    }
+
+    /**
+     * 返回最大的元素。
+     *
+     * @throws NoSuchElementException 如果列表为空
+     */
+    public int max() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return KERNELS.max(elementData, 0, size);
+    }
+
+    /**
+     * 返回满足 lo <= e <= hi 的元素个数。
+     */
+    public int countInRange(int lo, int hi) {
+        return KERNELS.countInRange(elementData, 0, size, lo, hi);
+    }
+
+    /* ---------------- List<Integer> -------------- */
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    @Override
+    public Integer set(int index, Integer element) {
+        return setInt(index, element);
+    }
+
+    @Override
+    public boolean add(Integer e) {
+        addInt(e);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Integer element) {
+        addInt(index, element);
+    }
+
+    @Override
+    public Integer remove(int index) {
+        return removeIntAt(index);
+    }
+
+    /**
+     * 与 ArrayList 相同，按 Integer.equals 比较，对 int 来说就是 ==。
+     */
+    @Override
+    public int indexOf(Object o) {
+        return (o instanceof Integer) ? indexOfInt((Integer) o) : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return (o instanceof Integer) ? lastIndexOfInt((Integer) o) : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        modCount++;
+        System.arraycopy(elementData, toIndex, elementData, fromIndex, size - toIndex);
+        size -= toIndex - fromIndex;
+    }
+
+    @Override
+    public IntArrayList clone() {
+        try {
+            IntArrayList v = (IntArrayList) super.clone();
+            v.elementData = Arrays.copyOf(elementData, size);
+            v.modCount = 0;
+            return v;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+    }
+}
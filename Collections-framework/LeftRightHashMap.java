@@ -0,0 +1,420 @@
+package map;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 左右（Left-Right）并发控制的 HashMap，适合一个写线程、大量读线程的场景，读操作是 wait-free 的。
+ *
+ * 内部有左右两个 HashMap 实例，保存相同的映射。读线程总是读取 leftRight 指向的那一侧，
+ * 写线程只修改另一侧，读写永远不会作用在同一个 HashMap 上：
+ *   1. 写线程把修改应用到读线程不读的一侧；
+ *   2. 把 leftRight 切换到刚修改好的一侧，之后新的读线程都会读这一侧；
+ *   3. 切换版本（versionIndex），并等待所有在切换之前开始的读线程结束（drain）；
+ *   4. 这时已经没有读线程在读旧的一侧了，再把同一个修改应用到旧的一侧（replay），两侧重新一致。
+ *
+ * 读线程的开销：
+ *   读之前和读之后分别对当前版本的 ingress 和 egress 计数器加 1，计数器是 LongAdder，
+ *   竞争时会自动分散到不同的单元（cell），各个读线程之间基本不会争用同一个缓存行；
+ *   中间就是对一个普通 HashMap 的一次 getNode，没有锁、没有 CAS 重试、不需要 validate。
+ * 所以读操作的耗时稳定（没有抖动），写线程再多的修改也不会让读线程等待或重试。
+ *
+ * 代价：
+ *   1. 所有映射条目保存两份，Node 和 table 的内存是普通 HashMap 的两倍（键和值对象本身是共享的）；
+ *   2. 每次修改都要执行两次，并且要等待正在进行的读操作结束，写操作比普通 HashMap 慢得多；
+ *   3. 多个写线程之间用一个互斥锁串行化。
+ * compute/computeIfAbsent/computeIfPresent/merge/replaceAll 的函数只执行一次，第二侧重放的是它的结果，所以函数可以有副作用。
+ *
+ * 修改中途抛出异常时（例如键的 hashCode 抛出异常），用读线程正在读的一侧重建被修改了一部分的一侧，
+ * 两侧保持一致，见 write。
+ *
+ * forEach 和 entrySet 的快照都在一次读操作中完成，期间写线程会等待它结束，不宜在很大的表上频繁调用。
+ * 与 HashMap 相同，允许 null 键和 null 值。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see HashMap
+ * @see StampedHashMap
+ */
+public class LeftRightHashMap<K,V> extends AbstractMap<K,V> implements Map<K,V> {
+
+    private final HashMap<K,V> left;
+    private final HashMap<K,V> right;
+
+    /**
+     * 读线程读取的一侧：0 表示 left，1 表示 right
+     */
+    private volatile int leftRight;
+
+    /**
+     * 读线程登记使用的计数器的下标
+     */
+    private volatile int versionIndex;
+
+    /**
+     * 每个版本的读线程进入和离开的次数，两者相等表示这个版本上没有正在进行的读操作
+     */
+    private final LongAdder[] ingress = { new LongAdder(), new LongAdder() };
+    private final LongAdder[] egress = { new LongAdder(), new LongAdder() };
+
+    /**
+     * 写线程之间的互斥锁
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * 构造一个具有默认初始容量（16）的空的 LeftRightHashMap 实例
+     */
+    public LeftRightHashMap() {
+        left = new HashMap<>();
+        right = new HashMap<>();
+    }
+
+    /**
+     * 构造一个具有指定初始容量的空的 LeftRightHashMap 实例
+     */
+    public LeftRightHashMap(int initialCapacity) {
+        left = new HashMap<>(initialCapacity);
+        right = new HashMap<>(initialCapacity);
+    }
+
+    /**
+     * 使用与指定的Map相同的映射构造一个新的 LeftRightHashMap 实例
+     */
+    public LeftRightHashMap(Map<? extends K, ? extends V> m) {
+        left = new HashMap<>(m);
+        right = new HashMap<>(m);
+    }
+
+    /* ---------------- Readers -------------- */
+
+    // 登记一个读操作，返回登记时的版本
+    private int arrive() {
+        int vi = versionIndex;
+        ingress[vi].increment();
+        return vi;
+    }
+
+    private void depart(int vi) {
+        egress[vi].increment();
+    }
+
+    // 读线程当前应该读的一侧，必须在 arrive() 之后调用
+    private HashMap<K,V> readSide() {
+        return (leftRight == 0) ? left : right;
+    }
+
+    public V get(Object key) {
+        int vi = arrive();
+        try {
+            HashMap.Node<K,V> e = readSide().getNode(HashMap.hash(key), key);
+            return (e == null) ? null : e.value;
+        } finally {
+            depart(vi);
+        }
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        int vi = arrive();
+        try {
+            HashMap.Node<K,V> e = readSide().getNode(HashMap.hash(key), key);
+            return (e == null) ? defaultValue : e.value;
+        } finally {
+            depart(vi);
+        }
+    }
+
+    public boolean containsKey(Object key) {
+        int vi = arrive();
+        try {
+            return readSide().getNode(HashMap.hash(key), key) != null;
+        } finally {
+            depart(vi);
+        }
+    }
+
+    public boolean containsValue(Object value) {
+        int vi = arrive();
+        try {
+            return readSide().containsValue(value);
+        } finally {
+            depart(vi);
+        }
+    }
+
+    public int size() {
+        int vi = arrive();
+        try {
+            return readSide().size();
+        } finally {
+            depart(vi);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        int vi = arrive();
+        try {
+            readSide().forEach(action);
+        } finally {
+            depart(vi);
+        }
+    }
+
+    /**
+     * 返回调用时所有映射条目的不可修改的快照
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        HashMap<K,V> copy;
+        int vi = arrive();
+        try {
+            copy = new HashMap<>(readSide());
+        } finally {
+            depart(vi);
+        }
+        return Collections.unmodifiableMap(copy).entrySet();
+    }
+
+    /* ---------------- Writer -------------- */
+
+    /**
+     * 把修改应用到两侧，返回第一次应用的结果。必须持有 writeLock。
+     *
+     * 修改可能在中途抛出异常（例如键的 hashCode、equals 或者树化的桶中的 compareTo 抛出异常），
+     * 这时被修改的一侧只应用了一部分。为了不让两侧永久地不一致，抛出异常之前用另一侧重建这一侧：
+     *   1. 第一次应用失败时，读线程还在读另一侧，用它重建 offSide，然后不切换，整个修改相当于没有发生；
+     *   2. 第二次应用（重放）失败时，读线程已经在读 offSide，用它重建另一侧，修改保留在两侧。
+     * 重建只使用节点中保存的散列值，不会再调用键的 hashCode。
+     */
+    private <R> R write(Function<HashMap<K,V>, R> mutation) {
+        HashMap<K,V> offSide = (leftRight == 0) ? right : left;
+        HashMap<K,V> onSide = (offSide == left) ? right : left;
+        R result;
+        try {
+            result = mutation.apply(offSide);
+        } catch (RuntimeException | Error e) {
+            rebuild(offSide, onSide);
+            throw e;
+        }
+        leftRight ^= 1;
+        toggleVersionAndWait();
+        // 已经没有读线程在读这一侧了
+        try {
+            mutation.apply(onSide);
+        } catch (RuntimeException | Error e) {
+            rebuild(onSide, offSide);
+            throw e;
+        }
+        return result;
+    }
+
+    // 把 dst 的内容替换为 src 的内容，dst 必须是读线程不读的一侧
+    private static <K,V> void rebuild(HashMap<K,V> dst, HashMap<K,V> src) {
+        dst.clear();
+        HashMap.Node<K,V>[] tab = src.table;
+        if (tab == null)
+            return;
+        for (HashMap.Node<K,V> e : tab) {
+            for (; e != null; e = e.next)
+                dst.putVal(e.hash, e.key, e.value, false, true);
+        }
+    }
+
+    /**
+     * 切换版本并等待两个版本上的读操作都结束。
+     * 先等新版本上（上一次切换之前登记的）残留的读操作结束再切换，然后等旧版本上的读操作结束。
+     */
+    private void toggleVersionAndWait() {
+        int prev = versionIndex, next = prev ^ 1;
+        waitForReaders(next);
+        versionIndex = next;
+        waitForReaders(prev);
+    }
+
+    // 先读 egress 再读 ingress，两者相等时说明在这个版本上登记的读操作都已经结束
+    private void waitForReaders(int vi) {
+        LongAdder in = ingress[vi], out = egress[vi];
+        for (int spins = 0; ; ++spins) {
+            long departed = out.sum();
+            if (departed == in.sum())
+                return;
+            // 先忙等一小段时间，读操作通常很快就会结束
+            if (spins >= 64)
+                Thread.yield();
+        }
+    }
+
+    public V put(K key, V value) {
+        synchronized (writeLock) {
+            return write(m -> m.put(key, value));
+        }
+    }
+
+    public V putIfAbsent(K key, V value) {
+        synchronized (writeLock) {
+            return write(m -> m.putIfAbsent(key, value));
+        }
+    }
+
+    /**
+     * 先把 m 的映射条目复制到数组中，再把数组应用到两侧。
+     * m 只遍历一次，即使 m 在此期间被其他线程修改，两侧得到的也是同样的映射条目。
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        List<K> keys = new ArrayList<>(m.size());
+        List<V> values = new ArrayList<>(m.size());
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            keys.add(e.getKey());
+            values.add(e.getValue());
+        }
+        if (keys.isEmpty())
+            return;
+        synchronized (writeLock) {
+            write(side -> {
+                for (int i = 0, len = keys.size(); i < len; i++)
+                    side.put(keys.get(i), values.get(i));
+                return null;
+            });
+        }
+    }
+
+    public V remove(Object key) {
+        synchronized (writeLock) {
+            return write(m -> m.remove(key));
+        }
+    }
+
+    public boolean remove(Object key, Object value) {
+        synchronized (writeLock) {
+            return write(m -> m.remove(key, value));
+        }
+    }
+
+    public V replace(K key, V value) {
+        synchronized (writeLock) {
+            return write(m -> m.replace(key, value));
+        }
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        synchronized (writeLock) {
+            return write(m -> m.replace(key, oldValue, newValue));
+        }
+    }
+
+    public void clear() {
+        synchronized (writeLock) {
+            write(m -> { m.clear(); return null; });
+        }
+    }
+
+    /**
+     * 与 Map.computeIfAbsent 相同。函数只执行一次，结果为 null 时不做任何修改。
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        synchronized (writeLock) {
+            // 持有 writeLock 时，读线程不读的一侧只有当前线程会访问
+            HashMap<K,V> offSide = (leftRight == 0) ? right : left;
+            V v;
+            if ((v = offSide.get(key)) != null)
+                return v;
+            if ((v = mappingFunction.apply(key)) == null)
+                return null;
+            V value = v;
+            write(m -> m.put(key, value));
+            return v;
+        }
+    }
+
+    /**
+     * 与 Map.compute 相同。函数只执行一次，两侧应用的是它的结果。
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        synchronized (writeLock) {
+            HashMap<K,V> offSide = (leftRight == 0) ? right : left;
+            V oldValue = offSide.get(key);
+            V v = remappingFunction.apply(key, oldValue);
+            return applyResult(offSide, key, oldValue, v);
+        }
+    }
+
+    /**
+     * 与 Map.computeIfPresent 相同。函数只执行一次，两侧应用的是它的结果。
+     */
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        synchronized (writeLock) {
+            HashMap<K,V> offSide = (leftRight == 0) ? right : left;
+            V oldValue;
+            if ((oldValue = offSide.get(key)) == null)
+                return null;
+            V v = remappingFunction.apply(key, oldValue);
+            return applyResult(offSide, key, oldValue, v);
+        }
+    }
+
+    /**
+     * 与 Map.merge 相同。函数只执行一次，两侧应用的是它的结果。
+     */
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null || remappingFunction == null)
+            throw new NullPointerException();
+        synchronized (writeLock) {
+            HashMap<K,V> offSide = (leftRight == 0) ? right : left;
+            V oldValue = offSide.get(key);
+            V v = (oldValue == null) ? value : remappingFunction.apply(oldValue, value);
+            return applyResult(offSide, key, oldValue, v);
+        }
+    }
+
+    /**
+     * 与 Map.replaceAll 相同。先对每个映射条目执行一次函数并记下结果，再把结果应用到两侧，
+     * 所以函数中途抛出异常时不做任何修改。
+     */
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null)
+            throw new NullPointerException();
+        synchronized (writeLock) {
+            HashMap<K,V> offSide = (leftRight == 0) ? right : left;
+            int n = offSide.size();
+            @SuppressWarnings("unchecked")
+            K[] keys = (K[])new Object[n];
+            @SuppressWarnings("unchecked")
+            V[] values = (V[])new Object[n];
+            int i = 0;
+            for (Map.Entry<K,V> e : offSide.entrySet()) {
+                keys[i] = e.getKey();
+                values[i++] = function.apply(e.getKey(), e.getValue());
+            }
+            // 键都已经存在，put 只替换值，不改变结构
+            write(m -> {
+                for (int j = 0; j < n; j++)
+                    m.put(keys[j], values[j]);
+                return null;
+            });
+        }
+    }
+
+    // 把 compute/merge 的结果应用到两侧：结果为 null 时删除映射条目
+    private V applyResult(HashMap<K,V> offSide, K key, V oldValue, V v) {
+        if (v != null)
+            write(m -> m.put(key, v));
+        else if (oldValue != null || offSide.containsKey(key))
+            write(m -> m.remove(key));
+        return v;
+    }
+}
@@ -27,6 +27,9 @@ package linkedList;
 
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import memory.ObjectLayout;
+import util.BulkLookup;
 
 /**
  * List和Deque接口的双向链表（具有向前和向后的指针）实现。 实现所有可选的列表操作，并允许所有元素为null。
@@ -188,7 +191,7 @@ public class LinkedList<E>
         }
 
         x.item = null;
-        size++;    // 将元素个数加1。
+        size--;    // 将元素个数减1。
         modCount++;    // 结构化修改次数也加1。
         return element;
     }
@@ -246,6 +249,28 @@ public class LinkedList<E>
         return size;
     }
 
+    // 估算这个链表自身占用的堆内存（字节），不包括元素对象，O(1)。
+    // 包括 LinkedList 实例和 size 个 Node（item、next、prev 三个引用），对象的大小按当前 JVM 的对象布局计算，见 ObjectLayout。
+    public long estimateFootprintBytes() {
+        return ObjectLayout.instanceSize(2, 8)    // first、last；size 和 AbstractList 的 modCount
+                + (long) size * ObjectLayout.instanceSize(3, 0);
+    }
+
+    // 估算这个链表占用的堆内存（字节），包括元素对象：在 estimateFootprintBytes() 的基础上
+    // 对每个不为 null 的元素调用 elementSizer，O(size)。被多次添加的同一个元素对象会被重复计算。
+    public long estimateFootprintBytes(ToLongFunction<? super E> elementSizer) {
+        Objects.requireNonNull(elementSizer);
+        long bytes = estimateFootprintBytes();
+        final int expectedModCount = modCount;
+        for (Node<E> x = first; x != null; x = x.next) {
+            if (x.item != null)
+                bytes += elementSizer.applyAsLong(x.item);
+        }
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        return bytes;
+    }
+
     // 往链表的末尾添加给定的元素。
     public boolean add(E e) {
         linkLast(e);    // 具体就是调用linkLast方法。
@@ -274,6 +299,33 @@ public class LinkedList<E>
         return false;
     }
 
+    // 从这个链表中删除集合c中存在的所有元素。如果这个调用确实改变了链表，则返回true。
+    // c 是较大的 List 或 Queue 时先复制到 HashSet 中，见 BulkLookup。
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return batchRemove(BulkLookup.lookupView(c, size), false);
+    }
+
+    // 从这个链表中删除所有与集合c中的元素不同的元素。如果这个调用确实改变了链表，则返回true。
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return batchRemove(BulkLookup.lookupView(c, size), true);
+    }
+
+    // 一次遍历删除 c.contains 的结果与 complement 不同的节点。
+    private boolean batchRemove(Collection<?> c, boolean complement) {
+        boolean modified = false;
+        for (Node<E> x = first; x != null; ) {
+            Node<E> next = x.next;
+            if (c.contains(x.item) != complement) {
+                unlink(x);
+                modified = true;
+            }
+            x = next;
+        }
+        return modified;
+    }
+
     // 按照指定集合的迭代器返回的顺序，将指定集合中的所有元素追加到此列表的末尾。
     // 如果在操作过程中修改了指定的集合，则此操作的行为未定义。
     // 请注意，如果指定的集合是这个链表本身，并且它是非空的，则会发生这种情况。
@@ -0,0 +1,221 @@
+package map;
+
+import java.util.*;
+
+/**
+ * ObjectIntHashMap 和 ObjectLongHashMap 共用的开放寻址散列表：键保存在 Object[] keys 中，
+ * 值保存在与之平行的基本类型数组 vals（类型为 A，例如 int[]）中，采用线性探测和向后移动删除。
+ *
+ * 这里只负责键的探测、插入位置、删除和扩容，值的读写由子类直接访问 vals 完成，不经过装箱。
+ * 删除和扩容时移动值要调用 moveValue，这是唯一的虚方法调用，只在移动映射条目时发生。
+ * 空槽位上的值没有意义，插入时总是先写入值。
+ *
+ * 散列值先由 HashMap.hash() 计算，再乘以黄金分割常数取高位作为槽位下标（Fibonacci hashing），
+ * 所以连续的整数、低位相同的散列值也能均匀地分布到各个槽位上，避免线性探测形成长的聚集。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <A> 值数组的类型
+ * @see ObjectIntHashMap
+ * @see ObjectLongHashMap
+ */
+abstract class ObjectKeyHashTable<K, A> {
+
+    /**
+     * 默认初始容量 - 必须是2的幂。
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，必须是2的幂并且小于等于 2的30的幂。
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 负载因子。线性探测在负载超过 0.75 之后平均探测长度增长很快。
+     */
+    static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * 黄金分割常数 2^32 / φ，用于把散列值打散到槽位上
+     */
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    /**
+     * null 键在 keys 中的替身，keys 中的 null 表示空槽位
+     */
+    static final Object NULL_KEY = new Object();
+
+    /**
+     * 键，null 表示空槽位，长度总是2的幂
+     */
+    transient Object[] keys;
+
+    /**
+     * 与 keys 平行的值
+     */
+    transient A vals;
+
+    transient int size;
+
+    /**
+     * 当 size 超过这个阈值时扩容
+     */
+    transient int threshold;
+
+    /**
+     * 32 - log2(keys.length)，散列值乘以黄金分割常数之后右移这么多位得到槽位下标
+     */
+    transient int shift;
+
+    ObjectKeyHashTable() {
+        init(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * 能容纳 expectedSize 个映射条目而不需要扩容
+     */
+    ObjectKeyHashTable(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    expectedSize);
+        float fc = (float)expectedSize / LOAD_FACTOR + 1.0f;
+        init((fc >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY :
+                Math.max(DEFAULT_INITIAL_CAPACITY, HashMap.tableSizeFor((int)fc)));
+    }
+
+    /**
+     * 分配长度为 cap 的值数组
+     */
+    abstract A newValues(int cap);
+
+    /**
+     * 把 src[from] 复制到 dst[to]
+     */
+    abstract void moveValue(A src, int from, A dst, int to);
+
+    private void init(int cap) {
+        keys = new Object[cap];
+        vals = newValues(cap);
+        shift = 32 - Integer.numberOfTrailingZeros(cap);
+        threshold = (cap >= MAXIMUM_CAPACITY) ? cap - 1 : (int)(cap * LOAD_FACTOR);
+    }
+
+    static Object maskNull(Object key) {
+        return (key == null) ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K> K unmaskNull(Object key) {
+        return (key == NULL_KEY) ? null : (K)key;
+    }
+
+    // 键（已经过 maskNull）的首选槽位
+    final int slot(Object k) {
+        return (HashMap.hash(k) * GOLDEN_RATIO) >>> shift;
+    }
+
+    // 返回键（已经过 maskNull）所在的槽位，不存在时返回 -1
+    final int indexOf(Object k) {
+        Object[] ks = keys;
+        int mask = ks.length - 1;
+        for (int i = slot(k); ; i = (i + 1) & mask) {
+            Object x = ks[i];
+            if (x == null)
+                return -1;
+            if (x == k || x.equals(k))
+                return i;
+        }
+    }
+
+    // 返回键（已经过 maskNull）所在的槽位；不存在时返回 ~i，i 是应该插入的空槽位
+    final int insertionIndexOf(Object k) {
+        Object[] ks = keys;
+        int mask = ks.length - 1;
+        for (int i = slot(k); ; i = (i + 1) & mask) {
+            Object x = ks[i];
+            if (x == null)
+                return ~i;
+            if (x == k || x.equals(k))
+                return i;
+        }
+    }
+
+    // 在空槽位 i 上放入键，值必须已经写入 vals[i]，必要时扩容
+    final void insertKeyAt(int i, Object k) {
+        keys[i] = k;
+        if (++size > threshold)
+            resize();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(maskNull(key)) >= 0;
+    }
+
+    /**
+     * 删除槽位 i 上的映射条目，然后把后面同一个聚集中的映射条目向前移动（backward-shift deletion）：
+     * 从 i 往后找到第一个“首选槽位不在 (i, j] 循环区间内”的映射条目，把它移到 i，再对它原来的位置重复这一过程，
+     * 直到遇到空槽位。这样不需要墓碑，每个映射条目总是位于从它的首选槽位出发的连续区间内。
+     */
+    final void removeAt(int i) {
+        Object[] ks = keys;
+        A vs = vals;
+        int mask = ks.length - 1;
+        for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            Object x = ks[j];
+            if (x == null)
+                break;
+            int s = slot(x);
+            // s 在循环区间 (i, j] 内时，x 不能移到 i
+            if (((j - s) & mask) >= ((j - i) & mask)) {
+                ks[i] = x;
+                moveValue(vs, j, vs, i);
+                i = j;
+            }
+        }
+        ks[i] = null;
+        --size;
+    }
+
+    /**
+     * 扩容为原来的两倍，重新插入所有映射条目
+     */
+    final void resize() {
+        Object[] oldKeys = keys;
+        A oldVals = vals;
+        int oldCap = oldKeys.length;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            if (size >= oldCap - 1)
+                throw new IllegalStateException(getClass().getSimpleName() + " is full: " + size);
+            return;
+        }
+        init(oldCap << 1);
+        Object[] ks = keys;
+        A vs = vals;
+        int mask = ks.length - 1;
+        for (int j = 0; j < oldCap; ++j) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = slot(k);
+                while (ks[i] != null)
+                    i = (i + 1) & mask;
+                ks[i] = k;
+                moveValue(oldVals, j, vs, i);
+            }
+        }
+    }
+
+    public void clear() {
+        if (size > 0) {
+            size = 0;
+            Arrays.fill(keys, null);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package memory;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 当前 JVM 的对象布局参数，用于估算集合实例占用的堆内存。
+ *
+ * HotSpot 中一个普通对象由对象头（mark word + 类指针）和各个字段组成，数组的对象头后面还有一个 int 的长度，
+ * 对象的总大小向上对齐到 ObjectAlignmentInBytes（默认 8 字节）。这几个参数取决于 JVM 的选项：
+ *   UseCompressedOops           引用是 4 字节（开启，堆小于 32GB 时的默认值）还是 8 字节；
+ *   UseCompressedClassPointers  类指针是 4 字节还是 8 字节，决定对象头是 12 字节还是 16 字节；
+ *   ObjectAlignmentInBytes      对象的对齐字节数。
+ * 这里通过 HotSpotDiagnosticMXBean 读取这些选项；读取失败时（非 HotSpot 的 JVM，或者没有 jdk.management 模块），
+ * 按 32 位/64 位以及最大堆是否小于 32GB 推断。
+ *
+ * 估算不包括字段重排产生的空隙，对于集合这类字段以引用和 int 为主的对象，误差通常不超过一个对齐单位。
+ */
+public final class ObjectLayout {
+
+    /**
+     * 引用的大小（字节）
+     */
+    public static final int REFERENCE_SIZE;
+
+    /**
+     * 普通对象的对象头大小（字节）
+     */
+    public static final int OBJECT_HEADER_SIZE;
+
+    /**
+     * 数组的对象头大小（字节），包括长度字段
+     */
+    public static final int ARRAY_HEADER_SIZE;
+
+    /**
+     * 对象的对齐字节数
+     */
+    public static final int OBJECT_ALIGNMENT;
+
+    static {
+        boolean is64 = !"32".equals(System.getProperty("sun.arch.data.model"));
+        boolean compressedOops = is64 && Runtime.getRuntime().maxMemory() < (32L << 30);
+        boolean compressedClassPointers = compressedOops;
+        int alignment = 8;
+        try {
+            com.sun.management.HotSpotDiagnosticMXBean bean =
+                    ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+            if (is64) {
+                compressedOops = Boolean.parseBoolean(
+                        bean.getVMOption("UseCompressedOops").getValue());
+                compressedClassPointers = Boolean.parseBoolean(
+                        bean.getVMOption("UseCompressedClassPointers").getValue());
+            }
+            alignment = Integer.parseInt(bean.getVMOption("ObjectAlignmentInBytes").getValue());
+        } catch (RuntimeException | LinkageError e) {
+            // 不是 HotSpot，或者无法访问诊断选项：使用上面推断的值
+        }
+        if (!is64) {
+            REFERENCE_SIZE = 4;
+            OBJECT_HEADER_SIZE = 8;
+            ARRAY_HEADER_SIZE = 12;
+        } else {
+            REFERENCE_SIZE = compressedOops ? 4 : 8;
+            OBJECT_HEADER_SIZE = compressedClassPointers ? 12 : 16;
+            ARRAY_HEADER_SIZE = compressedClassPointers ? 16 : 20;
+        }
+        OBJECT_ALIGNMENT = alignment;
+    }
+
+    private ObjectLayout() {
+    }
+
+    /**
+     * 把大小向上对齐到 OBJECT_ALIGNMENT
+     */
+    public static long align(long size) {
+        long mask = OBJECT_ALIGNMENT - 1;
+        return (size + mask) & ~mask;
+    }
+
+    /**
+     * 估算一个普通对象的大小
+     *
+     * @param references 引用类型的字段数量（包括从父类继承的）
+     * @param primitiveBytes 基本类型的字段的字节数之和（包括从父类继承的）
+     */
+    public static long instanceSize(int references, int primitiveBytes) {
+        return align(OBJECT_HEADER_SIZE + (long)references * REFERENCE_SIZE + primitiveBytes);
+    }
+
+    /**
+     * 估算一个引用数组的大小
+     */
+    public static long referenceArraySize(int length) {
+        return arraySize(length, REFERENCE_SIZE);
+    }
+
+    /**
+     * 估算一个数组的大小
+     *
+     * @param elementSize 每个元素的字节数
+     */
+    public static long arraySize(int length, int elementSize) {
+        long base = ARRAY_HEADER_SIZE;
+        // 8 字节的元素（以及不压缩的引用）从 8 字节对齐的位置开始
+        if (elementSize == 8)
+            base = (base + 7) & ~7L;
+        return align(base + (long)length * elementSize);
+    }
+}
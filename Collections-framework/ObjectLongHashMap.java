@@ -0,0 +1,261 @@
+package map;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collector;
+
+/**
+ * 键为对象、值为 long 的散列表，主要用于计数（频率统计）。
+ *
+ * 用 HashMap<K,Long> 计数时，每次 merge(k, 1, Long::sum) 都要经过一次 BiFunction 调用，
+ * 并且超出 Long 缓存范围的计数值每次都会分配一个新的包装对象，每个映射条目还要一个 Node 对象。
+ * 此类把键和值分别保存在平行的 Object[] keys 和 long[] vals 中，采用开放寻址和线性探测：
+ *   1. addTo/increment/getOrDefault/put 不分配任何对象（扩容时除外），也没有装箱和拆箱；
+ *   2. 线性探测时相邻的槽位在同一个缓存行中，查找通常只需要一到两次缓存未命中；
+ *   3. 删除时采用向后移动（backward-shift deletion），不需要墓碑，删除之后探测序列依然很短。
+ *
+ * 探测、删除和扩容由 ObjectKeyHashTable 实现，与 ObjectIntHashMap 共用。
+ *
+ * 不存在的键的值视为 0，所以 addTo 可以直接用于计数。允许 null 键。计数溢出时按 long 的运算规则回绕。
+ * 请注意，此实现不同步。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @see HashMap
+ * @see ObjectKeyHashTable
+ */
+public class ObjectLongHashMap<K> extends ObjectKeyHashTable<K, long[]> {
+
+    /**
+     * 构造一个具有默认初始容量（16）的空的 ObjectLongHashMap 实例
+     */
+    public ObjectLongHashMap() {
+        super();
+    }
+
+    /**
+     * 构造一个能容纳 expectedSize 个映射条目而不需要扩容的空的 ObjectLongHashMap 实例
+     */
+    public ObjectLongHashMap(int expectedSize) {
+        super(expectedSize);
+    }
+
+    @Override
+    final long[] newValues(int cap) {
+        return new long[cap];
+    }
+
+    @Override
+    final void moveValue(long[] src, int from, long[] dst, int to) {
+        dst[to] = src[from];
+    }
+
+    /**
+     * 返回键对应的值，不存在时返回 defaultValue
+     */
+    public long getOrDefault(Object key, long defaultValue) {
+        int i = indexOf(maskNull(key));
+        return (i < 0) ? defaultValue : vals[i];
+    }
+
+    /**
+     * 返回键对应的值，不存在时返回 0
+     */
+    public long get(Object key) {
+        return getOrDefault(key, 0);
+    }
+
+    /**
+     * 把键对应的值加上 delta，不存在的键视为 0。
+     *
+     * @return 相加之后的值
+     */
+    public long addTo(K key, long delta) {
+        Object k = maskNull(key);
+        int i = insertionIndexOf(k);
+        if (i >= 0)
+            return vals[i] += delta;
+        insertAt(~i, k, delta);
+        return delta;
+    }
+
+    /**
+     * 把键对应的值加 1，等价于 addTo(key, 1)
+     *
+     * @return 加 1 之后的值
+     */
+    public long increment(K key) {
+        return addTo(key, 1);
+    }
+
+    /**
+     * 把键映射到给定的值
+     *
+     * @return 原来的值，不存在时返回 0
+     */
+    public long put(K key, long value) {
+        Object k = maskNull(key);
+        int i = insertionIndexOf(k);
+        if (i >= 0) {
+            long old = vals[i];
+            vals[i] = value;
+            return old;
+        }
+        insertAt(~i, k, value);
+        return 0;
+    }
+
+    // 在空槽位 i 上插入，必要时扩容
+    private void insertAt(int i, Object k, long value) {
+        vals[i] = value;
+        insertKeyAt(i, k);
+    }
+
+    /**
+     * 删除键对应的映射
+     *
+     * @return 原来的值，不存在时返回 0
+     */
+    public long remove(Object key) {
+        int i = indexOf(maskNull(key));
+        if (i < 0)
+            return 0;
+        long old = vals[i];
+        removeAt(i);
+        return old;
+    }
+
+    /**
+     * 对每个映射条目执行给定的操作，不装箱
+     */
+    public void forEach(ObjLongConsumer<? super K> action) {
+        if (action == null)
+            throw new NullPointerException();
+        Object[] ks = keys;
+        long[] vs = vals;
+        for (int i = 0; i < ks.length; ++i) {
+            Object k = ks[i];
+            if (k != null)
+                action.accept(unmaskNull(k), vs[i]);
+        }
+        if (ks != keys)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * 把另一个 ObjectLongHashMap 中的计数加到这个实例中
+     */
+    public void addAll(ObjectLongHashMap<? extends K> m) {
+        Object[] ks = m.keys;
+        long[] vs = m.vals;
+        for (int i = 0; i < ks.length; ++i) {
+            Object k = ks[i];
+            if (k != null)
+                addTo(unmaskNull(k), vs[i]);
+        }
+    }
+
+    /**
+     * 返回值最大的 k 个映射条目，按值从大到小排列，值相同的映射条目之间的顺序不确定。
+     *
+     * 只需要一趟扫描：用一个大小为 k 的小顶堆保存当前最大的 k 个槽位下标，堆中比较的是 vals 中的值，
+     * 时间复杂度为 O(capacity + size * log k)，除了堆和返回的结果之外不分配对象。
+     *
+     * @throws IllegalArgumentException 如果 k 是负数
+     */
+    public List<Map.Entry<K,Long>> topK(int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("Illegal k: " + k);
+        Object[] ks = keys;
+        long[] vs = vals;
+        int[] heap = new int[Math.min(k, size)];
+        int n = 0;
+        if (heap.length > 0) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] == null)
+                    continue;
+                if (n < heap.length) {
+                    // 上浮
+                    int c = n++;
+                    while (c > 0) {
+                        int p = (c - 1) >>> 1;
+                        if (vs[heap[p]] <= vs[i])
+                            break;
+                        heap[c] = heap[p];
+                        c = p;
+                    }
+                    heap[c] = i;
+                } else if (vs[i] > vs[heap[0]]) {
+                    siftDown(heap, n, i, vs);
+                }
+            }
+        }
+        // 依次取出堆顶（最小值），从后往前填入结果
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Map.Entry<K,Long>[] result = (Map.Entry<K,Long>[])new Map.Entry[n];
+        while (n > 0) {
+            int top = heap[0];
+            result[--n] = new AbstractMap.SimpleImmutableEntry<>(unmaskNull(ks[top]), vs[top]);
+            if (n > 0)
+                siftDown(heap, n, heap[n], vs);
+        }
+        return Arrays.asList(result);
+    }
+
+    // 用 x 替换小顶堆 heap[0..n) 的堆顶并下沉
+    private static void siftDown(int[] heap, int n, int x, long[] vs) {
+        int c = 0, half = n >>> 1;
+        while (c < half) {
+            int child = (c << 1) + 1, right = child + 1;
+            if (right < n && vs[heap[right]] < vs[heap[child]])
+                child = right;
+            if (vs[x] <= vs[heap[child]])
+                break;
+            heap[c] = heap[child];
+            c = child;
+        }
+        heap[c] = x;
+    }
+
+    /**
+     * 返回一个把流中的元素按 classifier 分类并计数的 Collector，
+     * 相当于 Collectors.groupingBy(classifier, Collectors.counting())，但是累加过程中不装箱。
+     * 并行流中各个部分的结果合并时，把较小的一方加到较大的一方。
+     */
+    public static <T, K> Collector<T, ?, ObjectLongHashMap<K>> counting(
+            Function<? super T, ? extends K> classifier) {
+        Objects.requireNonNull(classifier);
+        return Collector.of(
+                ObjectLongHashMap<K>::new,
+                (m, t) -> m.increment(classifier.apply(t)),
+                (a, b) -> {
+                    if (a.size < b.size) {
+                        b.addAll(a);
+                        return b;
+                    }
+                    a.addAll(b);
+                    return a;
+                },
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    public String toString() {
+        if (size == 0)
+            return "{}";
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        Object[] ks = keys;
+        boolean first = true;
+        for (int i = 0; i < ks.length; ++i) {
+            Object k = ks[i];
+            if (k == null)
+                continue;
+            if (!first)
+                sb.append(',').append(' ');
+            first = false;
+            Object key = unmaskNull(k);
+            sb.append(key == this ? "(this Map)" : key).append('=').append(vals[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,509 @@
+package map;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 基于开放寻址的散列集合，不像 HashSet 那样借用一个 HashMap 并给每个元素配一个无用的 value。
+ *
+ * 元素保存在 Object[] keys 中，与之平行的 int[] hashes 保存每个元素的 HashMap.hash() 散列值，
+ * 采用线性探测，删除时向后移动（backward-shift deletion），不需要墓碑。槽位下标由散列值乘以黄金分割常数取高位得到。
+ *
+ * 内存占用（以 64 位 JVM、开启压缩指针为例），负载因子为 0.75 时：
+ *   HashSet：每个元素一个 32 字节的 HashMap.Node，加上约 5.3 字节的 table 槽位，约 37 字节；
+ *   OpenHashSet：每个槽位 4 字节引用加 4 字节散列值，平均约 10.7 字节，
+ * 节省约 70% 的内存（不计元素对象本身），并且没有每个元素一个对象带来的 GC 负担。
+ *
+ * 保存散列值有两个好处：
+ *   1. 探测时先比较散列值，只有散列值相同时才调用 equals；
+ *   2. 扩容以及在两个 OpenHashSet 之间进行 addAll/retainAll/removeAll/containsAll 时，
+ *      直接使用已保存的散列值，完全不需要再调用元素的 hashCode()。
+ *
+ * 允许 null 元素。请注意，此实现不同步。迭代器是快速失败的。
+ *
+ * @param <E> the type of elements maintained by this set
+ * @see HashMap
+ * @see ObjectIntHashMap
+ */
+public class OpenHashSet<E> extends AbstractSet<E>
+        implements Set<E>, Cloneable, Serializable {
+
+    private static final long serialVersionUID = 2981264759438201356L;
+
+    /**
+     * 默认初始容量 - 必须是2的幂。
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，必须是2的幂并且小于等于 2的30的幂。
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 负载因子
+     */
+    static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * 黄金分割常数 2^32 / φ，用于把散列值打散到槽位上
+     */
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    /**
+     * null 元素在 keys 中的替身，keys 中的 null 表示空槽位
+     */
+    static final Object NULL_KEY = new Object();
+
+    /**
+     * 元素，null 表示空槽位，长度总是2的幂
+     */
+    transient Object[] keys;
+
+    /**
+     * 与 keys 平行的散列值
+     */
+    transient int[] hashes;
+
+    transient int size;
+
+    transient int modCount;
+
+    /**
+     * 当 size 超过这个阈值时扩容
+     */
+    transient int threshold;
+
+    /**
+     * 32 - log2(keys.length)
+     */
+    transient int shift;
+
+    /**
+     * 构造一个具有默认初始容量（16）的空的 OpenHashSet 实例
+     */
+    public OpenHashSet() {
+        allocate(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * 构造一个能容纳 expectedSize 个元素而不需要扩容的空的 OpenHashSet 实例
+     */
+    public OpenHashSet(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    expectedSize);
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * 构造一个包含指定集合中所有元素的 OpenHashSet 实例
+     */
+    public OpenHashSet(Collection<? extends E> c) {
+        this(c.size());
+        addAll(c);
+    }
+
+    // 能容纳 expectedSize 个元素而不需要扩容的最小容量
+    static int capacityFor(int expectedSize) {
+        float fc = (float)expectedSize / LOAD_FACTOR + 1.0f;
+        return (fc >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY :
+                Math.max(DEFAULT_INITIAL_CAPACITY, HashMap.tableSizeFor((int)fc));
+    }
+
+    private void allocate(int cap) {
+        keys = new Object[cap];
+        hashes = new int[cap];
+        shift = 32 - Integer.numberOfTrailingZeros(cap);
+        threshold = (cap >= MAXIMUM_CAPACITY) ? cap - 1 : (int)(cap * LOAD_FACTOR);
+    }
+
+    static Object maskNull(Object key) {
+        return (key == null) ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> E unmaskNull(Object key) {
+        return (key == NULL_KEY) ? null : (E)key;
+    }
+
+    // 散列值的首选槽位
+    final int slot(int hash) {
+        return (hash * GOLDEN_RATIO) >>> shift;
+    }
+
+    // 返回元素（已经过 maskNull）所在的槽位；不存在时返回 ~i，i 是应该插入的空槽位
+    final int find(int hash, Object k) {
+        Object[] ks = keys;
+        int[] hs = hashes;
+        int mask = ks.length - 1;
+        for (int i = slot(hash); ; i = (i + 1) & mask) {
+            Object x = ks[i];
+            if (x == null)
+                return ~i;
+            if (x == k || (hs[i] == hash && x.equals(k)))
+                return i;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(Object o) {
+        return find(HashMap.hash(o), maskNull(o)) >= 0;
+    }
+
+    public boolean add(E e) {
+        return addHashed(HashMap.hash(e), maskNull(e));
+    }
+
+    // 用给定的散列值插入元素（已经过 maskNull）
+    final boolean addHashed(int hash, Object k) {
+        int i = find(hash, k);
+        if (i >= 0)
+            return false;
+        i = ~i;
+        keys[i] = k;
+        hashes[i] = hash;
+        ++modCount;
+        if (++size > threshold)
+            resize(keys.length << 1);
+        return true;
+    }
+
+    public boolean remove(Object o) {
+        int i = find(HashMap.hash(o), maskNull(o));
+        if (i < 0)
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    /**
+     * 删除槽位 i 上的元素，然后把同一个聚集中后面的元素向前移动，直到遇到空槽位。
+     * 首选槽位在循环区间 (i, j] 内的元素不能移到 i，否则从它的首选槽位出发就找不到它了。
+     *
+     * @return 最后被腾空的槽位
+     */
+    final int removeAt(int i) {
+        Object[] ks = keys;
+        int[] hs = hashes;
+        int mask = ks.length - 1;
+        for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            Object x = ks[j];
+            if (x == null)
+                break;
+            int s = slot(hs[j]);
+            if (((j - s) & mask) >= ((j - i) & mask)) {
+                ks[i] = x;
+                hs[i] = hs[j];
+                i = j;
+            }
+        }
+        ks[i] = null;
+        hs[i] = 0;
+        ++modCount;
+        --size;
+        return i;
+    }
+
+    /**
+     * 按新的容量重新插入所有元素，使用保存的散列值，不调用 hashCode()
+     */
+    final void resize(int newCap) {
+        Object[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int oldCap = oldKeys.length;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            if (size >= oldCap - 1)
+                throw new IllegalStateException("OpenHashSet is full: " + size);
+            return;
+        }
+        allocate(Math.min(newCap, MAXIMUM_CAPACITY));
+        Object[] ks = keys;
+        int[] hs = hashes;
+        int mask = ks.length - 1;
+        for (int j = 0; j < oldCap; ++j) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int h = oldHashes[j];
+                int i = slot(h);
+                while (ks[i] != null)
+                    i = (i + 1) & mask;
+                ks[i] = k;
+                hs[i] = h;
+            }
+        }
+    }
+
+    public void clear() {
+        modCount++;
+        if (size > 0) {
+            size = 0;
+            Arrays.fill(keys, null);
+            Arrays.fill(hashes, 0);
+        }
+    }
+
+    /* ---------------- Bulk operations -------------- */
+
+    /**
+     * 添加指定集合中的所有元素。先按合并后的最大可能元素数量扩容一次，
+     * 参数是 OpenHashSet 时直接使用它保存的散列值。
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        int s = c.size();
+        if (s == 0)
+            return false;
+        if ((long)size + s > threshold)
+            resize(capacityFor((int)Math.min((long)size + s, MAXIMUM_CAPACITY)));
+        boolean modified = false;
+        if (c instanceof OpenHashSet) {
+            OpenHashSet<?> o = (OpenHashSet<?>) c;
+            Object[] oks = o.keys;
+            int[] ohs = o.hashes;
+            for (int j = 0; j < oks.length; ++j) {
+                Object k = oks[j];
+                if (k != null && addHashed(ohs[j], k))
+                    modified = true;
+            }
+        } else {
+            for (E e : c) {
+                if (add(e))
+                    modified = true;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * 只保留同时包含在指定集合中的元素。
+     * 参数是 OpenHashSet 时，用保存的散列值在对方中查找，并且不逐个删除，而是把保留下来的元素
+     * 重新放进一个按保留数量选择容量的新数组中，避免大量的向后移动。
+     */
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return filter(c, true);
+    }
+
+    /**
+     * 删除同时包含在指定集合中的元素，参数是 OpenHashSet 时的处理方式与 retainAll 相同。
+     */
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return filter(c, false);
+    }
+
+    /**
+     * 判断是否包含指定集合中的所有元素，参数是 OpenHashSet 时使用它保存的散列值。
+     */
+    public boolean containsAll(Collection<?> c) {
+        if (c instanceof OpenHashSet) {
+            OpenHashSet<?> o = (OpenHashSet<?>) c;
+            if (o.size > size)
+                return false;
+            Object[] oks = o.keys;
+            int[] ohs = o.hashes;
+            for (int j = 0; j < oks.length; ++j) {
+                Object k = oks[j];
+                if (k != null && find(ohs[j], k) < 0)
+                    return false;
+            }
+            return true;
+        }
+        return super.containsAll(c);
+    }
+
+    // 保留（retain 为 true）或删除（retain 为 false）包含在 c 中的元素，然后重建数组
+    private boolean filter(Collection<?> c, boolean retain) {
+        Object[] ks = keys;
+        int[] hs = hashes;
+        OpenHashSet<?> o = (c instanceof OpenHashSet) ? (OpenHashSet<?>) c : null;
+        int kept = 0;
+        // 先把保留的元素压缩到数组的前部，之后再重新散列
+        Object[] survivors = new Object[size];
+        int[] survivorHashes = new int[size];
+        for (int j = 0; j < ks.length; ++j) {
+            Object k = ks[j];
+            if (k == null)
+                continue;
+            boolean inC = (o != null) ? o.find(hs[j], k) >= 0 : c.contains(unmaskNull(k));
+            if (inC == retain) {
+                survivors[kept] = k;
+                survivorHashes[kept++] = hs[j];
+            }
+        }
+        if (kept == size)
+            return false;
+        allocate(capacityFor(kept));
+        Object[] nks = keys;
+        int[] nhs = hashes;
+        int mask = nks.length - 1;
+        for (int j = 0; j < kept; ++j) {
+            int h = survivorHashes[j];
+            int i = slot(h);
+            while (nks[i] != null)
+                i = (i + 1) & mask;
+            nks[i] = survivors[j];
+            nhs[i] = h;
+        }
+        size = kept;
+        ++modCount;
+        return true;
+    }
+
+    /* ---------------- Iteration -------------- */
+
+    public Iterator<E> iterator() {
+        return new SetIterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        Object[] ks = keys;
+        for (int i = 0; i < ks.length && modCount == mc; ++i) {
+            Object k = ks[i];
+            if (k != null)
+                action.accept(unmaskNull(k));
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * 从数组的末尾向前迭代。
+     *
+     * iterator.remove 会把后面（下标更大）的元素向前移动到被删除的位置，这些元素已经被迭代过了，所以不会重复；
+     * 唯一的例外是聚集跨过了数组末尾，下标很小（尚未迭代）的元素被移到了已经迭代过的位置，
+     * 这些元素被记录在 wrapped 中，扫描完数组之后再返回它们。
+     */
+    final class SetIterator implements Iterator<E> {
+        int pos = keys.length;        // 下一次从 pos - 1 开始向前查找
+        int last = -1;                // 上一次返回的元素所在的槽位，-1 表示没有
+        int count = size;             // 还未返回的元素的数量
+        ArrayList<Object> wrapped;    // 被移到已经迭代过的位置上的元素
+        Object lastWrapped;           // 上一次返回的元素来自 wrapped 时的那个元素
+        boolean hasLast;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return count > 0;
+        }
+
+        public E next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (count <= 0)
+                throw new NoSuchElementException();
+            --count;
+            hasLast = true;
+            Object[] ks = keys;
+            while (--pos >= 0) {
+                if (ks[pos] != null) {
+                    last = pos;
+                    return unmaskNull(ks[pos]);
+                }
+            }
+            // 数组已经扫描完，返回被移走的元素
+            last = -1;
+            pos = -1;
+            lastWrapped = wrapped.remove(wrapped.size() - 1);
+            return unmaskNull(lastWrapped);
+        }
+
+        public void remove() {
+            if (!hasLast)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            hasLast = false;
+            if (last < 0) {
+                OpenHashSet.this.remove(unmaskNull(lastWrapped));
+            } else {
+                shiftRemove(last);
+                last = -1;
+            }
+            expectedModCount = modCount;
+        }
+
+        // 与 removeAt 相同，但是记录从尚未迭代的位置移到已经迭代过的位置的元素
+        private void shiftRemove(int i) {
+            Object[] ks = keys;
+            int[] hs = hashes;
+            int mask = ks.length - 1;
+            for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+                Object x = ks[j];
+                if (x == null)
+                    break;
+                int s = slot(hs[j]);
+                if (((j - s) & mask) >= ((j - i) & mask)) {
+                    if (j < pos && i >= pos) {
+                        if (wrapped == null)
+                            wrapped = new ArrayList<>(2);
+                        wrapped.add(x);
+                    }
+                    ks[i] = x;
+                    hs[i] = hs[j];
+                    i = j;
+                }
+            }
+            ks[i] = null;
+            hs[i] = 0;
+            ++modCount;
+            --size;
+        }
+    }
+
+    /* ---------------- Cloning and serialization -------------- */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object clone() {
+        OpenHashSet<E> result;
+        try {
+            result = (OpenHashSet<E>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        result.keys = keys.clone();
+        result.hashes = hashes.clone();
+        result.modCount = 0;
+        return result;
+    }
+
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        for (Object k : keys) {
+            if (k != null)
+                s.writeObject(unmaskNull(k));
+        }
+    }
+
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int elements = s.readInt();
+        if (elements < 0)
+            throw new InvalidObjectException("Illegal elements count: " +
+                    elements);
+        allocate(capacityFor(elements));
+        for (int i = 0; i < elements; i++) {
+            Object e = s.readObject();
+            addHashed(HashMap.hash(e), maskNull(e));
+        }
+    }
+}
@@ -0,0 +1,662 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.*;
+
+import memory.ObjectLayout;
+
+/**
+ * 按列存储（struct-of-arrays）的定长记录列表，记录的字段由 Schema 定义。
+ *
+ * 用 ArrayList<Record> 保存上千万个 (long ts, int id, double value) 这样的小记录时，
+ * 每个记录都是一个对象：12~16 字节的对象头加上 elementData 中的一个引用，而有效数据只有 20 字节；
+ * 按某个字段扫描时要逐个解引用，访问的内存分散在整个堆中，GC 也要遍历每一个记录对象。
+ * 此类给每个字段分配一列，第 i 个记录的字段 f 保存在第 f 列的第 i 个位置：
+ *   1. 没有对象头和引用，每个记录只占各字段宽度之和；
+ *   2. 按字段扫描（例如对 value 求和）是对一列的顺序访问，可以通过 longColumn 等方法得到只读的视图；
+ *   3. 列可以在堆外（ByteBuffer.allocateDirect），这时 GC 完全不需要扫描这些数据，也不计入堆的大小。
+ * 所有列的容量相同，扩容策略与 ArrayList.grow 相同：扩大为原来的 1.5 倍，不够时扩大到所需的容量，
+ * 第一次添加时分配默认容量（10）。每列都按本机字节序（native order）存储。
+ *
+ * 读写通过下标和字段编号进行，或者通过 Cursor：Cursor 是一个轻量级的游标（flyweight），
+ * 本身只保存当前的下标，可以在整个列表上移动，读写时不会创建任何对象。
+ * 字段编号由 Schema.field(name) 得到，读写时会检查字段的类型。
+ *
+ * 堆外的列用直接 ByteBuffer 实现，而不是 MemorySegment：MemorySegment 直到 JDK 22 才成为正式 API
+ * （之前是 API 多次变化的 incubator/preview），而这个项目的 ArrayList、HashMap 等核心类仍然是 JDK 8 的源码。
+ * 直接 ByteBuffer 的内存本来要等 GC 回收 ByteBuffer 对象之后才释放，扩容到上千万个记录时，
+ * 被丢弃的旧列加起来接近最终大小的两倍，可能达到 -XX:MaxDirectMemorySize 而触发 System.gc()。
+ * 所以扩容和 trimToSize 时立即释放旧的列（JDK 9 及以后通过 Unsafe.invokeCleaner，JDK 8 通过 DirectBuffer.cleaner()），
+ * 不再使用时应当调用 close() 释放所有的列。例外：
+ *   1. 如果通过 longColumn 等方法取得过当前各列的视图，旧的列仍然交给 GC 回收，避免视图访问已经释放的内存；
+ *   2. 两种释放方式都不可用时（例如受限的运行环境），同样退回到由 GC 回收。
+ *
+ * 所有记录的字节数之和不能超过 Integer.MAX_VALUE，即最多 Integer.MAX_VALUE / 8 个记录。
+ * 请注意，此实现不同步。
+ *
+ * @see ArrayList
+ */
+public class RecordList implements AutoCloseable {
+
+    /**
+     * 字段的类型
+     */
+    public enum FieldType {
+        INT(4), LONG(8), FLOAT(4), DOUBLE(8);
+
+        final int width;
+        final int shift;
+
+        FieldType(int width) {
+            this.width = width;
+            this.shift = Integer.numberOfTrailingZeros(width);
+        }
+
+        /**
+         * 每个值占的字节数
+         */
+        public int width() {
+            return width;
+        }
+    }
+
+    /**
+     * 记录的结构：字段的名字和类型，按添加的顺序编号。不可变，with* 方法返回新的实例。
+     */
+    public static final class Schema {
+
+        /**
+         * 没有字段的结构，从它开始依次添加字段
+         */
+        public static final Schema EMPTY = new Schema(new String[0], new FieldType[0]);
+
+        final String[] names;
+        final FieldType[] types;
+
+        private Schema(String[] names, FieldType[] types) {
+            this.names = names;
+            this.types = types;
+        }
+
+        /**
+         * 返回在末尾添加了一个字段的新结构
+         *
+         * @throws IllegalArgumentException 如果已经存在同名的字段
+         */
+        public Schema with(String name, FieldType type) {
+            Objects.requireNonNull(name);
+            Objects.requireNonNull(type);
+            for (String n : names)
+                if (n.equals(name))
+                    throw new IllegalArgumentException("Duplicate field: " + name);
+            int n = names.length;
+            String[] ns = Arrays.copyOf(names, n + 1);
+            FieldType[] ts = Arrays.copyOf(types, n + 1);
+            ns[n] = name;
+            ts[n] = type;
+            return new Schema(ns, ts);
+        }
+
+        public Schema withInt(String name) {
+            return with(name, FieldType.INT);
+        }
+
+        public Schema withLong(String name) {
+            return with(name, FieldType.LONG);
+        }
+
+        public Schema withFloat(String name) {
+            return with(name, FieldType.FLOAT);
+        }
+
+        public Schema withDouble(String name) {
+            return with(name, FieldType.DOUBLE);
+        }
+
+        /**
+         * 字段的个数
+         */
+        public int fieldCount() {
+            return names.length;
+        }
+
+        /**
+         * 返回字段的编号
+         *
+         * @throws IllegalArgumentException 如果不存在这个字段
+         */
+        public int field(String name) {
+            for (int i = 0; i < names.length; i++)
+                if (names[i].equals(name))
+                    return i;
+            throw new IllegalArgumentException("Unknown field: " + name);
+        }
+
+        public String name(int field) {
+            return names[field];
+        }
+
+        public FieldType type(int field) {
+            return types[field];
+        }
+
+        /**
+         * 每个记录占的字节数
+         */
+        public int recordWidth() {
+            int w = 0;
+            for (FieldType t : types)
+                w += t.width;
+            return w;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("(");
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(types[i].name().toLowerCase()).append(' ').append(names[i]);
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * 最多的记录个数，最宽的字段（8 字节）的一列不能超过 Integer.MAX_VALUE 字节
+     */
+    private static final int MAX_RECORDS = (Integer.MAX_VALUE - 8) / 8;
+
+    final Schema schema;
+
+    /**
+     * 是否在堆外分配各列
+     */
+    final boolean direct;
+
+    /**
+     * 每个字段一列
+     */
+    ByteBuffer[] columns;
+
+    int capacity;
+
+    int size;
+
+    /**
+     * 结构修改（添加、删除记录，以及扩容）的次数
+     */
+    int modCount;
+
+    /**
+     * 当前各列是否有视图被返回给了调用方，为 true 时不能立即释放这些列
+     */
+    boolean exposed;
+
+    /**
+     * 是否已经调用过 close()
+     */
+    boolean closed;
+
+    /**
+     * 构造一个空的列表，各列在堆上，第一次添加时分配默认容量（10）
+     */
+    public RecordList(Schema schema) {
+        this(schema, 0, false);
+    }
+
+    /**
+     * 构造一个具有指定初始容量的空列表
+     *
+     * @param direct 为 true 时各列在堆外分配
+     */
+    public RecordList(Schema schema, int initialCapacity, boolean direct) {
+        if (schema.fieldCount() == 0)
+            throw new IllegalArgumentException("Empty schema");
+        if (initialCapacity < 0 || initialCapacity > MAX_RECORDS)
+            throw new IllegalArgumentException("Illegal Capacity: " +
+                    initialCapacity);
+        this.schema = schema;
+        this.direct = direct;
+        this.columns = new ByteBuffer[schema.fieldCount()];
+        allocate(initialCapacity);
+    }
+
+    public Schema schema() {
+        return schema;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* ---------------- Capacity -------------- */
+
+    // 按新的容量分配各列，并复制已有的记录，然后释放旧的堆外列
+    private void allocate(int newCapacity) {
+        final ByteBuffer[] cols = columns;
+        final FieldType[] types = schema.types;
+        for (int f = 0; f < cols.length; f++) {
+            int bytes = newCapacity << types[f].shift;
+            ByteBuffer nb = (direct ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes))
+                    .order(ByteOrder.nativeOrder());
+            ByteBuffer old = cols[f];
+            if (old != null && size > 0) {
+                ByteBuffer src = old.duplicate();
+                src.position(0);
+                src.limit(size << types[f].shift);
+                nb.put(src);
+                nb.position(0);
+            }
+            cols[f] = nb;
+            if (old != null && direct && !exposed)
+                DirectMemory.free(old);
+        }
+        capacity = newCapacity;
+        exposed = false;
+    }
+
+    /**
+     * 释放所有的列（堆外的列立即释放，见类的说明），之后列表为空，不能再添加记录。
+     * 已经创建的 Cursor 不能再读写。重复调用没有作用。
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        modCount++;
+        size = 0;
+        final ByteBuffer[] cols = columns;
+        for (int f = 0; f < cols.length; f++) {
+            ByteBuffer old = cols[f];
+            // 容量为 0 的列，之后任何读写都会抛出 IndexOutOfBoundsException，而不会访问已经释放的内存
+            cols[f] = ByteBuffer.allocate(0);
+            if (direct && !exposed)
+                DirectMemory.free(old);
+        }
+        capacity = 0;
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("RecordList is closed");
+    }
+
+    public void ensureCapacity(int minCapacity) {
+        int minExpand = (capacity != 0) ? 0 : DEFAULT_CAPACITY;
+        if (minCapacity > minExpand)
+            ensureExplicitCapacity(minCapacity);
+    }
+
+    private void ensureCapacityInternal(int minCapacity) {
+        if (capacity == 0)
+            minCapacity = Math.max(DEFAULT_CAPACITY, minCapacity);
+        ensureExplicitCapacity(minCapacity);
+    }
+
+    private void ensureExplicitCapacity(int minCapacity) {
+        ensureOpen();
+        modCount++;
+        if (minCapacity - capacity > 0)
+            grow(minCapacity);
+    }
+
+    // 与 ArrayList.grow 相同的扩容策略
+    private void grow(int minCapacity) {
+        int oldCapacity = capacity;
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (newCapacity - minCapacity < 0)
+            newCapacity = minCapacity;
+        if (newCapacity - MAX_RECORDS > 0)
+            newCapacity = hugeCapacity(minCapacity);
+        allocate(newCapacity);
+    }
+
+    private static int hugeCapacity(int minCapacity) {
+        if (minCapacity < 0 || minCapacity > MAX_RECORDS) // overflow
+            throw new OutOfMemoryError();
+        return MAX_RECORDS;
+    }
+
+    /**
+     * 把各列的容量缩减到当前的记录个数
+     */
+    public void trimToSize() {
+        ensureOpen();
+        modCount++;
+        if (size < capacity)
+            allocate(size);
+    }
+
+    /**
+     * 估算此列表占用的堆内存（字节），O(1)。堆上的列按容量计算，堆外的列只计入 ByteBuffer 对象本身，
+     * 不计入 schema（通常由多个列表共享）。对象的大小按当前 JVM 的对象布局计算，见 ObjectLayout。
+     */
+    public long estimateFootprintBytes() {
+        long bytes = ObjectLayout.instanceSize(2, 15);   // schema、columns；direct、capacity、size、modCount、exposed、closed
+        bytes += ObjectLayout.referenceArraySize(columns.length);
+        final FieldType[] types = schema.types;
+        for (int f = 0; f < columns.length; f++) {
+            bytes += ObjectLayout.instanceSize(3, 40);   // ByteBuffer 的字段（hb/address、byte[] 等）
+            if (!direct)
+                bytes += ObjectLayout.arraySize(capacity << types[f].shift, 1);
+        }
+        return bytes;
+    }
+
+    /**
+     * 堆外分配的字节数，各列在堆上时返回 0
+     */
+    public long offHeapBytes() {
+        return direct ? (long) capacity * schema.recordWidth() : 0L;
+    }
+
+    /* ---------------- Records -------------- */
+
+    /**
+     * 在末尾添加一个所有字段都为 0 的记录，返回它的下标
+     */
+    public int add() {
+        ensureCapacityInternal(size + 1);
+        final int index = size;
+        final ByteBuffer[] cols = columns;
+        final FieldType[] types = schema.types;
+        // 删除过记录时这里可能有旧的数据
+        for (int f = 0; f < cols.length; f++) {
+            if (types[f].width == 8)
+                cols[f].putLong(index << 3, 0L);
+            else
+                cols[f].putInt(index << 2, 0);
+        }
+        size = index + 1;
+        return index;
+    }
+
+    /**
+     * 删除最后一个记录
+     *
+     * @throws NoSuchElementException 如果列表为空
+     */
+    public void removeLast() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        modCount++;
+        --size;
+    }
+
+    /**
+     * 删除所有记录，容量不变
+     */
+    public void clear() {
+        modCount++;
+        size = 0;
+    }
+
+    private void rangeCheck(int index) {
+        if (index >= size || index < 0)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    private ByteBuffer column(int field, FieldType type) {
+        if (schema.types[field] != type)
+            throw new IllegalArgumentException("Field " + schema.names[field] + " is " +
+                    schema.types[field] + ", not " + type);
+        return columns[field];
+    }
+
+    public int getInt(int index, int field) {
+        rangeCheck(index);
+        return column(field, FieldType.INT).getInt(index << 2);
+    }
+
+    public long getLong(int index, int field) {
+        rangeCheck(index);
+        return column(field, FieldType.LONG).getLong(index << 3);
+    }
+
+    public float getFloat(int index, int field) {
+        rangeCheck(index);
+        return column(field, FieldType.FLOAT).getFloat(index << 2);
+    }
+
+    public double getDouble(int index, int field) {
+        rangeCheck(index);
+        return column(field, FieldType.DOUBLE).getDouble(index << 3);
+    }
+
+    public void setInt(int index, int field, int value) {
+        rangeCheck(index);
+        column(field, FieldType.INT).putInt(index << 2, value);
+    }
+
+    public void setLong(int index, int field, long value) {
+        rangeCheck(index);
+        column(field, FieldType.LONG).putLong(index << 3, value);
+    }
+
+    public void setFloat(int index, int field, float value) {
+        rangeCheck(index);
+        column(field, FieldType.FLOAT).putFloat(index << 2, value);
+    }
+
+    public void setDouble(int index, int field, double value) {
+        rangeCheck(index);
+        column(field, FieldType.DOUBLE).putDouble(index << 3, value);
+    }
+
+    /* ---------------- Column views -------------- */
+
+    // 第 field 列中 [0, size) 的只读视图，按本机字节序
+    private ByteBuffer columnView(int field, FieldType type) {
+        ByteBuffer b = column(field, type).duplicate();
+        exposed = direct;
+        b.position(0);
+        b.limit(size << type.shift);
+        return b.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * 返回一个 INT 字段的所有值的只读视图，长度为当前的 size。
+     * 视图直接引用列的存储，在下一次扩容、trimToSize 或者 close 之前可以看到 set 的修改。
+     * 堆外的列被取得视图之后，扩容时不再立即释放，见类的说明。
+     */
+    public IntBuffer intColumn(int field) {
+        return columnView(field, FieldType.INT).asIntBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * 返回一个 LONG 字段的所有值的只读视图，见 intColumn
+     */
+    public LongBuffer longColumn(int field) {
+        return columnView(field, FieldType.LONG).asLongBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * 返回一个 FLOAT 字段的所有值的只读视图，见 intColumn
+     */
+    public FloatBuffer floatColumn(int field) {
+        return columnView(field, FieldType.FLOAT).asFloatBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * 返回一个 DOUBLE 字段的所有值的只读视图，见 intColumn
+     */
+    public DoubleBuffer doubleColumn(int field) {
+        return columnView(field, FieldType.DOUBLE).asDoubleBuffer().asReadOnlyBuffer();
+    }
+
+    /* ---------------- Direct memory -------------- */
+
+    /**
+     * 立即释放直接 ByteBuffer 的内存，不等待 GC。
+     * JDK 9 及以后使用 sun.misc.Unsafe.invokeCleaner（jdk.unsupported 模块），
+     * JDK 8 使用 sun.nio.ch.DirectBuffer.cleaner().clean()，都通过反射调用，两者都不可用时什么也不做。
+     */
+    static final class DirectMemory {
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+        private static final Method CLEANER;
+        private static final Method CLEAN;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null, cleaner = null, clean = null;
+            try {
+                Class<?> c = Class.forName("sun.misc.Unsafe");
+                invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+                Field f = c.getDeclaredField("theUnsafe");
+                f.setAccessible(true);
+                unsafe = f.get(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                invokeCleaner = null;
+                try {
+                    cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                    clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                } catch (ReflectiveOperationException | RuntimeException e2) {
+                    cleaner = clean = null;
+                }
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+            CLEANER = cleaner;
+            CLEAN = clean;
+        }
+
+        private DirectMemory() {
+        }
+
+        /**
+         * 释放 buf 的内存，之后不能再访问 buf 以及由它得到的任何视图。buf 必须是 allocateDirect 直接返回的实例。
+         *
+         * @return 已经释放时返回 true，释放方式不可用时返回 false
+         */
+        static boolean free(ByteBuffer buf) {
+            if (!buf.isDirect())
+                return false;
+            try {
+                if (INVOKE_CLEANER != null) {
+                    INVOKE_CLEANER.invoke(UNSAFE, buf);
+                    return true;
+                }
+                if (CLEANER != null) {
+                    Object cleaner = CLEANER.invoke(buf);
+                    if (cleaner != null)
+                        CLEAN.invoke(cleaner);
+                    return true;
+                }
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // 交给 GC 回收
+            }
+            return false;
+        }
+    }
+
+    /* ---------------- Cursor -------------- */
+
+    /**
+     * 返回一个位于第一个记录之前的游标，第一次调用 next() 之后指向下标为 0 的记录
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * 轻量级的游标，只保存当前记录的下标。
+     * 游标移动时检查下标和并发修改，读写字段时只检查字段的类型，不再检查下标，
+     * 所以每次访问的开销与直接读写数组相当。与 ArrayList 的迭代器相同，游标是快速失败（fail-fast）的：
+     * 添加或删除记录之后，除非重新调用 moveTo，否则下一次移动会抛出 ConcurrentModificationException。
+     */
+    public final class Cursor {
+        private int index = -1;
+        private int expectedModCount = modCount;
+
+        Cursor() {
+        }
+
+        /**
+         * 当前记录的下标
+         */
+        public int index() {
+            return index;
+        }
+
+        /**
+         * 移动到下一个记录
+         *
+         * @return 存在下一个记录时返回 true
+         */
+        public boolean next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (index + 1 >= size)
+                return false;
+            ++index;
+            return true;
+        }
+
+        /**
+         * 移动到下标为 index 的记录
+         */
+        public Cursor moveTo(int index) {
+            rangeCheck(index);
+            this.index = index;
+            expectedModCount = modCount;
+            return this;
+        }
+
+        /**
+         * 在列表末尾添加一个所有字段都为 0 的记录，并移动到这个记录
+         */
+        public Cursor append() {
+            return moveTo(add());
+        }
+
+        public int getInt(int field) {
+            return column(field, FieldType.INT).getInt(index << 2);
+        }
+
+        public long getLong(int field) {
+            return column(field, FieldType.LONG).getLong(index << 3);
+        }
+
+        public float getFloat(int field) {
+            return column(field, FieldType.FLOAT).getFloat(index << 2);
+        }
+
+        public double getDouble(int field) {
+            return column(field, FieldType.DOUBLE).getDouble(index << 3);
+        }
+
+        public Cursor setInt(int field, int value) {
+            column(field, FieldType.INT).putInt(index << 2, value);
+            return this;
+        }
+
+        public Cursor setLong(int field, long value) {
+            column(field, FieldType.LONG).putLong(index << 3, value);
+            return this;
+        }
+
+        public Cursor setFloat(int field, float value) {
+            column(field, FieldType.FLOAT).putFloat(index << 2, value);
+            return this;
+        }
+
+        public Cursor setDouble(int field, double value) {
+            column(field, FieldType.DOUBLE).putDouble(index << 3, value);
+            return this;
+        }
+    }
+}
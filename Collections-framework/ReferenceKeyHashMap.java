@@ -0,0 +1,489 @@
+package map;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * 键（key）以弱引用或软引用方式持有的散列表，是 WeakKeyHashMap 和 SoftKeyHashMap 的公共父类。
+ *
+ * 桶（bin）的组织方式与 HashMap 完全相同：table 的长度总是2的幂，散列值由 HashMap.hash() 计算
+ * （即 key.hashCode() 的高16位与低16位异或），冲突的映射条目用链表串起来，扩容时按 (hash & oldCap)
+ * 把一个桶拆成 lo 和 hi 两条链表。不同的是，这里的节点本身就是一个 Reference，
+ * 当键只剩下这个节点的弱（软）引用时，GC 会清除它并把节点放进 queue 里。
+ *
+ * 与 WeakHashMap 在每一个操作（包括 get、size、迭代）前都把 ReferenceQueue 整个清空不同，
+ * 这里只在写操作（put、remove）和 size()/isEmpty() 时从 queue 里取出至多 EXPUNGE_BATCH 个失效节点进行清理，
+ * 这样清理的开销被均摊开，每次最多处理 EXPUNGE_BATCH 个节点；get、containsKey 和迭代完全不会去碰 queue。
+ * 失效节点在创建时已经保存了散列值 hash，所以清理时直接用 hash & (n - 1) 定位到桶，
+ * 然后按引用相等把它从链表上摘下来，不需要（也不可能）再次调用 key.hashCode()。
+ *
+ * 由于 GC 随时可能清除键，桶内不会被转换为红黑树（TreeNode），因为树的排序依赖于键本身。
+ * 另外，size() 也只清理一批，所以 GC 一次清除了很多键之后，它的结果可能包含键已经被回收、
+ * 但还没有被清理的映射条目（WeakHashMap 的 size() 同样只是一个近似值）；
+ * 需要准确的结果，或者想在空闲的时候主动清理，可以先调用 purgeStaleEntries()。
+ *
+ * 请注意，此实现不同步。迭代器是快速失败的，迭代过程中会强引用下一个要返回的键，
+ * 保证 hasNext() 返回 true 之后 next() 一定能返回一个有效的映射条目。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see WeakKeyHashMap
+ * @see SoftKeyHashMap
+ * @see HashMap
+ */
+public abstract class ReferenceKeyHashMap<K,V> extends AbstractMap<K,V> {
+
+    /**
+     * 默认初始容量 - 必须是2的幂。
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，必须是2的幂并且小于等于 2的30的幂。
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 默认负载因子。
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 每一次写操作最多从 queue 中清理的失效节点个数。
+     * 太大会让个别 put 出现明显的停顿，太小则清理速度可能跟不上 GC 回收的速度，
+     * 不过 resize() 在需要的时候会完全清空 queue，所以不会无限堆积。
+     */
+    static final int EXPUNGE_BATCH = 64;
+
+    /**
+     * 用来代替 null 键的对象，因为 Reference 无法区分“键为null”和“键已经被回收”。
+     */
+    static final Object NULL_KEY = new Object();
+
+    /**
+     * 散列表，长度总是2的幂。
+     */
+    transient RefNode<K,V>[] table;
+
+    /**
+     * 映射条目的数量，包含已经被 GC 清除但还没有从 table 上摘除的失效节点。
+     */
+    transient int size;
+
+    /**
+     * 结构修改的次数，用于迭代器的快速失败。
+     * 注意清理失效节点不算结构修改，否则 size() 会让正在进行的迭代抛出异常。
+     */
+    transient int modCount;
+
+    /**
+     * 当 size 到达 threshold 这个阈值时会扩容（capacity * load factor）。
+     */
+    int threshold;
+
+    /**
+     * 负载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 被 GC 清除的节点会被放进这个队列。
+     */
+    final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 散列表的节点。节点本身需要继承 WeakReference 或 SoftReference，
+     * 所以这里只能用接口来统一两种节点的访问方式。
+     */
+    interface RefNode<K,V> extends Map.Entry<K,V> {
+        // 创建节点时保存的散列值，清理失效节点时用它来定位桶
+        int hash();
+        // 被引用的键，可能是 NULL_KEY；键被回收以后返回 null
+        Object rawKey();
+        RefNode<K,V> next();
+        void setNext(RefNode<K,V> next);
+        // 节点失效后把 value 置为 null，帮助 GC
+        void clearValue();
+    }
+
+    /**
+     * 构造一个具有特定初始容量和负载因子的空的散列表。
+     */
+    ReferenceKeyHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        this.loadFactor = loadFactor;
+        // 与 WeakHashMap 一样在构造时就分配 table，这样清理失效节点时不需要判断 table 是否为 null
+        int cap = HashMap.tableSizeFor(Math.max(initialCapacity, 1));
+        this.table = newTable(cap);
+        this.threshold = (int)Math.min(cap * loadFactor, MAXIMUM_CAPACITY + 1);
+    }
+
+    /**
+     * 由子类创建具体的节点（WeakReference 或 SoftReference）。
+     */
+    abstract RefNode<K,V> newNode(int hash, Object key, V value,
+                                  ReferenceQueue<Object> queue, RefNode<K,V> next);
+
+    @SuppressWarnings({"rawtypes","unchecked"})
+    private static <K,V> RefNode<K,V>[] newTable(int n) {
+        return (RefNode<K,V>[])new RefNode[n];
+    }
+
+    static Object maskNull(Object key) {
+        return (key == null) ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K> K unmaskNull(Object key) {
+        return (key == NULL_KEY) ? null : (K)key;
+    }
+
+    /* ---------------- Stale entry handling -------------- */
+
+    /**
+     * 从 queue 中取出至多 max 个失效节点，并把它们从所在的桶上摘除。
+     * 节点保存了创建时的散列值，所以直接用 hash & (n - 1) 找到桶，按引用相等查找即可。
+     * 如果节点已经在 resize() 中被丢弃了，就在桶里找不到它，直接忽略。
+     *
+     * @return 实际摘除的节点个数
+     */
+    @SuppressWarnings("unchecked")
+    final int expungeStaleEntries(int max) {
+        int removed = 0;
+        for (int i = 0; i < max; i++) {
+            Object x = queue.poll();
+            if (x == null)
+                break;
+            RefNode<K,V> e = (RefNode<K,V>)x;
+            RefNode<K,V>[] tab = table;
+            int index = e.hash() & (tab.length - 1);
+            RefNode<K,V> prev = null, p = tab[index];
+            while (p != null) {
+                RefNode<K,V> next = p.next();
+                if (p == e) {
+                    if (prev == null)
+                        tab[index] = next;
+                    else
+                        prev.setNext(next);
+                    // 这里不能把 e.next 置为 null，迭代器可能正停在这个节点上
+                    e.clearValue();
+                    --size;
+                    ++removed;
+                    break;
+                }
+                prev = p;
+                p = next;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 立即清理所有已经被 GC 清除的映射条目。
+     * 平时写操作只会分批清理，如果映射在很长一段时间内只读不写，可以在空闲时调用这个方法释放 value。
+     */
+    public void purgeStaleEntries() {
+        expungeStaleEntries(Integer.MAX_VALUE);
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 返回映射条目的数量。返回之前只清理至多 EXPUNGE_BATCH 个失效节点，
+     * 所以结果可能包含键已经被回收、但还没有被清理的映射条目；需要准确的结果时先调用 purgeStaleEntries()。
+     */
+    public int size() {
+        if (size == 0)
+            return 0;
+        expungeStaleEntries(EXPUNGE_BATCH);
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // 返回给定散列值和key（已经过 maskNull）的那个节点，读操作不会去碰 queue
+    final RefNode<K,V> getNode(int hash, Object k) {
+        RefNode<K,V>[] tab = table;
+        RefNode<K,V> e = tab[(tab.length - 1) & hash];
+        Object ek;
+        while (e != null) {
+            if (e.hash() == hash && ((ek = e.rawKey()) == k || (ek != null && k.equals(ek))))
+                return e;
+            e = e.next();
+        }
+        return null;
+    }
+
+    public V get(Object key) {
+        Object k = maskNull(key);
+        RefNode<K,V> e = getNode(HashMap.hash(k), k);
+        return (e == null) ? null : e.getValue();
+    }
+
+    public boolean containsKey(Object key) {
+        Object k = maskNull(key);
+        return getNode(HashMap.hash(k), k) != null;
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        Object k = maskNull(key);
+        RefNode<K,V> e = getNode(HashMap.hash(k), k);
+        return (e == null) ? defaultValue : e.getValue();
+    }
+
+    /**
+     * 把映射条目加进散列表中。新节点插在桶的头部，这样不需要遍历到链表尾部。
+     */
+    public V put(K key, V value) {
+        expungeStaleEntries(EXPUNGE_BATCH);
+        Object k = maskNull(key);
+        int hash = HashMap.hash(k);
+        RefNode<K,V>[] tab = table;
+        int i = (tab.length - 1) & hash;
+        Object ek;
+        for (RefNode<K,V> e = tab[i]; e != null; e = e.next()) {
+            if (e.hash() == hash && ((ek = e.rawKey()) == k || (ek != null && k.equals(ek))))
+                return e.setValue(value);
+        }
+        ++modCount;
+        tab[i] = newNode(hash, k, value, queue, tab[i]);
+        if (++size >= threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * 扩容为原来的两倍。扩容前先完全清空 queue，如果清理之后 size 已经降到阈值的一半以下，
+     * 说明这次“涨满”主要是失效节点造成的，此时不再扩容（与 WeakHashMap 的策略一致）。
+     * 迁移时与 HashMap.resize() 一样按 (hash & oldCap) 拆成 lo/hi 两条链表并保持原有顺序，
+     * 顺便丢弃键已经被回收的节点。
+     */
+    final void resize() {
+        purgeStaleEntries();
+        if (size < (threshold >>> 1))
+            return;
+        RefNode<K,V>[] oldTab = table;
+        int oldCap = oldTab.length;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        int newCap = oldCap << 1;
+        RefNode<K,V>[] newTab = newTable(newCap);
+        for (int j = 0; j < oldCap; ++j) {
+            RefNode<K,V> e = oldTab[j];
+            if (e == null)
+                continue;
+            oldTab[j] = null;
+            RefNode<K,V> loHead = null, loTail = null;
+            RefNode<K,V> hiHead = null, hiTail = null;
+            RefNode<K,V> next;
+            do {
+                next = e.next();
+                if (e.rawKey() == null) {
+                    // 键已经被回收，它稍后还会从 queue 中出来，但那时在桶里已经找不到它了
+                    e.clearValue();
+                    --size;
+                }
+                else if ((e.hash() & oldCap) == 0) {
+                    if (loTail == null)
+                        loHead = e;
+                    else
+                        loTail.setNext(e);
+                    loTail = e;
+                }
+                else {
+                    if (hiTail == null)
+                        hiHead = e;
+                    else
+                        hiTail.setNext(e);
+                    hiTail = e;
+                }
+            } while ((e = next) != null);
+            if (loTail != null) {
+                loTail.setNext(null);
+                newTab[j] = loHead;
+            }
+            if (hiTail != null) {
+                hiTail.setNext(null);
+                newTab[j + oldCap] = hiHead;
+            }
+        }
+        ++modCount;
+        table = newTab;
+        float ft = (float)newCap * loadFactor;
+        threshold = (newCap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                (int)ft : Integer.MAX_VALUE);
+    }
+
+    public V remove(Object key) {
+        expungeStaleEntries(EXPUNGE_BATCH);
+        Object k = maskNull(key);
+        RefNode<K,V> e = removeNode(HashMap.hash(k), k);
+        return (e == null) ? null : e.getValue();
+    }
+
+    // 把给定散列值和key（已经过 maskNull）的节点从桶中摘除
+    final RefNode<K,V> removeNode(int hash, Object k) {
+        RefNode<K,V>[] tab = table;
+        int i = (tab.length - 1) & hash;
+        RefNode<K,V> prev = null, e = tab[i];
+        Object ek;
+        while (e != null) {
+            RefNode<K,V> next = e.next();
+            if (e.hash() == hash && ((ek = e.rawKey()) == k || (ek != null && k.equals(ek)))) {
+                if (prev == null)
+                    tab[i] = next;
+                else
+                    prev.setNext(next);
+                ++modCount;
+                --size;
+                return e;
+            }
+            prev = e;
+            e = next;
+        }
+        return null;
+    }
+
+    /**
+     * 删除全部映射条目。queue 中残留的节点在清空 table 前后都要丢弃，
+     * 否则它们之后出队时会被当成当前 table 中的节点去查找（虽然找不到，但没有必要）。
+     */
+    public void clear() {
+        while (queue.poll() != null)
+            ;
+        ++modCount;
+        Arrays.fill(table, null);
+        size = 0;
+        while (queue.poll() != null)
+            ;
+    }
+
+    public boolean containsValue(Object value) {
+        RefNode<K,V>[] tab = table;
+        for (int i = 0; i < tab.length; ++i) {
+            for (RefNode<K,V> e = tab[i]; e != null; e = e.next()) {
+                if (e.rawKey() != null && Objects.equals(value, e.getValue()))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        RefNode<K,V>[] tab = table;
+        for (int i = 0; i < tab.length; ++i) {
+            for (RefNode<K,V> e = tab[i]; e != null; e = e.next()) {
+                Object k = e.rawKey();
+                // 先取出键的强引用，再判断是否失效，防止回调过程中键被回收
+                if (k != null)
+                    action.accept(ReferenceKeyHashMap.<K>unmaskNull(k), e.getValue());
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return ReferenceKeyHashMap.this.size(); }
+        public final void clear()               { ReferenceKeyHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = maskNull(e.getKey());
+            RefNode<K,V> candidate = getNode(HashMap.hash(k), k);
+            return candidate != null && Objects.equals(candidate.getValue(), e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = maskNull(e.getKey());
+            int hash = HashMap.hash(k);
+            RefNode<K,V> candidate = getNode(hash, k);
+            if (candidate == null || !Objects.equals(candidate.getValue(), e.getValue()))
+                return false;
+            removeNode(hash, k);
+            return true;
+        }
+    }
+
+    /**
+     * 迭代器。next 指向的节点的键被 nextKey 强引用着，
+     * 所以 hasNext() 返回 true 之后这个键不会再被回收。
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        RefNode<K,V>[] tab = table;
+        int index;                  // current slot
+        RefNode<K,V> next;          // next entry to return
+        Object nextKey;             // strong reference to the key of next
+        Object currentKey;          // strong reference to the key of the last returned entry
+        boolean hasCurrent;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            while (nextKey == null) {
+                RefNode<K,V> e = next;
+                while (e == null && index < tab.length)
+                    e = tab[index++];
+                if (e == null)
+                    return false;
+                // 跳过键已经被回收的节点
+                nextKey = e.rawKey();
+                next = (nextKey == null) ? e.next() : e;
+            }
+            return true;
+        }
+
+        public Map.Entry<K,V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            RefNode<K,V> e = next;
+            currentKey = nextKey;
+            hasCurrent = true;
+            nextKey = null;
+            next = e.next();
+            return e;
+        }
+
+        public void remove() {
+            if (!hasCurrent)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            hasCurrent = false;
+            removeNode(HashMap.hash(currentKey), currentKey);
+            currentKey = null;
+            expectedModCount = modCount;
+        }
+    }
+}
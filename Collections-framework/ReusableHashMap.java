@@ -0,0 +1,467 @@
+package map;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * 为“清空之后反复使用”设计的散列表，clear() 的均摊时间复杂度是 O(1)。
+ *
+ * HashMap.clear() 需要把 table 的每一个槽位都置为 null，代价是 O(capacity)，
+ * 即使上一次 clear() 之后只放进去了三个映射条目也一样。对于每个请求都要清空再复用的临时散列表来说，这就成了主要开销。
+ *
+ * 这里为每个桶额外保存一个代数（generation）戳 stamps[i]：
+ *   1. clear() 只是把当前代数 generation 加一，并把 size 置为0；
+ *   2. 只有当 stamps[i] == generation 时，桶 i 中的链表才是有效的，否则 getNode、putVal 等方法都把它当作空桶，
+ *      putVal 往一个过期的桶里放新节点时会直接覆盖掉旧的链表，并把 stamps[i] 更新为当前代数；
+ *   3. 过期的节点仍然被 table 引用着，所以每调用 wipeInterval 次 clear() 会真正地清空一次 table，
+ *      让这些键和值可以被 GC 回收。resize() 会重新分配 table，也相当于一次真正的清空。
+ * 这样清空并复用的循环的开销只和实际放进去的映射条目数量有关，与历史上的最大容量无关。
+ *
+ * 代价是每个桶多占用一个 int，以及过期的键和值最多会在 wipeInterval 次 clear() 之后才被释放。
+ * 桶的结构与 HashMap 相同（复用 HashMap.Node 和 HashMap.hash()），但不会转换为红黑树，
+ * 因为这种散列表通常只用来存放少量的临时数据。
+ *
+ * 允许 null 键和 null 值。请注意，此实现不同步。迭代器是快速失败的。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see HashMap
+ */
+public class ReusableHashMap<K,V> extends AbstractMap<K,V> implements Map<K,V> {
+
+    /**
+     * 默认初始容量 - 必须是2的幂。
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，必须是2的幂并且小于等于 2的30的幂。
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 默认负载因子。
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 默认每调用多少次 clear() 真正地清空一次 table。
+     */
+    static final int DEFAULT_WIPE_INTERVAL = 64;
+
+    /**
+     * 散列表，第一次使用时才初始化，长度总是2的幂。
+     */
+    transient HashMap.Node<K,V>[] table;
+
+    /**
+     * 每个桶的代数戳，长度与 table 相同。stamps[i] != generation 的桶被视为空桶。
+     */
+    transient int[] stamps;
+
+    /**
+     * 当前代数，从1开始（新分配的 stamps 全为0，所以所有桶一开始都是空的）。
+     */
+    transient int generation = 1;
+
+    /**
+     * 上一次真正清空 table 之后调用 clear() 的次数。
+     */
+    transient int clearsSinceWipe;
+
+    /**
+     * 每调用多少次 clear() 真正地清空一次 table。
+     */
+    final int wipeInterval;
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 映射条目的数量
+     */
+    transient int size;
+
+    /**
+     * 结构修改的次数，用于迭代器的快速失败。
+     */
+    transient int modCount;
+
+    /**
+     * 当 size 到达 threshold 这个阈值时会扩容（capacity * load factor）。
+     * table 还没有分配时保存的是初始容量。
+     */
+    int threshold;
+
+    /**
+     * 负载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 构造一个具有特定初始容量、负载因子和清空间隔的空的 ReusableHashMap 实例
+     *
+     * @param wipeInterval 每调用多少次 clear() 真正地清空一次 table，越大 clear() 越便宜，
+     *                     但过期的键和值在内存中停留的时间也越长
+     */
+    public ReusableHashMap(int initialCapacity, float loadFactor, int wipeInterval) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        if (wipeInterval <= 0)
+            throw new IllegalArgumentException("Illegal wipe interval: " +
+                    wipeInterval);
+        this.loadFactor = loadFactor;
+        this.wipeInterval = wipeInterval;
+        this.threshold = HashMap.tableSizeFor(Math.max(initialCapacity, 1));
+    }
+
+    /**
+     * 构造一个具有特定初始容量和默认负载因子（0.75）的空的 ReusableHashMap 实例
+     */
+    public ReusableHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, DEFAULT_WIPE_INTERVAL);
+    }
+
+    /**
+     * 构造一个具有默认初始容量（16）和默认负载因子（0.75）的空的 ReusableHashMap 实例
+     */
+    public ReusableHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, DEFAULT_WIPE_INTERVAL);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // 返回桶 i 中有效的第一个节点，过期的桶返回 null
+    final HashMap.Node<K,V> binAt(HashMap.Node<K,V>[] tab, int i) {
+        return (stamps[i] == generation) ? tab[i] : null;
+    }
+
+    public V get(Object key) {
+        HashMap.Node<K,V> e;
+        return (e = getNode(HashMap.hash(key), key)) == null ? null : e.value;
+    }
+
+    // 返回给定散列值和key的那个节点，过期的桶被当作空桶
+    final HashMap.Node<K,V> getNode(int hash, Object key) {
+        HashMap.Node<K,V>[] tab; HashMap.Node<K,V> e; int n; K k;
+        if ((tab = table) != null && (n = tab.length) > 0 &&
+                (e = binAt(tab, (n - 1) & hash)) != null) {
+            do {
+                if (e.hash == hash &&
+                        ((k = e.key) == key || (key != null && key.equals(k))))
+                    return e;
+            } while ((e = e.next) != null);
+        }
+        return null;
+    }
+
+    public boolean containsKey(Object key) {
+        return getNode(HashMap.hash(key), key) != null;
+    }
+
+    public V put(K key, V value) {
+        return putVal(HashMap.hash(key), key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(HashMap.hash(key), key, value, true);
+    }
+
+    /**
+     * 把映射条目加进散列表中。往过期的桶里放节点时，直接覆盖掉旧的链表并更新这个桶的代数戳。
+     */
+    final V putVal(int hash, K key, V value, boolean onlyIfAbsent) {
+        HashMap.Node<K,V>[] tab; HashMap.Node<K,V> p; int n, i;
+        if ((tab = table) == null || (n = tab.length) == 0)
+            n = (tab = resize()).length;
+        if ((p = binAt(tab, i = (n - 1) & hash)) == null) {
+            tab[i] = new HashMap.Node<>(hash, key, value, null);
+            stamps[i] = generation;
+        }
+        else {
+            HashMap.Node<K,V> e; K k;
+            if (p.hash == hash &&
+                    ((k = p.key) == key || (key != null && key.equals(k))))
+                e = p;
+            else {
+                for (;;) {
+                    if ((e = p.next) == null) {
+                        p.next = new HashMap.Node<>(hash, key, value, null);
+                        break;
+                    }
+                    if (e.hash == hash &&
+                            ((k = e.key) == key || (key != null && key.equals(k))))
+                        break;
+                    p = e;
+                }
+            }
+            if (e != null) { // existing mapping for key
+                V oldValue = e.value;
+                if (!onlyIfAbsent || oldValue == null)
+                    e.value = value;
+                return oldValue;
+            }
+        }
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * 初始化表或使表的大小变为原来的两倍。只迁移当前代数的桶，过期的桶直接丢弃。
+     * 新的 stamps 全为0，代数重新从1开始，所以扩容同时也是一次真正的清空。
+     */
+    @SuppressWarnings({"rawtypes","unchecked"})
+    final HashMap.Node<K,V>[] resize() {
+        HashMap.Node<K,V>[] oldTab = table;
+        int[] oldStamps = stamps;
+        int oldGen = generation;
+        int oldCap = (oldTab == null) ? 0 : oldTab.length;
+        int newCap;
+        if (oldCap > 0) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return oldTab;
+            }
+            newCap = oldCap << 1;
+        }
+        else
+            newCap = threshold;    // 还没有分配时 threshold 保存的是初始容量
+        float ft = (float)newCap * loadFactor;
+        threshold = (newCap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                (int)ft : Integer.MAX_VALUE);
+        HashMap.Node<K,V>[] newTab = (HashMap.Node<K,V>[])new HashMap.Node[newCap];
+        int[] newStamps = new int[newCap];
+        table = newTab;
+        stamps = newStamps;
+        generation = 1;
+        clearsSinceWipe = 0;
+        if (oldTab != null) {
+            for (int j = 0; j < oldCap; ++j) {
+                HashMap.Node<K,V> e;
+                if (oldStamps[j] != oldGen || (e = oldTab[j]) == null)
+                    continue;
+                HashMap.Node<K,V> loHead = null, loTail = null;
+                HashMap.Node<K,V> hiHead = null, hiTail = null;
+                HashMap.Node<K,V> next;
+                do {
+                    next = e.next;
+                    if ((e.hash & oldCap) == 0) {
+                        if (loTail == null)
+                            loHead = e;
+                        else
+                            loTail.next = e;
+                        loTail = e;
+                    }
+                    else {
+                        if (hiTail == null)
+                            hiHead = e;
+                        else
+                            hiTail.next = e;
+                        hiTail = e;
+                    }
+                } while ((e = next) != null);
+                if (loTail != null) {
+                    loTail.next = null;
+                    newTab[j] = loHead;
+                    newStamps[j] = 1;
+                }
+                if (hiTail != null) {
+                    hiTail.next = null;
+                    newTab[j + oldCap] = hiHead;
+                    newStamps[j + oldCap] = 1;
+                }
+            }
+        }
+        return newTab;
+    }
+
+    public V remove(Object key) {
+        HashMap.Node<K,V> e;
+        return (e = removeNode(HashMap.hash(key), key, null, false)) == null ?
+                null : e.value;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return removeNode(HashMap.hash(key), key, value, true) != null;
+    }
+
+    final HashMap.Node<K,V> removeNode(int hash, Object key, Object value,
+                                       boolean matchValue) {
+        HashMap.Node<K,V>[] tab; HashMap.Node<K,V> p; int n, index;
+        if ((tab = table) != null && (n = tab.length) > 0 &&
+                (p = binAt(tab, index = (n - 1) & hash)) != null) {
+            HashMap.Node<K,V> node = null, e; K k; V v;
+            if (p.hash == hash &&
+                    ((k = p.key) == key || (key != null && key.equals(k))))
+                node = p;
+            else if ((e = p.next) != null) {
+                do {
+                    if (e.hash == hash &&
+                            ((k = e.key) == key ||
+                                    (key != null && key.equals(k)))) {
+                        node = e;
+                        break;
+                    }
+                    p = e;
+                } while ((e = e.next) != null);
+            }
+            if (node != null && (!matchValue || (v = node.value) == value ||
+                    (value != null && value.equals(v)))) {
+                if (node == p)
+                    tab[index] = node.next;
+                else
+                    p.next = node.next;
+                ++modCount;
+                --size;
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 删除全部映射条目。通常只把代数加一，均摊 O(1)；
+     * 每调用 wipeInterval 次才真正清空一次 table，释放过期的键和值。
+     */
+    public void clear() {
+        modCount++;
+        size = 0;
+        if (table == null)
+            return;
+        if (++clearsSinceWipe >= wipeInterval)
+            wipe();
+        else
+            ++generation;
+    }
+
+    /**
+     * 真正地清空 table 和 stamps，代数重新从1开始。
+     */
+    final void wipe() {
+        Arrays.fill(table, null);
+        Arrays.fill(stamps, 0);
+        generation = 1;
+        clearsSinceWipe = 0;
+    }
+
+    public boolean containsValue(Object value) {
+        HashMap.Node<K,V>[] tab; V v;
+        if ((tab = table) != null && size > 0) {
+            for (int i = 0; i < tab.length; ++i) {
+                for (HashMap.Node<K,V> e = binAt(tab, i); e != null; e = e.next) {
+                    if ((v = e.value) == value ||
+                            (value != null && value.equals(v)))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        HashMap.Node<K,V>[] tab;
+        if (action == null)
+            throw new NullPointerException();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            for (int i = 0; i < tab.length; ++i) {
+                for (HashMap.Node<K,V> e = binAt(tab, i); e != null; e = e.next)
+                    action.accept(e.key, e.value);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { ReusableHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            HashMap.Node<K,V> candidate = getNode(HashMap.hash(key), key);
+            return candidate != null && candidate.equals(e);
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                Object key = e.getKey();
+                Object value = e.getValue();
+                return removeNode(HashMap.hash(key), key, value, true) != null;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 跳过过期桶的迭代器。
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        HashMap.Node<K,V> next;        // next entry to return
+        HashMap.Node<K,V> current;     // current entry
+        int expectedModCount;          // for fast-fail
+        int index;                     // current slot
+
+        EntryIterator() {
+            expectedModCount = modCount;
+            HashMap.Node<K,V>[] t = table;
+            if (t != null && size > 0) { // advance to first entry
+                do {} while (index < t.length && (next = binAt(t, index++)) == null);
+            }
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        public final Map.Entry<K,V> next() {
+            HashMap.Node<K,V>[] t;
+            HashMap.Node<K,V> e = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (e == null)
+                throw new NoSuchElementException();
+            if ((next = (current = e).next) == null && (t = table) != null) {
+                do {} while (index < t.length && (next = binAt(t, index++)) == null);
+            }
+            return e;
+        }
+
+        public final void remove() {
+            HashMap.Node<K,V> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            removeNode(p.hash, p.key, null, false);
+            expectedModCount = modCount;
+        }
+    }
+}
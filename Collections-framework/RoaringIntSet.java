@@ -0,0 +1,1116 @@
+package map;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * 压缩位图（Roaring bitmap）实现的 int 集合，适合保存大量稠密的整数 ID。
+ *
+ * 用 HashMap<Integer,...> 或 HashSet<Integer> 保存 ID 时，每个 ID 需要一个 Node 和一个 Integer 对象，
+ * 加上 table 槽位，大约 50 字节。此类把 32 位的整数按高 16 位分成若干块（chunk），
+ * 每块用一个容器（container）保存低 16 位，容器有三种：
+ *   1. ArrayContainer：有序的 char[]，每个元素 2 字节，用于不超过 4096 个元素的稀疏块；
+ *   2. BitmapContainer：固定的 1024 个 long（8KB），每个元素 1 位，用于稠密的块；
+ *   3. RunContainer：若干个 [start, start + length] 区间，每个区间 4 字节，用于由连续区间组成的块。
+ * 稠密的 ID 区间用 RunContainer 保存时，65536 个 ID 只需要 4 个字节。
+ *
+ * 集合运算 and/or/andNot 按块对齐之后逐个容器进行：两个位图之间是逐字（64 位）的位运算，
+ * 数组与位图之间是逐个元素测试位，两个数组之间是有序归并，两个区间容器之间是区间的交、并、差，
+ * 所以运算代价与容器的压缩大小成正比，而不是与元素数量成正比。
+ *
+ * 容器类型的切换：
+ *   ArrayContainer 超过 4096 个元素时转换为 BitmapContainer；
+ *   BitmapContainer 删除到 2048 个元素时转换回 ArrayContainer（留出余量，避免在边界上反复转换）；
+ *   RunContainer 的区间过多、不再比另外两种更小时转换为更小的一种；
+ *   涉及 RunContainer 的集合运算结果，以及调用 {@link #runOptimize()} 之后，容器会被转换为三者中最小的一种。
+ *
+ * 整数按无符号 32 位比较，所以迭代顺序是 0, 1, ..., Integer.MAX_VALUE, Integer.MIN_VALUE, ..., -1。
+ * forEachInt 和 intIterator() 不装箱。请注意，此实现不同步。迭代器是快速失败的。
+ *
+ * @see HashMap
+ * @see OpenHashSet
+ */
+public class RoaringIntSet extends AbstractSet<Integer>
+        implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = -2390712640185276443L;
+
+    /**
+     * ArrayContainer 的最大元素数量，超过后转换为 BitmapContainer。
+     * 此时两者的大小相同：4096 * 2 字节 = 1024 * 8 字节。
+     */
+    static final int ARRAY_MAX_SIZE = 4096;
+
+    /**
+     * BitmapContainer 删除到这个数量时转换回 ArrayContainer
+     */
+    static final int BITMAP_MIN_SIZE = ARRAY_MAX_SIZE / 2;
+
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    /**
+     * 各个容器对应的高 16 位，升序排列
+     */
+    char[] keys;
+
+    /**
+     * 与 keys 平行的容器，不会为空
+     */
+    Container[] containers;
+
+    /**
+     * 容器的数量
+     */
+    int count;
+
+    transient int modCount;
+
+    /**
+     * 构造一个空的 RoaringIntSet 实例
+     */
+    public RoaringIntSet() {
+        keys = new char[4];
+        containers = new Container[4];
+    }
+
+    /**
+     * 返回包含给定元素的 RoaringIntSet 实例
+     */
+    public static RoaringIntSet of(int... values) {
+        RoaringIntSet s = new RoaringIntSet();
+        for (int v : values)
+            s.add(v);
+        return s;
+    }
+
+    /**
+     * 返回包含 [start, end) 区间内所有整数的 RoaringIntSet 实例，按无符号整数解释，end 最大为 2^32
+     */
+    public static RoaringIntSet range(long start, long end) {
+        RoaringIntSet s = new RoaringIntSet();
+        s.addRange(start, end);
+        return s;
+    }
+
+    /* ---------------- Containers -------------- */
+
+    /**
+     * 保存一个块中的低 16 位。修改操作返回修改后的容器，它可能是一个不同类型的新容器。
+     */
+    abstract static class Container implements Cloneable, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        abstract int cardinality();
+
+        abstract boolean contains(int low);
+
+        abstract Container add(int low);
+
+        abstract Container remove(int low);
+
+        /**
+         * 连续区间的数量
+         */
+        abstract int numberOfRuns();
+
+        /**
+         * 对每个元素执行 action.accept(high | low)
+         */
+        abstract void forEach(int high, IntConsumer action);
+
+        /**
+         * 返回从第一个不小于 from 的元素开始的迭代器
+         */
+        abstract LowIterator lowIterator(int from);
+
+        /**
+         * 把所有元素的位设置到 words 中
+         */
+        abstract void orInto(long[] words);
+
+        abstract Container copy();
+
+        /**
+         * 估算的堆内存占用（字节），不计对象头
+         */
+        abstract int sizeInBytes();
+
+        /**
+         * 转换为三种容器中最小的一种
+         */
+        final Container optimize() {
+            int card = cardinality();
+            int runBytes = 4 * numberOfRuns();
+            int otherBytes = (card <= ARRAY_MAX_SIZE) ? 2 * card : 8 * BITMAP_WORDS;
+            if (runBytes < otherBytes)
+                return (this instanceof RunContainer) ? this : toRunContainer();
+            if (card <= ARRAY_MAX_SIZE)
+                return (this instanceof ArrayContainer) ? this : toArrayContainer();
+            return (this instanceof BitmapContainer) ? this : toBitmapContainer();
+        }
+
+        ArrayContainer toArrayContainer() {
+            ArrayContainer c = new ArrayContainer(cardinality());
+            forEach(0, v -> c.content[c.card++] = (char)v);
+            return c;
+        }
+
+        BitmapContainer toBitmapContainer() {
+            BitmapContainer c = new BitmapContainer();
+            orInto(c.words);
+            c.card = cardinality();
+            return c;
+        }
+
+        RunContainer toRunContainer() {
+            RunContainer c = new RunContainer(numberOfRuns());
+            forEach(0, v -> c.append(v, v));
+            return c;
+        }
+    }
+
+    /**
+     * 容器内部的迭代器，返回低 16 位
+     */
+    interface LowIterator {
+        boolean hasNext();
+        int next();
+    }
+
+    static final class ArrayContainer extends Container {
+        private static final long serialVersionUID = 1L;
+
+        char[] content;
+        int card;
+
+        ArrayContainer(int capacity) {
+            content = new char[Math.max(capacity, 4)];
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        boolean contains(int low) {
+            return Arrays.binarySearch(content, 0, card, (char)low) >= 0;
+        }
+
+        Container add(int low) {
+            int i = Arrays.binarySearch(content, 0, card, (char)low);
+            if (i >= 0)
+                return this;
+            if (card >= ARRAY_MAX_SIZE)
+                return toBitmapContainer().add(low);
+            i = -i - 1;
+            if (card == content.length)
+                content = Arrays.copyOf(content, Math.min(ARRAY_MAX_SIZE, card + (card >> 1) + 1));
+            System.arraycopy(content, i, content, i + 1, card - i);
+            content[i] = (char)low;
+            ++card;
+            return this;
+        }
+
+        Container remove(int low) {
+            int i = Arrays.binarySearch(content, 0, card, (char)low);
+            if (i >= 0) {
+                System.arraycopy(content, i + 1, content, i, card - i - 1);
+                --card;
+            }
+            return this;
+        }
+
+        int numberOfRuns() {
+            int runs = (card > 0) ? 1 : 0;
+            for (int i = 1; i < card; ++i) {
+                if (content[i] != content[i - 1] + 1)
+                    ++runs;
+            }
+            return runs;
+        }
+
+        void forEach(int high, IntConsumer action) {
+            char[] c = content;
+            for (int i = 0, n = card; i < n; ++i)
+                action.accept(high | c[i]);
+        }
+
+        LowIterator lowIterator(int from) {
+            int start = Arrays.binarySearch(content, 0, card, (char)from);
+            return new LowIterator() {
+                int i = (start >= 0) ? start : -start - 1;
+                public boolean hasNext() { return i < card; }
+                public int next()        { return content[i++]; }
+            };
+        }
+
+        void orInto(long[] words) {
+            for (int i = 0; i < card; ++i) {
+                int v = content[i];
+                words[v >>> 6] |= 1L << v;
+            }
+        }
+
+        ArrayContainer toArrayContainer() {
+            return this;
+        }
+
+        Container copy() {
+            ArrayContainer c = new ArrayContainer(card);
+            System.arraycopy(content, 0, c.content, 0, card);
+            c.card = card;
+            return c;
+        }
+
+        int sizeInBytes() {
+            return 2 * content.length;
+        }
+    }
+
+    static final class BitmapContainer extends Container {
+        private static final long serialVersionUID = 1L;
+
+        final long[] words = new long[BITMAP_WORDS];
+        int card;
+
+        int cardinality() {
+            return card;
+        }
+
+        boolean contains(int low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        Container add(int low) {
+            long w = words[low >>> 6], bit = 1L << low;
+            if ((w & bit) == 0) {
+                words[low >>> 6] = w | bit;
+                ++card;
+            }
+            return this;
+        }
+
+        Container remove(int low) {
+            long w = words[low >>> 6], bit = 1L << low;
+            if ((w & bit) != 0) {
+                words[low >>> 6] = w & ~bit;
+                if (--card <= BITMAP_MIN_SIZE)
+                    return toArrayContainer();
+            }
+            return this;
+        }
+
+        int numberOfRuns() {
+            // 每个区间的起点是一个 1，并且它的前一位是 0
+            int runs = 0;
+            long prev = 0L;
+            for (long w : words) {
+                runs += Long.bitCount(w & ~((w << 1) | (prev >>> 63)));
+                prev = w;
+            }
+            return runs;
+        }
+
+        void forEach(int high, IntConsumer action) {
+            long[] ws = words;
+            for (int i = 0; i < ws.length; ++i) {
+                long w = ws[i];
+                while (w != 0) {
+                    action.accept(high | (i << 6) | Long.numberOfTrailingZeros(w));
+                    w &= w - 1;
+                }
+            }
+        }
+
+        LowIterator lowIterator(int from) {
+            return new LowIterator() {
+                int i = from >>> 6;
+                long w = words[i] & (-1L << from);
+                { if (w == 0) advance(); }
+                private void advance() {
+                    while (w == 0 && ++i < BITMAP_WORDS)
+                        w = words[i];
+                }
+                public boolean hasNext() { return i < BITMAP_WORDS; }
+                public int next() {
+                    int v = (i << 6) | Long.numberOfTrailingZeros(w);
+                    w &= w - 1;
+                    advance();
+                    return v;
+                }
+            };
+        }
+
+        void orInto(long[] ws) {
+            for (int i = 0; i < BITMAP_WORDS; ++i)
+                ws[i] |= words[i];
+        }
+
+        BitmapContainer toBitmapContainer() {
+            return this;
+        }
+
+        Container copy() {
+            BitmapContainer c = new BitmapContainer();
+            System.arraycopy(words, 0, c.words, 0, BITMAP_WORDS);
+            c.card = card;
+            return c;
+        }
+
+        int sizeInBytes() {
+            return 8 * BITMAP_WORDS;
+        }
+    }
+
+    /**
+     * 区间容器，runs[2i] 是第 i 个区间的起点，runs[2i + 1] 是它的长度减 1，区间升序排列并且互不相邻。
+     */
+    static final class RunContainer extends Container {
+        private static final long serialVersionUID = 1L;
+
+        char[] runs;
+        int nruns;
+        int card;
+
+        RunContainer(int capacity) {
+            runs = new char[2 * Math.max(capacity, 1)];
+        }
+
+        int start(int i) { return runs[2 * i]; }
+        int end(int i)   { return runs[2 * i] + runs[2 * i + 1]; }
+
+        private void set(int i, int start, int end) {
+            runs[2 * i] = (char)start;
+            runs[2 * i + 1] = (char)(end - start);
+        }
+
+        /**
+         * 在末尾追加区间 [start, end]，start 不能小于最后一个区间的起点；与最后一个区间重叠或相邻时合并
+         */
+        void append(int start, int end) {
+            if (nruns > 0) {
+                int lastEnd = end(nruns - 1);
+                if (start <= lastEnd + 1) {
+                    if (end > lastEnd) {
+                        set(nruns - 1, start(nruns - 1), end);
+                        card += end - lastEnd;
+                    }
+                    return;
+                }
+            }
+            if (2 * nruns == runs.length)
+                runs = Arrays.copyOf(runs, 2 * (nruns + (nruns >> 1) + 1));
+            set(nruns++, start, end);
+            card += end - start + 1;
+        }
+
+        // 返回起点不大于 low 的最后一个区间，没有时返回 -1
+        int floorRun(int low) {
+            int lo = 0, hi = nruns - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (start(mid) <= low)
+                    lo = mid + 1;
+                else
+                    hi = mid - 1;
+            }
+            return hi;
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        boolean contains(int low) {
+            int i = floorRun(low);
+            return i >= 0 && low <= end(i);
+        }
+
+        Container add(int low) {
+            int i = floorRun(low);
+            if (i >= 0 && low <= end(i))
+                return this;
+            boolean mergePrev = i >= 0 && end(i) + 1 == low;
+            boolean mergeNext = i + 1 < nruns && start(i + 1) == low + 1;
+            if (mergePrev && mergeNext) {
+                set(i, start(i), end(i + 1));
+                deleteRun(i + 1);
+            } else if (mergePrev) {
+                set(i, start(i), low);
+            } else if (mergeNext) {
+                set(i + 1, low, end(i + 1));
+            } else {
+                insertRun(i + 1, low, low);
+            }
+            ++card;
+            return shrinkIfLarge();
+        }
+
+        Container remove(int low) {
+            int i = floorRun(low);
+            if (i < 0 || low > end(i))
+                return this;
+            int s = start(i), e = end(i);
+            if (s == e)
+                deleteRun(i);
+            else if (low == s)
+                set(i, s + 1, e);
+            else if (low == e)
+                set(i, s, e - 1);
+            else {
+                set(i, s, low - 1);
+                insertRun(i + 1, low + 1, e);
+            }
+            --card;
+            return shrinkIfLarge();
+        }
+
+        private void insertRun(int i, int start, int end) {
+            if (2 * nruns == runs.length)
+                runs = Arrays.copyOf(runs, 2 * (nruns + (nruns >> 1) + 1));
+            System.arraycopy(runs, 2 * i, runs, 2 * i + 2, 2 * (nruns - i));
+            ++nruns;
+            set(i, start, end);
+        }
+
+        private void deleteRun(int i) {
+            System.arraycopy(runs, 2 * i + 2, runs, 2 * i, 2 * (nruns - i - 1));
+            --nruns;
+        }
+
+        // 区间过多，已经不比数组或位图小时转换
+        private Container shrinkIfLarge() {
+            int otherBytes = (card <= ARRAY_MAX_SIZE) ? 2 * card : 8 * BITMAP_WORDS;
+            return (4 * nruns > otherBytes + 64) ? optimize() : this;
+        }
+
+        int numberOfRuns() {
+            return nruns;
+        }
+
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < nruns; ++i) {
+                for (int v = start(i), e = end(i); v <= e; ++v)
+                    action.accept(high | v);
+            }
+        }
+
+        LowIterator lowIterator(int from) {
+            int f = floorRun(from);
+            int first = (f >= 0 && from <= end(f)) ? f : f + 1;
+            return new LowIterator() {
+                int i = first;
+                int v = (first < nruns) ? Math.max(from, start(first)) : 0;
+                public boolean hasNext() { return i < nruns; }
+                public int next() {
+                    int r = v;
+                    if (v++ == end(i) && ++i < nruns)
+                        v = start(i);
+                    return r;
+                }
+            };
+        }
+
+        void orInto(long[] words) {
+            for (int i = 0; i < nruns; ++i)
+                setRange(words, start(i), end(i) + 1);
+        }
+
+        RunContainer toRunContainer() {
+            return this;
+        }
+
+        Container copy() {
+            RunContainer c = new RunContainer(nruns);
+            System.arraycopy(runs, 0, c.runs, 0, 2 * nruns);
+            c.nruns = nruns;
+            c.card = card;
+            return c;
+        }
+
+        int sizeInBytes() {
+            return 2 * runs.length;
+        }
+    }
+
+    // 把 words 中 [start, end) 的位置为 1
+    static void setRange(long[] words, int start, int end) {
+        if (start >= end)
+            return;
+        int first = start >>> 6, last = (end - 1) >>> 6;
+        long firstMask = -1L << start, lastMask = -1L >>> -end;
+        if (first == last) {
+            words[first] |= firstMask & lastMask;
+            return;
+        }
+        words[first] |= firstMask;
+        for (int i = first + 1; i < last; ++i)
+            words[i] = -1L;
+        words[last] |= lastMask;
+    }
+
+    // 根据位图的内容返回 ArrayContainer 或 BitmapContainer，为空时返回 null
+    static Container fromWords(long[] words) {
+        int card = 0;
+        for (long w : words)
+            card += Long.bitCount(w);
+        if (card == 0)
+            return null;
+        BitmapContainer b = new BitmapContainer();
+        System.arraycopy(words, 0, b.words, 0, BITMAP_WORDS);
+        b.card = card;
+        return (card <= ARRAY_MAX_SIZE) ? b.toArrayContainer() : b;
+    }
+
+    static long[] toWords(Container c) {
+        if (c instanceof BitmapContainer)
+            return ((BitmapContainer) c).words.clone();
+        long[] words = new long[BITMAP_WORDS];
+        c.orInto(words);
+        return words;
+    }
+
+    /* ---------------- Container algebra -------------- */
+
+    static Container and(Container a, Container b) {
+        if (b instanceof ArrayContainer && !(a instanceof ArrayContainer)) {
+            Container t = a; a = b; b = t;
+        }
+        if (a instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a;
+            ArrayContainer r = new ArrayContainer(x.card);
+            if (b instanceof ArrayContainer) {
+                ArrayContainer y = (ArrayContainer) b;
+                int i = 0, j = 0;
+                while (i < x.card && j < y.card) {
+                    char u = x.content[i], v = y.content[j];
+                    if (u < v) ++i;
+                    else if (u > v) ++j;
+                    else { r.content[r.card++] = u; ++i; ++j; }
+                }
+            } else {
+                for (int i = 0; i < x.card; ++i) {
+                    if (b.contains(x.content[i]))
+                        r.content[r.card++] = x.content[i];
+                }
+            }
+            return (r.card == 0) ? null : r;
+        }
+        if (a instanceof RunContainer && b instanceof RunContainer) {
+            RunContainer x = (RunContainer) a, y = (RunContainer) b;
+            RunContainer r = new RunContainer(x.nruns + y.nruns);
+            int i = 0, j = 0;
+            while (i < x.nruns && j < y.nruns) {
+                int lo = Math.max(x.start(i), y.start(j));
+                int hi = Math.min(x.end(i), y.end(j));
+                if (lo <= hi)
+                    r.append(lo, hi);
+                if (x.end(i) < y.end(j)) ++i;
+                else ++j;
+            }
+            return (r.card == 0) ? null : r.optimize();
+        }
+        long[] w = toWords(a), v = toWords(b);
+        for (int i = 0; i < BITMAP_WORDS; ++i)
+            w[i] &= v[i];
+        Container r = fromWords(w);
+        return (r != null && (a instanceof RunContainer || b instanceof RunContainer)) ?
+                r.optimize() : r;
+    }
+
+    static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+            if (x.card + y.card <= ARRAY_MAX_SIZE) {
+                ArrayContainer r = new ArrayContainer(x.card + y.card);
+                int i = 0, j = 0;
+                while (i < x.card && j < y.card) {
+                    char u = x.content[i], v = y.content[j];
+                    if (u < v) { r.content[r.card++] = u; ++i; }
+                    else if (u > v) { r.content[r.card++] = v; ++j; }
+                    else { r.content[r.card++] = u; ++i; ++j; }
+                }
+                while (i < x.card) r.content[r.card++] = x.content[i++];
+                while (j < y.card) r.content[r.card++] = y.content[j++];
+                return r;
+            }
+        }
+        if (a instanceof RunContainer && b instanceof RunContainer) {
+            RunContainer x = (RunContainer) a, y = (RunContainer) b;
+            RunContainer r = new RunContainer(x.nruns + y.nruns);
+            int i = 0, j = 0;
+            while (i < x.nruns || j < y.nruns) {
+                if (j >= y.nruns || (i < x.nruns && x.start(i) <= y.start(j))) {
+                    r.append(x.start(i), x.end(i));
+                    ++i;
+                } else {
+                    r.append(y.start(j), y.end(j));
+                    ++j;
+                }
+            }
+            return r.optimize();
+        }
+        long[] w = toWords(a);
+        b.orInto(w);
+        Container r = fromWords(w);
+        return (a instanceof RunContainer || b instanceof RunContainer) ? r.optimize() : r;
+    }
+
+    static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a;
+            ArrayContainer r = new ArrayContainer(x.card);
+            for (int i = 0; i < x.card; ++i) {
+                if (!b.contains(x.content[i]))
+                    r.content[r.card++] = x.content[i];
+            }
+            return (r.card == 0) ? null : r;
+        }
+        if (a instanceof RunContainer && b instanceof RunContainer) {
+            RunContainer x = (RunContainer) a, y = (RunContainer) b;
+            RunContainer r = new RunContainer(x.nruns + y.nruns);
+            int j = 0;
+            for (int i = 0; i < x.nruns; ++i) {
+                int s = x.start(i), e = x.end(i);
+                while (j < y.nruns && y.end(j) < s)
+                    ++j;
+                int k = j;
+                while (s <= e && k < y.nruns && y.start(k) <= e) {
+                    if (y.start(k) > s)
+                        r.append(s, y.start(k) - 1);
+                    s = Math.max(s, y.end(k) + 1);
+                    ++k;
+                }
+                if (s <= e)
+                    r.append(s, e);
+            }
+            return (r.card == 0) ? null : r.optimize();
+        }
+        long[] w = toWords(a);
+        if (b instanceof ArrayContainer) {
+            ArrayContainer y = (ArrayContainer) b;
+            for (int i = 0; i < y.card; ++i) {
+                int v = y.content[i];
+                w[v >>> 6] &= ~(1L << v);
+            }
+        } else {
+            long[] v = toWords(b);
+            for (int i = 0; i < BITMAP_WORDS; ++i)
+                w[i] &= ~v[i];
+        }
+        Container r = fromWords(w);
+        return (r != null && (a instanceof RunContainer || b instanceof RunContainer)) ?
+                r.optimize() : r;
+    }
+
+    /* ---------------- Top level -------------- */
+
+    // 返回高 16 位对应的容器下标，不存在时返回 -(插入点) - 1
+    final int indexOf(int high) {
+        return Arrays.binarySearch(keys, 0, count, (char)high);
+    }
+
+    // 在下标 i 处插入一个容器
+    final void insertContainer(int i, int high, Container c) {
+        if (count == keys.length) {
+            int newCap = count + (count >> 1) + 1;
+            keys = Arrays.copyOf(keys, newCap);
+            containers = Arrays.copyOf(containers, newCap);
+        }
+        System.arraycopy(keys, i, keys, i + 1, count - i);
+        System.arraycopy(containers, i, containers, i + 1, count - i);
+        keys[i] = (char)high;
+        containers[i] = c;
+        ++count;
+    }
+
+    final void removeContainer(int i) {
+        System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, count - i - 1);
+        containers[--count] = null;
+    }
+
+    // 在末尾追加一个容器，高 16 位必须大于已有的所有容器
+    final void appendContainer(int high, Container c) {
+        insertContainer(count, high, c);
+    }
+
+    /**
+     * 判断是否包含给定的整数
+     */
+    public boolean contains(int x) {
+        int i = indexOf(x >>> 16);
+        return i >= 0 && containers[i].contains(x & 0xFFFF);
+    }
+
+    public boolean contains(Object o) {
+        return (o instanceof Integer) && contains(((Integer) o).intValue());
+    }
+
+    /**
+     * 添加给定的整数
+     *
+     * @return 如果集合因此发生了变化，返回 true
+     */
+    public boolean add(int x) {
+        int high = x >>> 16;
+        int i = indexOf(high);
+        if (i < 0) {
+            ArrayContainer c = new ArrayContainer(4);
+            c.add(x & 0xFFFF);
+            insertContainer(-i - 1, high, c);
+            ++modCount;
+            return true;
+        }
+        Container c = containers[i];
+        int before = c.cardinality();
+        containers[i] = c = c.add(x & 0xFFFF);
+        if (c.cardinality() == before)
+            return false;
+        ++modCount;
+        return true;
+    }
+
+    public boolean add(Integer x) {
+        return add(x.intValue());
+    }
+
+    /**
+     * 删除给定的整数
+     *
+     * @return 如果集合因此发生了变化，返回 true
+     */
+    public boolean remove(int x) {
+        int i = indexOf(x >>> 16);
+        if (i < 0)
+            return false;
+        Container c = containers[i];
+        int before = c.cardinality();
+        containers[i] = c = c.remove(x & 0xFFFF);
+        if (c.cardinality() == before)
+            return false;
+        if (c.cardinality() == 0)
+            removeContainer(i);
+        ++modCount;
+        return true;
+    }
+
+    public boolean remove(Object o) {
+        return (o instanceof Integer) && remove(((Integer) o).intValue());
+    }
+
+    /**
+     * 添加 [start, end) 区间内的所有整数，按无符号整数解释，end 最大为 2^32。
+     * 完整覆盖的块直接用只有一个区间的 RunContainer 表示。
+     *
+     * @throws IllegalArgumentException 如果区间不合法
+     */
+    public void addRange(long start, long end) {
+        if (start < 0 || end > (1L << 32) || start > end)
+            throw new IllegalArgumentException("Illegal range: [" + start + ", " + end + ")");
+        if (start == end)
+            return;
+        int firstHigh = (int)(start >>> 16), lastHigh = (int)((end - 1) >>> 16);
+        for (int high = firstHigh; high <= lastHigh; ++high) {
+            int lo = (high == firstHigh) ? (int)(start & 0xFFFF) : 0;
+            int hi = (high == lastHigh) ? (int)((end - 1) & 0xFFFF) : 0xFFFF;
+            RunContainer r = new RunContainer(1);
+            r.append(lo, hi);
+            int i = indexOf(high);
+            if (i < 0)
+                insertContainer(-i - 1, high, r);
+            else
+                containers[i] = or(containers[i], r);
+        }
+        ++modCount;
+    }
+
+    /**
+     * 返回元素的数量，可能超过 Integer.MAX_VALUE
+     */
+    public long cardinality() {
+        long card = 0L;
+        for (int i = 0; i < count; ++i)
+            card += containers[i].cardinality();
+        return card;
+    }
+
+    /**
+     * 返回元素的数量，超过 Integer.MAX_VALUE 时返回 Integer.MAX_VALUE
+     */
+    public int size() {
+        return (int)Math.min(cardinality(), Integer.MAX_VALUE);
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(containers, 0, count, null);
+        count = 0;
+        ++modCount;
+    }
+
+    /**
+     * 把每个容器转换为三种容器中最小的一种，适合在批量构建完成之后调用
+     */
+    public void runOptimize() {
+        for (int i = 0; i < count; ++i)
+            containers[i] = containers[i].optimize();
+    }
+
+    /**
+     * 估算的堆内存占用（字节），包括各个容器的数组，不计对象头
+     */
+    public long estimateSizeInBytes() {
+        long bytes = 2L * keys.length + 4L * containers.length;
+        for (int i = 0; i < count; ++i)
+            bytes += containers[i].sizeInBytes() + 16;
+        return bytes;
+    }
+
+    /* ---------------- Set algebra -------------- */
+
+    /**
+     * 返回两个集合的交集，不修改参数
+     */
+    public static RoaringIntSet and(RoaringIntSet a, RoaringIntSet b) {
+        RoaringIntSet r = new RoaringIntSet();
+        int i = 0, j = 0;
+        while (i < a.count && j < b.count) {
+            char ka = a.keys[i], kb = b.keys[j];
+            if (ka < kb) ++i;
+            else if (ka > kb) ++j;
+            else {
+                Container c = and(a.containers[i], b.containers[j]);
+                if (c != null)
+                    r.appendContainer(ka, c);
+                ++i; ++j;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * 返回两个集合的并集，不修改参数
+     */
+    public static RoaringIntSet or(RoaringIntSet a, RoaringIntSet b) {
+        RoaringIntSet r = new RoaringIntSet();
+        int i = 0, j = 0;
+        while (i < a.count || j < b.count) {
+            if (j >= b.count || (i < a.count && a.keys[i] < b.keys[j])) {
+                r.appendContainer(a.keys[i], a.containers[i].copy());
+                ++i;
+            } else if (i >= a.count || b.keys[j] < a.keys[i]) {
+                r.appendContainer(b.keys[j], b.containers[j].copy());
+                ++j;
+            } else {
+                r.appendContainer(a.keys[i], or(a.containers[i], b.containers[j]));
+                ++i; ++j;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * 返回 a 中不属于 b 的元素组成的集合，不修改参数
+     */
+    public static RoaringIntSet andNot(RoaringIntSet a, RoaringIntSet b) {
+        RoaringIntSet r = new RoaringIntSet();
+        int j = 0;
+        for (int i = 0; i < a.count; ++i) {
+            char ka = a.keys[i];
+            while (j < b.count && b.keys[j] < ka)
+                ++j;
+            Container c = (j < b.count && b.keys[j] == ka) ?
+                    andNot(a.containers[i], b.containers[j]) : a.containers[i].copy();
+            if (c != null)
+                r.appendContainer(ka, c);
+        }
+        return r;
+    }
+
+    /**
+     * 返回两个集合的交集的元素数量，不构造结果集合中的位图以外的对象
+     */
+    public static long andCardinality(RoaringIntSet a, RoaringIntSet b) {
+        long card = 0L;
+        int i = 0, j = 0;
+        while (i < a.count && j < b.count) {
+            char ka = a.keys[i], kb = b.keys[j];
+            if (ka < kb) ++i;
+            else if (ka > kb) ++j;
+            else {
+                Container c = and(a.containers[i], b.containers[j]);
+                if (c != null)
+                    card += c.cardinality();
+                ++i; ++j;
+            }
+        }
+        return card;
+    }
+
+    // 用另一个集合的内容替换当前内容
+    private boolean replaceWith(RoaringIntSet r) {
+        boolean modified = !equals(r);
+        keys = r.keys;
+        containers = r.containers;
+        count = r.count;
+        if (modified)
+            ++modCount;
+        return modified;
+    }
+
+    public boolean addAll(Collection<? extends Integer> c) {
+        if (c instanceof RoaringIntSet)
+            return replaceWith(or(this, (RoaringIntSet) c));
+        return super.addAll(c);
+    }
+
+    public boolean retainAll(Collection<?> c) {
+        if (c instanceof RoaringIntSet)
+            return replaceWith(and(this, (RoaringIntSet) c));
+        return super.retainAll(c);
+    }
+
+    public boolean removeAll(Collection<?> c) {
+        if (c instanceof RoaringIntSet)
+            return replaceWith(andNot(this, (RoaringIntSet) c));
+        return super.removeAll(c);
+    }
+
+    /* ---------------- Iteration -------------- */
+
+    /**
+     * 按无符号升序对每个元素执行给定的操作，不装箱
+     */
+    public void forEachInt(IntConsumer action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        for (int i = 0; i < count && modCount == mc; ++i)
+            containers[i].forEach(keys[i] << 16, action);
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Integer> action) {
+        if (action == null)
+            throw new NullPointerException();
+        forEachInt(action::accept);
+    }
+
+    /**
+     * 返回按无符号升序迭代的、不装箱的迭代器
+     */
+    public PrimitiveIterator.OfInt intIterator() {
+        return new IntIterator();
+    }
+
+    public Iterator<Integer> iterator() {
+        return new IntIterator();
+    }
+
+    final class IntIterator implements PrimitiveIterator.OfInt {
+        int index;                // 当前容器的下标
+        LowIterator it;           // 当前容器的迭代器
+        int last;
+        boolean hasLast;
+        int expectedModCount = modCount;
+
+        IntIterator() {
+            if (count > 0)
+                it = containers[0].lowIterator(0);
+        }
+
+        public boolean hasNext() {
+            return it != null && it.hasNext();
+        }
+
+        public int nextInt() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (it == null || !it.hasNext())
+                throw new NoSuchElementException();
+            last = (keys[index] << 16) | it.next();
+            hasLast = true;
+            if (!it.hasNext())
+                it = (++index < count) ? containers[index].lowIterator(0) : null;
+            return last;
+        }
+
+        /**
+         * 删除上一个返回的元素。删除之后当前容器可能被替换，所以重新定位到 last 之后的位置。
+         */
+        public void remove() {
+            if (!hasLast)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            hasLast = false;
+            RoaringIntSet.this.remove(last);
+            expectedModCount = modCount;
+            int high = last >>> 16, low = last & 0xFFFF;
+            index = indexOf(high);
+            if (index < 0) {
+                index = -index - 1;
+                it = (index < count) ? containers[index].lowIterator(0) : null;
+                return;
+            }
+            it = (low < 0xFFFF) ? containers[index].lowIterator(low + 1) : null;
+            if (it == null || !it.hasNext())
+                it = (++index < count) ? containers[index].lowIterator(0) : null;
+        }
+    }
+
+    /* ---------------- Object methods -------------- */
+
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof RoaringIntSet))
+            return super.equals(o);
+        RoaringIntSet s = (RoaringIntSet) o;
+        if (count != s.count)
+            return false;
+        for (int i = 0; i < count; ++i) {
+            if (keys[i] != s.keys[i] ||
+                    containers[i].cardinality() != s.containers[i].cardinality())
+                return false;
+        }
+        for (int i = 0; i < count; ++i) {
+            LowIterator x = containers[i].lowIterator(0), y = s.containers[i].lowIterator(0);
+            while (x.hasNext()) {
+                if (x.next() != y.next())
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int[] h = new int[1];
+        forEachInt(v -> h[0] += v);
+        return h[0];
+    }
+
+    @Override
+    public Object clone() {
+        RoaringIntSet result;
+        try {
+            result = (RoaringIntSet)super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        result.keys = keys.clone();
+        result.containers = new Container[containers.length];
+        for (int i = 0; i < count; ++i)
+            result.containers[i] = containers[i].copy();
+        result.modCount = 0;
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * 逐个元素处理的内核，没有 jdk.incubator.vector 时使用
+ *
+ * @see ArrayKernels
+ */
+final class ScalarArrayKernels extends ArrayKernels {
+
+    @Override
+    int indexOf(int[] a, int from, int to, int key) {
+        for (int i = from; i < to; i++)
+            if (a[i] == key)
+                return i;
+        return -1;
+    }
+
+    @Override
+    int lastIndexOf(int[] a, int from, int to, int key) {
+        for (int i = to - 1; i >= from; i--)
+            if (a[i] == key)
+                return i;
+        return -1;
+    }
+
+    @Override
+    long sum(int[] a, int from, int to) {
+        long s = 0;
+        for (int i = from; i < to; i++)
+            s += a[i];
+        return s;
+    }
+
+    @Override
+    int min(int[] a, int from, int to) {
+        int m = a[from];
+        for (int i = from + 1; i < to; i++)
+            m = Math.min(m, a[i]);
+        return m;
+    }
+
+    @Override
+    int max(int[] a, int from, int to) {
+        int m = a[from];
+        for (int i = from + 1; i < to; i++)
+            m = Math.max(m, a[i]);
+        return m;
+    }
+
+    @Override
+    int countInRange(int[] a, int from, int to, int lo, int hi) {
+        int n = 0;
+        for (int i = from; i < to; i++)
+            if (a[i] >= lo && a[i] <= hi)
+                n++;
+        return n;
+    }
+
+    @Override
+    int indexOf(double[] a, int from, int to, double key) {
+        for (int i = from; i < to; i++)
+            if (a[i] == key)
+                return i;
+        return -1;
+    }
+
+    @Override
+    int lastIndexOf(double[] a, int from, int to, double key) {
+        for (int i = to - 1; i >= from; i--)
+            if (a[i] == key)
+                return i;
+        return -1;
+    }
+
+    @Override
+    double sum(double[] a, int from, int to) {
+        double s = 0;
+        for (int i = from; i < to; i++)
+            s += a[i];
+        return s;
+    }
+
+    @Override
+    double min(double[] a, int from, int to) {
+        double m = a[from];
+        for (int i = from + 1; i < to; i++)
+            m = Math.min(m, a[i]);
+        return m;
+    }
+
+    @Override
+    double max(double[] a, int from, int to) {
+        double m = a[from];
+        for (int i = from + 1; i < to; i++)
+            m = Math.max(m, a[i]);
+        return m;
+    }
+
+    @Override
+    int countInRange(double[] a, int from, int to, double lo, double hi) {
+        int n = 0;
+        for (int i = from; i < to; i++)
+            if (a[i] >= lo && a[i] <= hi)
+                n++;
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,198 @@
+package map;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 按线程分片（sharded）的计数映射，适合大量线程频繁地对相同的键计数、偶尔才读取结果的场景。
+ *
+ * 多个线程对同一个 HashMap 调用 merge(k, 1, Long::sum) 时必须加锁，所有写操作都被串行化；
+ * 即使按键的散列值分段加锁（striped locking），热点键总是落在同一个段上，依然会互相竞争。
+ * 此类让每个线程拥有一个私有的分片（Shard），分片是一个 ObjectLongHashMap：
+ *   1. add/increment 只修改当前线程自己的分片，不同线程之间不共享任何可写的缓存行，
+ *      计数的吞吐量随线程数线性增长，热点键也不例外；
+ *   2. 分片内部仍然用分片自身作为锁，但只有读操作合并时才会有另一个线程来获取它，
+ *      所以写线程获取的几乎总是一个无竞争的锁，并且锁字和分片数据都在当前 CPU 核的缓存中；
+ *   3. get/forEach/snapshot 在读取时逐个锁住各个分片并把计数合并起来（merge-on-read）。
+ *
+ * 合并的结果不是一个原子的快照：合并过程中其他线程的计数可能只有一部分被计入。
+ * 对计数类的指标来说这通常是可以接受的，snapshotAndReset 保证每次计数恰好被计入一次快照。
+ *
+ * 线程结束后它的分片不会丢失：合并时发现分片的所有者线程已经结束，就把它的计数并入 retired 分片并移除它，
+ * 所以分片的数量不会随着线程的创建和结束而无限增长。
+ *
+ * 此类是线程安全的。与 ObjectLongHashMap 相同，允许 null 键。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @see ObjectLongHashMap
+ */
+public class ShardedCounterMap<K> {
+
+    /**
+     * 一个线程私有的分片，用自身作为锁
+     */
+    static final class Shard<K> {
+        final ObjectLongHashMap<K> counts;
+        final WeakReference<Thread> owner;
+
+        Shard(Thread owner, int expectedSize) {
+            this.counts = new ObjectLongHashMap<>(expectedSize);
+            this.owner = new WeakReference<>(owner);
+        }
+
+        boolean isRetired() {
+            Thread t = owner.get();
+            return t == null || !t.isAlive();
+        }
+    }
+
+    /**
+     * 所有的分片，由 shards 自身作为锁保护
+     */
+    private final ArrayList<Shard<K>> shards = new ArrayList<>();
+
+    /**
+     * 已经结束的线程的计数，由自身作为锁保护
+     */
+    private final ObjectLongHashMap<K> retired = new ObjectLongHashMap<>();
+
+    private final ThreadLocal<Shard<K>> local = ThreadLocal.withInitial(this::newShard);
+
+    /**
+     * 每个分片的初始容量
+     */
+    private final int expectedKeysPerShard;
+
+    /**
+     * 构造一个空的 ShardedCounterMap 实例
+     */
+    public ShardedCounterMap() {
+        this(16);
+    }
+
+    /**
+     * 构造一个空的 ShardedCounterMap 实例，每个分片预计保存 expectedKeysPerShard 个键
+     */
+    public ShardedCounterMap(int expectedKeysPerShard) {
+        if (expectedKeysPerShard < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    expectedKeysPerShard);
+        this.expectedKeysPerShard = expectedKeysPerShard;
+    }
+
+    private Shard<K> newShard() {
+        Shard<K> s = new Shard<>(Thread.currentThread(), expectedKeysPerShard);
+        synchronized (shards) {
+            shards.add(s);
+        }
+        return s;
+    }
+
+    /**
+     * 把键的计数加上 delta，只修改当前线程的分片
+     */
+    public void add(K key, long delta) {
+        Shard<K> s = local.get();
+        synchronized (s) {
+            s.counts.addTo(key, delta);
+        }
+    }
+
+    /**
+     * 把键的计数加 1
+     */
+    public void increment(K key) {
+        add(key, 1L);
+    }
+
+    /**
+     * 返回键在所有分片中的计数之和
+     */
+    public long get(Object key) {
+        long sum;
+        synchronized (retired) {
+            sum = retired.get(key);
+        }
+        for (Shard<K> s : shardsSnapshot()) {
+            synchronized (s) {
+                sum += s.counts.get(key);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 返回所有分片合并之后的计数
+     */
+    public ObjectLongHashMap<K> snapshot() {
+        return merge(false);
+    }
+
+    /**
+     * 返回所有分片合并之后的计数，并把各个分片清空。
+     * 每个分片在加锁期间被合并并清空，所以每次计数恰好被计入一次快照，适合按时间间隔上报指标。
+     */
+    public ObjectLongHashMap<K> snapshotAndReset() {
+        return merge(true);
+    }
+
+    /**
+     * 对合并之后的每个键和计数执行给定的操作
+     */
+    public void forEach(ObjLongConsumer<? super K> action) {
+        if (action == null)
+            throw new NullPointerException();
+        snapshot().forEach(action);
+    }
+
+    /**
+     * 清空所有分片
+     */
+    public void clear() {
+        merge(true);
+    }
+
+    private ArrayList<Shard<K>> shardsSnapshot() {
+        synchronized (shards) {
+            return new ArrayList<>(shards);
+        }
+    }
+
+    // 合并所有分片；reset 为 true 时同时清空。所有者线程已经结束的分片并入 retired 并被移除。
+    private ObjectLongHashMap<K> merge(boolean reset) {
+        ObjectLongHashMap<K> result = new ObjectLongHashMap<>();
+        ArrayList<Shard<K>> dead = null;
+        for (Shard<K> s : shardsSnapshot()) {
+            boolean isRetired = s.isRetired();
+            synchronized (s) {
+                if (isRetired) {
+                    synchronized (retired) {
+                        retired.addAll(s.counts);
+                    }
+                    s.counts.clear();   // 在移除之前不能被再次计入
+                } else {
+                    result.addAll(s.counts);
+                    if (reset)
+                        s.counts.clear();
+                }
+            }
+            if (isRetired) {
+                if (dead == null)
+                    dead = new ArrayList<>();
+                dead.add(s);
+            }
+        }
+        if (dead != null) {
+            synchronized (shards) {
+                shards.removeAll(dead);
+            }
+        }
+        synchronized (retired) {
+            result.addAll(retired);
+            if (reset)
+                retired.clear();
+        }
+        return result;
+    }
+}
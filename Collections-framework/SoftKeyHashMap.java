@@ -0,0 +1,93 @@
+package map;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 键（key）为软引用的散列表。只被这个映射软引用着的键只有在内存紧张时才会被 GC 回收，
+ * 对应的映射条目随后在写操作中被分批清理掉。
+ *
+ * 适合用来做“内存够用就一直留着，内存不够再丢掉”的缓存，失效节点的清理方式详见 ReferenceKeyHashMap。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see WeakKeyHashMap
+ * @see java.lang.ref.SoftReference
+ */
+public class SoftKeyHashMap<K,V> extends ReferenceKeyHashMap<K,V> {
+
+    /**
+     * 构造一个具有特定初始容量和负载因子的空的 SoftKeyHashMap 实例
+     */
+    public SoftKeyHashMap(int initialCapacity, float loadFactor) {
+        super(initialCapacity, loadFactor);
+    }
+
+    /**
+     * 构造一个具有特定初始容量和默认负载因子（0.75）的空的 SoftKeyHashMap 实例
+     */
+    public SoftKeyHashMap(int initialCapacity) {
+        super(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 构造一个具有默认初始容量（16）和默认负载因子（0.75）的空的 SoftKeyHashMap 实例
+     */
+    public SoftKeyHashMap() {
+        super(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    RefNode<K,V> newNode(int hash, Object key, V value,
+                         ReferenceQueue<Object> queue, RefNode<K,V> next) {
+        return new Node<>(hash, key, value, queue, next);
+    }
+
+    /**
+     * 软引用节点，引用的对象就是（经过 maskNull 的）键。
+     */
+    static final class Node<K,V> extends SoftReference<Object> implements RefNode<K,V> {
+        final int hash;
+        V value;
+        RefNode<K,V> next;
+
+        Node(int hash, Object key, V value, ReferenceQueue<Object> queue, RefNode<K,V> next) {
+            super(key, queue);
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+
+        public int hash()                       { return hash; }
+        public Object rawKey()                  { return get(); }
+        public RefNode<K,V> next()              { return next; }
+        public void setNext(RefNode<K,V> next)  { this.next = next; }
+        public void clearValue()                { value = null; }
+
+        public K getKey()                       { return unmaskNull(get()); }
+        public V getValue()                     { return value; }
+
+        public V setValue(V newValue) {
+            V oldValue = value;
+            value = newValue;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            return Objects.equals(getKey(), e.getKey()) &&
+                    Objects.equals(value, e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(value);
+        }
+
+        public String toString() {
+            return getKey() + "=" + value;
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package map;
+
+import java.io.*;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * 有内存预算的 HashMap，超过预算时把冷的分区写到本地磁盘文件中，访问时再读回来，类似于混合散列连接（hybrid hash join）。
+ *
+ * 构建一个比堆还大的 HashMap 时，程序通常在 resize() 分配新 table 的时候因为 OOM 而失败。
+ * 此类按散列值的高 partitionBits 位把映射条目分到 2^partitionBits 个分区中，每个分区是一个独立的 HashMap：
+ *   1. 每个分区都记录它的映射条目的估算大小（由调用者提供的 entrySizer 计算），以及最近一次被访问的时间；
+ *   2. 驻留在内存中的分区的总大小超过预算时，按最近最少使用（LRU）的顺序把其他分区写到磁盘并释放，
+ *      直到回到预算以内，当前正在访问的分区不会被换出；
+ *   3. 访问一个已经被换出的分区时，先把它整个读回内存（同样可能换出其他分区）。
+ * 因为每个分区是独立的 HashMap，扩容只发生在单个分区内，不会再有一次分配整个 table 的大扩容。
+ * HashMap.hash() 只把高位扰动到低位，很多键（例如前缀相同的 String）的 hashCode() 高位几乎相同，
+ * 所以分区用的是散列值乘以黄金分割常数之后的高位，它取决于散列值的所有位；分区内的桶仍然由散列值的低位选择。
+ *
+ * 文件格式：映射条目的数量，然后是按散列值排序的 (hash, key, value) 序列，由 ObjectOutputStream 写出。
+ * 保存了散列值，读回时直接调用 putVal，不需要再调用 hashCode()；按散列值排序让同一份数据总是得到相同的文件。
+ * 读回之后文件会被保留，分区没有被修改就再次换出时不需要重写文件，适合构建之后只读的探测（probe）阶段。
+ *
+ * 键和值必须是可序列化的。单个分区本身超过预算时不会被换出，这时应该增大 partitionBits。
+ * 用完之后必须调用 close()（或者使用 try-with-resources）删除换出的文件，I/O 错误以 UncheckedIOException 抛出。
+ * 忘记关闭时还有两层兜底：映射被 GC 回收之后，一个守护线程通过 PhantomReference 删除它的文件；
+ * JVM 正常退出时通过 File.deleteOnExit() 删除剩下的文件。但回收的时机是不确定的，在此之前文件一直占用磁盘，
+ * JVM 被强行终止时文件会留在 spillDirectory 中；deleteOnExit 登记的路径直到 JVM 退出都不会释放，
+ * 所以反复 clear() 之后再换出的映射会让这部分内存慢慢增长。
+ * 请注意，此实现不同步。迭代时会依次读回各个分区，迭代器不是快速失败的，迭代期间不应修改映射。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see HashMap
+ */
+public class SpillableHashMap<K,V> extends AbstractMap<K,V> implements Closeable {
+
+    /**
+     * 默认的分区数量是 2^6 = 64
+     */
+    static final int DEFAULT_PARTITION_BITS = 6;
+
+    /**
+     * 最多 2^16 个分区
+     */
+    static final int MAXIMUM_PARTITION_BITS = 16;
+
+    /**
+     * 写文件时每写出这么多个映射条目就重置一次 ObjectOutputStream，避免它的句柄表持有所有已写出的对象
+     */
+    private static final int RESET_INTERVAL = 1024;
+
+    /**
+     * 黄金分割常数 2^32 / φ，用于选择分区
+     */
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    /**
+     * 一个分区。map 为 null 表示已经被换出到 file 中。
+     */
+    static final class Partition<K,V> {
+        HashMap<K,V> map = new HashMap<>();
+        File file;          // 换出的文件，可能是过期的（dirty 为 true 时）
+        boolean dirty;      // 读回之后是否被修改过
+        int size;           // 映射条目的数量，换出时依然有效
+        long bytes;         // 映射条目的估算大小，换出时依然有效
+        long lastUsed;      // 最近一次被访问的时刻（逻辑时钟）
+    }
+
+    private final Partition<K,V>[] partitions;
+
+    private final int shift;
+
+    private final long memoryBudget;
+
+    private final ToLongBiFunction<? super K, ? super V> entrySizer;
+
+    private final File spillDirectory;
+
+    /**
+     * 驻留在内存中的分区的估算大小之和
+     */
+    private long residentBytes;
+
+    private int size;
+
+    private long clock;
+
+    /**
+     * 换出和读回的次数，用于观察预算是否合适
+     */
+    private long spillCount, loadCount;
+
+    /**
+     * 这个映射的换出文件，第一次换出时创建，close() 之后为 null
+     */
+    private SpillFiles spillFiles;
+
+    /**
+     * 构造一个空的 SpillableHashMap 实例，使用默认的分区数量
+     *
+     * @param memoryBudget 驻留在内存中的映射条目的估算大小之和的上限（字节）
+     * @param entrySizer 估算一个映射条目占用的内存（字节），包括键和值对象
+     * @param spillDirectory 存放换出文件的目录
+     */
+    public SpillableHashMap(long memoryBudget, ToLongBiFunction<? super K, ? super V> entrySizer,
+                            File spillDirectory) {
+        this(memoryBudget, entrySizer, spillDirectory, DEFAULT_PARTITION_BITS);
+    }
+
+    /**
+     * 构造一个空的 SpillableHashMap 实例
+     *
+     * @param partitionBits 用于分区的散列值高位的位数，分区数量为 2^partitionBits
+     * @throws IllegalArgumentException 如果预算不是正数、partitionBits 超出范围，或者 spillDirectory 不是目录
+     */
+    @SuppressWarnings({"rawtypes","unchecked"})
+    public SpillableHashMap(long memoryBudget, ToLongBiFunction<? super K, ? super V> entrySizer,
+                            File spillDirectory, int partitionBits) {
+        if (memoryBudget <= 0)
+            throw new IllegalArgumentException("Illegal memory budget: " + memoryBudget);
+        if (partitionBits < 1 || partitionBits > MAXIMUM_PARTITION_BITS)
+            throw new IllegalArgumentException("Illegal partition bits: " + partitionBits);
+        if (entrySizer == null || spillDirectory == null)
+            throw new NullPointerException();
+        if (!spillDirectory.isDirectory())
+            throw new IllegalArgumentException("Illegal spill directory: " + spillDirectory);
+        this.memoryBudget = memoryBudget;
+        this.entrySizer = entrySizer;
+        this.spillDirectory = spillDirectory;
+        this.shift = 32 - partitionBits;
+        this.partitions = (Partition<K,V>[])new Partition[1 << partitionBits];
+        for (int i = 0; i < partitions.length; ++i)
+            partitions[i] = new Partition<>();
+    }
+
+    /* ---------------- Partition management -------------- */
+
+    final int partitionOf(int hash) {
+        return (hash * GOLDEN_RATIO) >>> shift;
+    }
+
+    /**
+     * 返回分区的 HashMap，必要时从文件读回，并更新 LRU 时间
+     */
+    final HashMap<K,V> resident(Partition<K,V> p) {
+        p.lastUsed = ++clock;
+        if (p.map == null) {
+            p.map = load(p);
+            p.dirty = false;
+            residentBytes += p.bytes;
+            ++loadCount;
+            evictIfNeeded(p);
+        }
+        return p.map;
+    }
+
+    /**
+     * 按 LRU 顺序换出除 keep 以外的分区，直到驻留的大小回到预算以内
+     */
+    final void evictIfNeeded(Partition<K,V> keep) {
+        while (residentBytes > memoryBudget) {
+            Partition<K,V> victim = null;
+            for (Partition<K,V> p : partitions) {
+                if (p != keep && p.map != null && p.size > 0 &&
+                        (victim == null || p.lastUsed < victim.lastUsed))
+                    victim = p;
+            }
+            if (victim == null)
+                return;     // 只剩下当前分区
+            spill(victim);
+        }
+    }
+
+    // 把分区写到文件中并释放它的 HashMap
+    private void spill(Partition<K,V> p) {
+        if (p.dirty || p.file == null) {
+            if (p.file == null)
+                p.file = newSpillFile();
+            write(p.map, p.file);
+        }
+        p.map = null;
+        p.dirty = false;
+        residentBytes -= p.bytes;
+        ++spillCount;
+    }
+
+    private File newSpillFile() {
+        File file;
+        try {
+            file = File.createTempFile("spill", ".bin", spillDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        file.deleteOnExit();
+        if (spillFiles == null)
+            spillFiles = new SpillFiles(this);
+        spillFiles.add(file);
+        return file;
+    }
+
+    /**
+     * 一个映射的所有换出文件。它是映射的虚引用，但不引用映射本身：
+     * 映射被回收之后由 Reaper 线程从引用队列中取出，删除其中剩下的文件。
+     * 映射自身（close、clear）和 Reaper 线程都可能访问，由自身作为锁保护。
+     */
+    static final class SpillFiles extends PhantomReference<SpillableHashMap<?,?>> {
+        private final Set<File> files = new HashSet<>();
+
+        SpillFiles(SpillableHashMap<?,?> owner) {
+            super(owner, Reaper.QUEUE);
+            Reaper.PENDING.add(this);
+        }
+
+        synchronized void add(File file) {
+            files.add(file);
+        }
+
+        synchronized void delete(File file) {
+            files.remove(file);
+            file.delete();
+        }
+
+        synchronized void deleteAll() {
+            for (File file : files)
+                file.delete();
+            files.clear();
+        }
+    }
+
+    /**
+     * 删除没有关闭就被回收的映射的换出文件。第一次创建 SpillFiles 时才会初始化这个类并启动守护线程。
+     */
+    static final class Reaper {
+        static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+        /**
+         * 还没有处理的 SpillFiles，保证它们在映射被回收之前不会被回收
+         */
+        static final Set<SpillFiles> PENDING = ConcurrentHashMap.newKeySet();
+
+        static {
+            Thread t = new Thread(Reaper::run, "spillable-hashmap-reaper");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        private Reaper() {
+        }
+
+        private static void run() {
+            for (;;) {
+                try {
+                    SpillFiles files = (SpillFiles) QUEUE.remove();
+                    if (PENDING.remove(files))
+                        files.deleteAll();
+                } catch (InterruptedException ignored) {
+                    // 守护线程，继续处理
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings({"rawtypes","unchecked"})
+    private static <K,V> void write(HashMap<K,V> map, File file) {
+        HashMap.Node<K,V>[] nodes = (HashMap.Node<K,V>[])new HashMap.Node[map.size()];
+        int n = 0;
+        HashMap.Node<K,V>[] tab = map.table;
+        if (tab != null) {
+            for (HashMap.Node<K,V> e : tab) {
+                for (; e != null; e = e.next)
+                    nodes[n++] = e;
+            }
+        }
+        Arrays.sort(nodes, 0, n, (a, b) -> Integer.compare(a.hash, b.hash));
+        try (ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(n);
+            for (int i = 0; i < n; ++i) {
+                HashMap.Node<K,V> e = nodes[i];
+                out.writeInt(e.hash);
+                out.writeObject(e.key);
+                out.writeObject(e.value);
+                if ((i + 1) % RESET_INTERVAL == 0)
+                    out.reset();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private HashMap<K,V> load(Partition<K,V> p) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(p.file), 1 << 16))) {
+            int n = in.readInt();
+            if (n != p.size)
+                throw new StreamCorruptedException("Illegal mappings count: " + n);
+            HashMap<K,V> map = new HashMap<>((int)Math.min((long)(n / 0.75f) + 1, Integer.MAX_VALUE));
+            for (int i = 0; i < n; ++i) {
+                int hash = in.readInt();
+                K key = (K) in.readObject();
+                V value = (V) in.readObject();
+                map.putVal(hash, key, value, false, true);
+            }
+            return map;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new UncheckedIOException(new InvalidClassException(e.getMessage()));
+        }
+    }
+
+    // 修改了分区之后更新统计信息，必要时换出其他分区
+    private void afterWrite(Partition<K,V> p, int sizeDelta, long bytesDelta) {
+        p.dirty = true;
+        p.size += sizeDelta;
+        size += sizeDelta;
+        p.bytes += bytesDelta;
+        residentBytes += bytesDelta;
+        if (bytesDelta > 0)
+            evictIfNeeded(p);
+    }
+
+    /* ---------------- Map operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(Object key) {
+        int hash = HashMap.hash(key);
+        Partition<K,V> p = partitions[partitionOf(hash)];
+        if (p.size == 0)
+            return null;
+        HashMap.Node<K,V> e = resident(p).getNode(hash, key);
+        return (e == null) ? null : e.value;
+    }
+
+    public boolean containsKey(Object key) {
+        int hash = HashMap.hash(key);
+        Partition<K,V> p = partitions[partitionOf(hash)];
+        return p.size > 0 && resident(p).getNode(hash, key) != null;
+    }
+
+    public V put(K key, V value) {
+        int hash = HashMap.hash(key);
+        Partition<K,V> p = partitions[partitionOf(hash)];
+        HashMap<K,V> map = resident(p);
+        HashMap.Node<K,V> e = map.getNode(hash, key);
+        if (e != null) {
+            V oldValue = e.value;
+            e.value = value;
+            afterWrite(p, 0, entrySizer.applyAsLong(key, value) -
+                    entrySizer.applyAsLong(e.key, oldValue));
+            return oldValue;
+        }
+        map.putVal(hash, key, value, false, true);
+        afterWrite(p, 1, entrySizer.applyAsLong(key, value));
+        return null;
+    }
+
+    public V remove(Object key) {
+        int hash = HashMap.hash(key);
+        Partition<K,V> p = partitions[partitionOf(hash)];
+        if (p.size == 0)
+            return null;
+        HashMap.Node<K,V> e = resident(p).removeNode(hash, key, null, false, true);
+        if (e == null)
+            return null;
+        afterWrite(p, -1, -entrySizer.applyAsLong(e.key, e.value));
+        return e.value;
+    }
+
+    /**
+     * 删除所有映射和换出的文件
+     */
+    public void clear() {
+        for (Partition<K,V> p : partitions) {
+            deleteFile(p);
+            p.map = new HashMap<>();
+            p.dirty = false;
+            p.size = 0;
+            p.bytes = 0L;
+        }
+        size = 0;
+        residentBytes = 0L;
+    }
+
+    private void deleteFile(Partition<K,V> p) {
+        if (p.file != null) {
+            spillFiles.delete(p.file);
+            p.file = null;
+        }
+    }
+
+    /**
+     * 删除所有换出的文件，之后这个实例是一个空的映射
+     */
+    public void close() {
+        clear();
+        SpillFiles files = spillFiles;
+        if (files != null) {
+            spillFiles = null;
+            Reaper.PENDING.remove(files);
+            files.clear();
+        }
+    }
+
+    /**
+     * 依次读回每个分区并对其中的映射条目执行给定的操作
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Partition<K,V> p : partitions) {
+            if (p.size > 0)
+                resident(p).forEach(action);
+        }
+    }
+
+    /**
+     * 驻留在内存中的映射条目的估算大小之和
+     */
+    public long residentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * 分区被换出到磁盘的次数
+     */
+    public long spillCount() {
+        return spillCount;
+    }
+
+    /**
+     * 分区从磁盘读回的次数
+     */
+    public long loadCount() {
+        return loadCount;
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        return new AbstractSet<Map.Entry<K,V>>() {
+            public int size()       { return size; }
+            public void clear()     { SpillableHashMap.this.clear(); }
+            public Iterator<Map.Entry<K,V>> iterator() {
+                return new PartitionIterator();
+            }
+        };
+    }
+
+    /**
+     * 按分区迭代：每次读回一个分区，把它的映射条目复制出来再逐个返回，
+     * 所以迭代过程中最多只需要一个额外的分区驻留在内存中。
+     */
+    final class PartitionIterator implements Iterator<Map.Entry<K,V>> {
+        int next;                                   // 下一个要读回的分区
+        Iterator<Map.Entry<K,V>> current = Collections.emptyIterator();
+        Map.Entry<K,V> last;
+
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (next >= partitions.length)
+                    return false;
+                Partition<K,V> p = partitions[next++];
+                if (p.size > 0) {
+                    ArrayList<Map.Entry<K,V>> entries = new ArrayList<>(p.size);
+                    resident(p).forEach((k, v) ->
+                            entries.add(new AbstractMap.SimpleImmutableEntry<>(k, v)));
+                    current = entries.iterator();
+                }
+            }
+            return true;
+        }
+
+        public Map.Entry<K,V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return last = current.next();
+        }
+
+        public void remove() {
+            if (last == null)
+                throw new IllegalStateException();
+            SpillableHashMap.this.remove(last.getKey());
+            last = null;
+        }
+    }
+}
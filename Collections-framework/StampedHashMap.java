@@ -0,0 +1,357 @@
+package map;
+
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 读多写少场景下的线程安全的 HashMap 包装类，读操作使用 StampedLock 的乐观读（optimistic read）。
+ *
+ * 用 ReentrantReadWriteLock 保护 HashMap 时，每次加读锁和解读锁都要对同一个计数器做一次 CAS，
+ * 线程很多时这个缓存行在各个 CPU 核之间来回传递，即使没有任何写操作，读操作本身也会互相竞争。
+ * 乐观读只需要读取 StampedLock 的状态：
+ *   1. tryOptimisticRead() 读出一个版本戳（stamp），不修改任何共享变量；
+ *   2. 不加锁地按 HashMap.getNode 的方式遍历 table 和桶中的链表，把结果读到局部变量中；
+ *   3. validate(stamp) 检查期间是否有写操作获取过写锁，没有则结果有效，否则退回到加读锁重新查找。
+ * 所以在没有写操作的时候，get/containsKey 不会对共享内存做任何写操作，读线程之间没有任何竞争。
+ *
+ * 乐观遍历期间可能有写线程正在 resize() 或 removeNode()，这时读到的可能是不一致的状态：
+ * 链表可能暂时形成环、节点可能已经移到新的 table 中、键的 equals 可能作用在已经被删除的对象上。
+ * 所以乐观遍历最多走 MAX_OPTIMISTIC_STEPS 步，并且捕获遍历过程中抛出的 RuntimeException，
+ * 这些情况都直接退回到加读锁的路径，validate 失败时同样如此。
+ * 已经树化的桶（TreeNode）不做乐观遍历，直接加读锁，红黑树的旋转过程中不能安全地遍历。
+ *
+ * 写操作获取写锁，computeIfAbsent/computeIfPresent/compute/merge/replaceAll 的函数在持有写锁时执行，应当尽量简短，
+ * 并且不能访问这个 StampedHashMap：StampedLock 不可重入，同一个线程再次加锁会永远阻塞。
+ * 所以持有写锁的线程会被记录下来，这个线程在函数中再次加读锁或写锁时抛出 IllegalStateException，而不是死锁。
+ * 同样，forEach 的 action 在持有读锁时执行，不能修改这个 StampedHashMap（这种情况没有检测）。
+ * entrySet()（以及由它得到的 keySet()、values()）返回的是调用时的不可修改的快照。
+ *
+ * 与 HashMap 相同，允许 null 键和 null 值。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see HashMap
+ * @see StampedLock
+ */
+public class StampedHashMap<K,V> extends AbstractMap<K,V> implements Map<K,V> {
+
+    /**
+     * 乐观遍历一个桶最多走的步数。正常的链表桶在超过 TREEIFY_THRESHOLD 时就会树化
+     * （容量小于 MIN_TREEIFY_CAPACITY 时会先扩容），所以正常情况下远远达不到这个值。
+     */
+    static final int MAX_OPTIMISTIC_STEPS = 64;
+
+    /**
+     * 乐观遍历需要退回到加读锁的路径时返回的节点
+     */
+    static final HashMap.Node<?,?> RETRY = new HashMap.Node<>(0, null, null, null);
+
+    final HashMap<K,V> map;
+
+    final StampedLock lock = new StampedLock();
+
+    /**
+     * 当前持有写锁的线程，没有时为 null，用来检测函数中对这个 StampedHashMap 的重入访问。
+     * 只有持有写锁的线程会写入这个字段，并且只需要判断它是否等于当前线程，所以不需要 volatile：
+     * 其他线程读到的值可能过时，但不可能等于它们自己。
+     */
+    Thread writer;
+
+    /**
+     * 构造一个具有默认初始容量（16）的空的 StampedHashMap 实例
+     */
+    public StampedHashMap() {
+        map = new HashMap<>();
+    }
+
+    /**
+     * 构造一个具有指定初始容量的空的 StampedHashMap 实例
+     */
+    public StampedHashMap(int initialCapacity) {
+        map = new HashMap<>(initialCapacity);
+    }
+
+    /**
+     * 使用与指定的Map相同的映射构造一个新的 StampedHashMap 实例
+     */
+    public StampedHashMap(Map<? extends K, ? extends V> m) {
+        map = new HashMap<>(m);
+    }
+
+    /* ---------------- Locking -------------- */
+
+    final long writeLock() {
+        checkNotReentrant();
+        long stamp = lock.writeLock();
+        writer = Thread.currentThread();
+        return stamp;
+    }
+
+    final void unlockWrite(long stamp) {
+        writer = null;
+        lock.unlockWrite(stamp);
+    }
+
+    final long readLock() {
+        checkNotReentrant();
+        return lock.readLock();
+    }
+
+    // 当前线程已经持有写锁，说明是在持有写锁时执行的函数中访问了这个 StampedHashMap
+    final void checkNotReentrant() {
+        if (writer == Thread.currentThread())
+            throw new IllegalStateException(
+                    "StampedHashMap accessed from a function running under its write lock");
+    }
+
+    /* ---------------- Optimistic reads -------------- */
+
+    /**
+     * 不加锁地查找节点，必须在读出版本戳之后调用，并且在使用结果之前 validate。
+     *
+     * @return 找到的节点；没有找到时返回 null；需要加读锁重新查找时返回 RETRY
+     */
+    @SuppressWarnings("unchecked")
+    final HashMap.Node<K,V> findOptimistic(int hash, Object key) {
+        try {
+            HashMap.Node<K,V>[] tab; HashMap.Node<K,V> e; int n; K k;
+            if ((tab = map.table) == null || (n = tab.length) == 0 ||
+                    (e = tab[(n - 1) & hash]) == null)
+                return null;
+            if (e instanceof HashMap.TreeNode)
+                return (HashMap.Node<K,V>) RETRY;
+            int steps = 0;
+            do {
+                if (e.hash == hash &&
+                        ((k = e.key) == key || (key != null && key.equals(k))))
+                    return e;
+                if (++steps >= MAX_OPTIMISTIC_STEPS)
+                    return (HashMap.Node<K,V>) RETRY;
+            } while ((e = e.next) != null);
+            return null;
+        } catch (RuntimeException ex) {
+            // 读到了写线程修改到一半的状态，validate 一定会失败
+            return (HashMap.Node<K,V>) RETRY;
+        }
+    }
+
+    public V get(Object key) {
+        return getOrDefault(key, null);
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        int hash = HashMap.hash(key);   // hashCode() 在版本戳之外计算
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            HashMap.Node<K,V> e = findOptimistic(hash, key);
+            if (e != RETRY) {
+                V v = (e == null) ? defaultValue : e.value;
+                if (lock.validate(stamp))
+                    return v;
+            }
+        }
+        stamp = readLock();
+        try {
+            HashMap.Node<K,V> e = map.getNode(hash, key);
+            return (e == null) ? defaultValue : e.value;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(Object key) {
+        int hash = HashMap.hash(key);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            HashMap.Node<K,V> e = findOptimistic(hash, key);
+            if (e != RETRY && lock.validate(stamp))
+                return e != null;
+        }
+        stamp = readLock();
+        try {
+            return map.getNode(hash, key) != null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int s = map.size;
+        if (stamp != 0L && lock.validate(stamp))
+            return s;
+        stamp = readLock();
+        try {
+            return map.size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsValue(Object value) {
+        long stamp = readLock();
+        try {
+            return map.containsValue(value);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        long stamp = readLock();
+        try {
+            map.forEach(action);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 返回调用时所有映射条目的不可修改的快照
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        HashMap<K,V> copy;
+        long stamp = readLock();
+        try {
+            copy = new HashMap<>(map);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return Collections.unmodifiableMap(copy).entrySet();
+    }
+
+    /* ---------------- Writes -------------- */
+
+    public V put(K key, V value) {
+        long stamp = writeLock();
+        try {
+            return map.put(key, value);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public V putIfAbsent(K key, V value) {
+        long stamp = writeLock();
+        try {
+            return map.putIfAbsent(key, value);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        long stamp = writeLock();
+        try {
+            map.putAll(m);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public V remove(Object key) {
+        long stamp = writeLock();
+        try {
+            return map.remove(key);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(Object key, Object value) {
+        long stamp = writeLock();
+        try {
+            return map.remove(key, value);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public V replace(K key, V value) {
+        long stamp = writeLock();
+        try {
+            return map.replace(key, value);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        long stamp = writeLock();
+        try {
+            return map.replace(key, oldValue, newValue);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 先乐观地查找，键已经存在并且 value 不为 null 时不获取写锁。
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V v;
+        if ((v = get(key)) != null)
+            return v;
+        long stamp = writeLock();
+        try {
+            return map.computeIfAbsent(key, mappingFunction);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        long stamp = writeLock();
+        try {
+            return map.compute(key, remappingFunction);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        long stamp = writeLock();
+        try {
+            return map.computeIfPresent(key, remappingFunction);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        long stamp = writeLock();
+        try {
+            return map.merge(key, value, remappingFunction);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        long stamp = writeLock();
+        try {
+            map.replaceAll(function);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = writeLock();
+        try {
+            map.clear();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 用 jdk.incubator.vector 实现的内核，每次处理 CPU 支持的最宽的向量中的所有车道（lane），
+ * 不满一个向量的尾部逐个处理。编译和运行时都需要 --add-modules jdk.incubator.vector，
+ * 只由 ArrayKernels 通过反射加载，模块不可用时加载失败，退回到 ScalarArrayKernels。
+ *
+ * @see ArrayKernels
+ */
+final class VectorArrayKernels extends ArrayKernels {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    VectorArrayKernels() {
+        // 向量宽度不足 128 位（或者没有 C2 的向量化支持）时，向量的开销反而比逐个处理大
+        if (INTS.vectorBitSize() < 128 || INTS.vectorShape() != LONGS.vectorShape())
+            throw new UnsupportedOperationException("Vector shape: " + INTS);
+    }
+
+    @Override
+    int indexOf(int[] a, int from, int to, int key) {
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            VectorMask<Integer> m = IntVector.fromArray(INTS, a, i).eq(key);
+            if (m.anyTrue())
+                return i + m.firstTrue();
+        }
+        for (; i < to; i++)
+            if (a[i] == key)
+                return i;
+        return -1;
+    }
+
+    @Override
+    int lastIndexOf(int[] a, int from, int to, int key) {
+        int i = to;
+        for (int bound = to - INTS.loopBound(to - from); i > bound; ) {
+            i -= INTS.length();
+            VectorMask<Integer> m = IntVector.fromArray(INTS, a, i).eq(key);
+            if (m.anyTrue())
+                return i + m.lastTrue();
+        }
+        while (--i >= from)
+            if (a[i] == key)
+                return i;
+        return -1;
+    }
+
+    @Override
+    long sum(int[] a, int from, int to) {
+        // 每个 int 车道先扩展为两半 long 再累加，避免溢出
+        LongVector acc = LongVector.zero(LONGS);
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            IntVector v = IntVector.fromArray(INTS, a, i);
+            acc = acc.add((LongVector) v.convertShape(VectorOperators.I2L, LONGS, 0))
+                     .add((LongVector) v.convertShape(VectorOperators.I2L, LONGS, 1));
+        }
+        long s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++)
+            s += a[i];
+        return s;
+    }
+
+    @Override
+    int min(int[] a, int from, int to) {
+        IntVector acc = IntVector.broadcast(INTS, Integer.MAX_VALUE);
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length())
+            acc = acc.min(IntVector.fromArray(INTS, a, i));
+        int m = acc.reduceLanes(VectorOperators.MIN);
+        for (; i < to; i++)
+            m = Math.min(m, a[i]);
+        return m;
+    }
+
+    @Override
+    int max(int[] a, int from, int to) {
+        IntVector acc = IntVector.broadcast(INTS, Integer.MIN_VALUE);
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length())
+            acc = acc.max(IntVector.fromArray(INTS, a, i));
+        int m = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < to; i++)
+            m = Math.max(m, a[i]);
+        return m;
+    }
+
+    @Override
+    int countInRange(int[] a, int from, int to, int lo, int hi) {
+        int n = 0, i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            IntVector v = IntVector.fromArray(INTS, a, i);
+            n += v.compare(VectorOperators.GE, lo).and(v.compare(VectorOperators.LE, hi)).trueCount();
+        }
+        for (; i < to; i++)
+            if (a[i] >= lo && a[i] <= hi)
+                n++;
+        return n;
+    }
+
+    @Override
+    int indexOf(double[] a, int from, int to, double key) {
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+            VectorMask<Double> m = DoubleVector.fromArray(DOUBLES, a, i).eq(key);
+            if (m.anyTrue())
+                return i + m.firstTrue();
+        }
+        for (; i < to; i++)
+            if (a[i] == key)
+                return i;
+        return -1;
+    }
+
+    @Override
+    int lastIndexOf(double[] a, int from, int to, double key) {
+        int i = to;
+        for (int bound = to - DOUBLES.loopBound(to - from); i > bound; ) {
+            i -= DOUBLES.length();
+            VectorMask<Double> m = DoubleVector.fromArray(DOUBLES, a, i).eq(key);
+            if (m.anyTrue())
+                return i + m.lastTrue();
+        }
+        while (--i >= from)
+            if (a[i] == key)
+                return i;
+        return -1;
+    }
+
+    @Override
+    double sum(double[] a, int from, int to) {
+        DoubleVector acc = DoubleVector.zero(DOUBLES);
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length())
+            acc = acc.add(DoubleVector.fromArray(DOUBLES, a, i));
+        double s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++)
+            s += a[i];
+        return s;
+    }
+
+    @Override
+    double min(double[] a, int from, int to) {
+        DoubleVector acc = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length())
+            acc = acc.min(DoubleVector.fromArray(DOUBLES, a, i));
+        double m = acc.reduceLanes(VectorOperators.MIN);
+        for (; i < to; i++)
+            m = Math.min(m, a[i]);
+        return m;
+    }
+
+    @Override
+    double max(double[] a, int from, int to) {
+        DoubleVector acc = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length())
+            acc = acc.max(DoubleVector.fromArray(DOUBLES, a, i));
+        double m = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < to; i++)
+            m = Math.max(m, a[i]);
+        return m;
+    }
+
+    @Override
+    int countInRange(double[] a, int from, int to, double lo, double hi) {
+        int n = 0, i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+            DoubleVector v = DoubleVector.fromArray(DOUBLES, a, i);
+            n += v.compare(VectorOperators.GE, lo).and(v.compare(VectorOperators.LE, hi)).trueCount();
+        }
+        for (; i < to; i++)
+            if (a[i] >= lo && a[i] <= hi)
+                n++;
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return "vector(" + INTS.vectorBitSize() + " bits)";
+    }
+}
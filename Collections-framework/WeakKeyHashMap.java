@@ -0,0 +1,94 @@
+package map;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 键（key）为弱引用的散列表。当某个键除了这个映射以外不再被任何地方强引用时，
+ * 它会在下一次 GC 时被回收，对应的映射条目随后在写操作中被分批清理掉。
+ *
+ * 与 WeakHashMap 的语义相同，区别在于失效节点的清理方式，详见 ReferenceKeyHashMap。
+ * 适合用来做以对象为键的元数据缓存，不需要手动清理。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see SoftKeyHashMap
+ * @see java.util.WeakHashMap
+ */
+public class WeakKeyHashMap<K,V> extends ReferenceKeyHashMap<K,V> {
+
+    /**
+     * 构造一个具有特定初始容量和负载因子的空的 WeakKeyHashMap 实例
+     */
+    public WeakKeyHashMap(int initialCapacity, float loadFactor) {
+        super(initialCapacity, loadFactor);
+    }
+
+    /**
+     * 构造一个具有特定初始容量和默认负载因子（0.75）的空的 WeakKeyHashMap 实例
+     */
+    public WeakKeyHashMap(int initialCapacity) {
+        super(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 构造一个具有默认初始容量（16）和默认负载因子（0.75）的空的 WeakKeyHashMap 实例
+     */
+    public WeakKeyHashMap() {
+        super(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    RefNode<K,V> newNode(int hash, Object key, V value,
+                         ReferenceQueue<Object> queue, RefNode<K,V> next) {
+        return new Node<>(hash, key, value, queue, next);
+    }
+
+    /**
+     * 弱引用节点，引用的对象就是（经过 maskNull 的）键。
+     */
+    static final class Node<K,V> extends WeakReference<Object> implements RefNode<K,V> {
+        final int hash;
+        V value;
+        RefNode<K,V> next;
+
+        Node(int hash, Object key, V value, ReferenceQueue<Object> queue, RefNode<K,V> next) {
+            super(key, queue);
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+
+        public int hash()                       { return hash; }
+        public Object rawKey()                  { return get(); }
+        public RefNode<K,V> next()              { return next; }
+        public void setNext(RefNode<K,V> next)  { this.next = next; }
+        public void clearValue()                { value = null; }
+
+        public K getKey()                       { return unmaskNull(get()); }
+        public V getValue()                     { return value; }
+
+        public V setValue(V newValue) {
+            V oldValue = value;
+            value = newValue;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            return Objects.equals(getKey(), e.getKey()) &&
+                    Objects.equals(value, e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(value);
+        }
+
+        public String toString() {
+            return getKey() + "=" + value;
+        }
+    }
+}